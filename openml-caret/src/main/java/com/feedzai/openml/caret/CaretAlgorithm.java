@@ -24,7 +24,11 @@ import com.feedzai.openml.provider.descriptor.MLAlgorithmDescriptor;
 import com.feedzai.openml.provider.descriptor.MachineLearningAlgorithmType;
 import com.feedzai.openml.util.algorithm.MLAlgorithmEnum;
 
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.feedzai.openml.util.algorithm.MLAlgorithmEnum.createDescriptor;
 
@@ -44,57 +48,57 @@ public enum CaretAlgorithm implements MLAlgorithmEnum {
      */
     GBM(createDescriptor(
             "Stochastic Gradient Boosting",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/gbm/index.html"
-    )),
+    ), "gbm"),
     /**
      * Multivariate regression methods Partial Least Squares Regression (PLSR), Principal Component Regression (PCR) and
      * Canonical Powered Partial Least Squares (CPPLS).
      */
     PLS(createDescriptor(
             "Partial Least Squares",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/pls/index.html"
-    )),
+    ), "pls"),
     /**
      * Recursive partitioning for classification, regression and survival trees. An implementation of most of the
      * functionality of the 1984 book by Breiman, Friedman, Olshen and Stone.
      */
     CART(createDescriptor(
             "Classification And Regression Trees",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/rpart/index.html"
-    )),
+    ), "rpart"),
     /**
      * Computes a nearest shrunken centroid for gene expression (microarray) data.
      */
     PAM(createDescriptor(
             "Nearest Shrunken Centroids",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/pamr/index.html"
-    )),
+    ), "pamr"),
     /**
      * Classification and regression based on a forest of trees using random inputs, based on Breiman (2001).
      */
     RF(createDescriptor(
             "Random Forest",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/randomForest/index.html"
-    )),
+    ), "randomForest"),
     /**
      * Mixture and flexible discriminant analysis.
      */
     MDA(createDescriptor(
             "Mixture Discriminant Analysis",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/mda/index.html"
-    )),
+    ), "mda"),
     /**
      * Generalized additive (mixed) models, some of their extensions and other generalized ridge regression with
      * multiple smoothing parameter estimation by (Restricted) Marginal Likelihood, Generalized Cross Validation and
@@ -102,19 +106,19 @@ public enum CaretAlgorithm implements MLAlgorithmEnum {
      */
     BAM(createDescriptor(
             "Generalized Additive Model using Splines",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/mgcv/index.html"
-    )),
+    ), "mgcv"),
     /**
      * Software for feed-forward neural networks with a single hidden layer, and for multinomial log-linear models.
      */
     NNET(createDescriptor(
             "Neural Network",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/nnet/index.html"
-    )),
+    ), "nnet"),
     /**
      * Functional gradient descent algorithm (boosting) for optimizing general risk functions utilizing component-wise
      * (penalised) least squares estimates or regression trees as base-learners for fitting generalized linear models to
@@ -122,64 +126,104 @@ public enum CaretAlgorithm implements MLAlgorithmEnum {
      */
     GLMBOOST(createDescriptor(
             "Boosted Generalized Linear Model",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/glmboost/index.html"
-    )),
+    ), "mboost"),
     /**
      * Build regression models using the techniques in Friedman's papers "Fast MARS" and "Multivariate Adaptive
      * Regression Splines".
      */
     EARTH(createDescriptor(
             "Multivariate Adaptive Regression Spline",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/earth/index.html"
-    )),
+    ), "earth"),
     /**
      * Performs discrete, real, and gentle boost under both exponential and logistic loss on a given data set.
      */
     ADA(createDescriptor(
             "Boosted Classification Trees",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/ada/index.html"
-    )),
+    ), "ada"),
     /**
      * An implementation of Support Vector Machines based in Kernel machine learning methods.
      */
     SVMLK(createDescriptor(
             "Support Vector Machines with Linear Kernel",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/kernlab/index.html"
-    )),
+    ), "kernlab"),
     /**
      * Functions for fitting the entire solution path of the Elastic-Net.
      */
     ELASTICNET(createDescriptor(
             "Elastic Net Regularization",
-            Collections.emptySet(),
+            CaretModelLoader.getModelParameters(),
             MachineLearningAlgorithmType.MULTI_CLASSIFICATION,
             "https://cran.r-project.org/web/packages/elasticnet/index.html"
-    ));
+    ), "elasticnet");
 
     /**
      * {@link MLAlgorithmDescriptor} for this algorithm.
      */
     private final MLAlgorithmDescriptor descriptor;
 
+    /**
+     * The R package that implements this algorithm, used by Caret to score the models.
+     */
+    private final String rPackage;
+
     /**
      * Constructor.
      *
      * @param descriptor {@link MLAlgorithmDescriptor} for this algorithm.
+     * @param rPackage   The R package that implements this algorithm.
      */
-    CaretAlgorithm(final MLAlgorithmDescriptor descriptor) {
+    CaretAlgorithm(final MLAlgorithmDescriptor descriptor, final String rPackage) {
         this.descriptor = descriptor;
+        this.rPackage = rPackage;
     }
 
     @Override
     public MLAlgorithmDescriptor getAlgorithmDescriptor() {
         return this.descriptor;
     }
+
+    /**
+     * Gets the R package that implements this algorithm.
+     *
+     * @return the name of the R package.
+     */
+    public String getRPackage() {
+        return this.rPackage;
+    }
+
+    /**
+     * Gets the R packages needed to score the models of all the supported algorithms, starting with Caret itself, e.g.
+     * to be preloaded by a {@link com.feedzai.openml.r.RserveSupervisor}.
+     *
+     * @return the names of the R packages.
+     * @see #getRequiredRPackages(Collection)
+     */
+    public static List<String> getRequiredRPackages() {
+        return getRequiredRPackages(Arrays.asList(values()));
+    }
+
+    /**
+     * Gets the R packages needed to score the models of the given algorithms, starting with Caret itself, so that only
+     * the packages of the algorithms in use are preloaded.
+     *
+     * @param algorithms The algorithms of the models.
+     * @return the names of the R packages.
+     */
+    public static List<String> getRequiredRPackages(final Collection<CaretAlgorithm> algorithms) {
+        return Stream.concat(Stream.of("caret"), algorithms.stream().map(CaretAlgorithm::getRPackage))
+                .distinct()
+                .collect(Collectors.toList());
+    }
 }
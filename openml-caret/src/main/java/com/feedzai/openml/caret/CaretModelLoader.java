@@ -21,22 +21,29 @@
 package com.feedzai.openml.caret;
 
 import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.provider.descriptor.ModelParameter;
+import com.feedzai.openml.provider.descriptor.fieldtype.BooleanFieldType;
 import com.feedzai.openml.provider.descriptor.fieldtype.ParamValidationError;
 import com.feedzai.openml.provider.exception.ModelLoadingException;
 import com.feedzai.openml.provider.model.MachineLearningModelLoader;
 import com.feedzai.openml.r.GenericRModelLoader;
 import com.feedzai.openml.r.ProviderRObject;
+import com.feedzai.openml.r.RLoadParameter;
 import com.feedzai.openml.util.load.LoadModelUtils;
 import com.feedzai.openml.util.validate.ValidationUtils;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.feedzai.openml.r.ProviderRObject.MODEL_VARIABLE;
 
@@ -55,6 +62,57 @@ public class CaretModelLoader extends GenericRModelLoader {
      */
     private static final Logger logger = LoggerFactory.getLogger(CaretModelLoader.class);
 
+    /**
+     * Constructor for a {@link CaretModelLoader} that uses the default value of all the {@link RLoadParameter}.
+     */
+    public CaretModelLoader() {
+        this(ImmutableMap.of());
+    }
+
+    /**
+     * Constructor for a {@link CaretModelLoader}.
+     * <p>
+     * Unlike generic R models, the predicted class of Caret models is by default derived from the class distribution,
+     * see {@link RLoadParameter#CLASSIFY_FROM_DISTRIBUTION}.
+     *
+     * @param params The {@link RLoadParameter parameters} used to load the models.
+     */
+    public CaretModelLoader(final Map<String, String> params) {
+        super(withCaretDefaults(params));
+    }
+
+    /**
+     * Gets the {@link ModelParameter} that describes each {@link RLoadParameter}, with the defaults of Caret models.
+     *
+     * @return the {@link ModelParameter} of all the parameters.
+     * @see RLoadParameter#getModelParameters()
+     */
+    public static Set<ModelParameter> getModelParameters() {
+        final ModelParameter classifyFromDistribution = RLoadParameter.CLASSIFY_FROM_DISTRIBUTION.getModelParameter();
+        return RLoadParameter.getModelParameters().stream()
+                .map(parameter -> !parameter.equals(classifyFromDistribution) ? parameter : new ModelParameter(
+                        parameter.getName(),
+                        parameter.getDescription(),
+                        parameter.getHelperDescription(),
+                        parameter.isMandatory(),
+                        new BooleanFieldType(true)
+                ))
+                .collect(ImmutableSet.toImmutableSet());
+    }
+
+    /**
+     * Adds the default values of the {@link RLoadParameter parameters} that are specific to Caret models.
+     *
+     * @param params The {@link RLoadParameter parameters} used to load the models.
+     * @return the parameters with the Caret defaults for the parameters that are not defined.
+     */
+    private static Map<String, String> withCaretDefaults(final Map<String, String> params) {
+        final Map<String, String> caretParams = new HashMap<>();
+        caretParams.put(RLoadParameter.CLASSIFY_FROM_DISTRIBUTION.getName(), Boolean.TRUE.toString());
+        caretParams.putAll(params);
+        return caretParams;
+    }
+
     @Override
     public List<ParamValidationError> validateForLoad(final Path modelPath,
                                                       final DatasetSchema schema,
@@ -71,17 +129,25 @@ public class CaretModelLoader extends GenericRModelLoader {
     }
 
     /**
-     * Prepares the workspace created by the {@link RConnection} to be able to load a model and predict instances. To do
-     * that it starts by declaring the required package and creates the three requires functions in order to be
-     * compatible with {@link GenericRModelLoader}.
+     * Gets the R packages required by Caret models, i.e. the Caret package.
      *
-     * @param rConnection   {@link RConnection connection} to RServe.
-     * @param modelFilePath Path of the model.
-     * @throws ModelLoadingException If anything goes wrong.
+     * @return the names of the R packages.
      */
     @Override
-    protected void loadScriptFile(final RConnection rConnection,
-                                  final Path modelFilePath) throws ModelLoadingException {
+    protected List<String> getRPackages() {
+        return ImmutableList.of("caret");
+    }
+
+    /**
+     * Gets the R script that creates the three required functions in order to be compatible with
+     * {@link GenericRModelLoader}.
+     *
+     * @param modelPath Path of the model.
+     * @return the R script.
+     * @throws ModelLoadingException If the file of the model cannot be found.
+     */
+    @Override
+    protected String getScript(final Path modelPath) throws ModelLoadingException {
         final String loadModelFn = "%s <- function() {\n" +
                 "  temp_Model <- readRDS('%s')\n" +
                 "  return(temp_Model)\n" +
@@ -95,18 +161,34 @@ public class CaretModelLoader extends GenericRModelLoader {
                 "  return(temp_Classification)\n" +
                 "}";
 
-        try {
-            rConnection.voidEval("library(caret)");
-            rConnection.voidEval(String.format(loadModelFn,
-                                               ProviderRObject.LOAD_MODEL_FN.getName(),
-                                               LoadModelUtils.getModelFilePath(modelFilePath)));
-            rConnection.voidEval(String.format(getClassDistributionFn,
-                                               ProviderRObject.CLASS_DISTRIBUTION_FN.getName(),
-                                               MODEL_VARIABLE.getName()));
-            rConnection.voidEval(String.format(getClassificationFn,
-                                               ProviderRObject.CLASSIFICATION_FN.getName(),
-                                               MODEL_VARIABLE.getName()));
+        return String.join(
+                "\n",
+                String.format(loadModelFn,
+                              ProviderRObject.LOAD_MODEL_FN.getName(),
+                              LoadModelUtils.getModelFilePath(modelPath)),
+                String.format(getClassDistributionFn,
+                              ProviderRObject.CLASS_DISTRIBUTION_FN.getName(),
+                              MODEL_VARIABLE.getName()),
+                String.format(getClassificationFn,
+                              ProviderRObject.CLASSIFICATION_FN.getName(),
+                              MODEL_VARIABLE.getName())
+        );
+    }
 
+    /**
+     * Prepares the workspace created by the {@link RConnection} to be able to load a model and predict instances, with
+     * the functions of {@link #getScript(Path)}. The required package is loaded before, by
+     * {@link #loadPackages(RConnection)}.
+     *
+     * @param rConnection   {@link RConnection connection} to RServe.
+     * @param modelFilePath Path of the model.
+     * @throws ModelLoadingException If anything goes wrong.
+     */
+    @Override
+    protected void loadScriptFile(final RConnection rConnection,
+                                  final Path modelFilePath) throws ModelLoadingException {
+        try {
+            rConnection.voidEval(getScript(modelFilePath));
         } catch (final RserveException e) {
             logger.error("Unable to prepare the workspace. Error found: " + rConnection.getLastError());
             rConnection.close();
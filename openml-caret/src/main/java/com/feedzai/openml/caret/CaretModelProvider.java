@@ -23,9 +23,12 @@ package com.feedzai.openml.caret;
 import com.feedzai.openml.model.MachineLearningModel;
 import com.feedzai.openml.provider.MachineLearningProvider;
 import com.feedzai.openml.provider.descriptor.MLAlgorithmDescriptor;
+import com.feedzai.openml.r.RLoadParameter;
 import com.feedzai.openml.util.algorithm.MLAlgorithmEnum;
 import com.google.auto.service.AutoService;
+import com.google.common.collect.ImmutableMap;
 
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -57,8 +60,22 @@ public class CaretModelProvider implements MachineLearningProvider<CaretModelLoa
 
     @Override
     public Optional<CaretModelLoader> getModelCreator(final String algorithmName) {
+        return getModelCreator(algorithmName, ImmutableMap.of());
+    }
 
+    /**
+     * Gets the loader of the models of an algorithm, configured with the given {@link RLoadParameter parameters},
+     * i.e. with the values of the parameters of the {@link #getAlgorithms() descriptor} of the algorithm.
+     * <p>
+     * The loaders obtained through the {@link MachineLearningProvider} interface, i.e.
+     * with {@link #getModelCreator(String)}, use the default value of every parameter.
+     *
+     * @param algorithmName The name of the algorithm.
+     * @param params        The parameters used to load the models.
+     * @return the loader, if the algorithm is supported.
+     */
+    public Optional<CaretModelLoader> getModelCreator(final String algorithmName, final Map<String, String> params) {
         return MLAlgorithmEnum.getByName(CaretAlgorithm.values(), algorithmName)
-                .map(algorithm -> new CaretModelLoader());
+                .map(algorithm -> new CaretModelLoader(params));
     }
 }
@@ -29,16 +29,20 @@ import com.feedzai.openml.mocks.MockInstance;
 import com.feedzai.openml.model.ClassificationMLModel;
 import com.feedzai.openml.provider.exception.ModelLoadingException;
 import com.feedzai.openml.r.ClassificationGenericRModel;
+import com.feedzai.openml.r.ClassificationScore;
 import com.feedzai.openml.util.algorithm.MLAlgorithmEnum;
 import com.feedzai.openml.util.provider.AbstractProviderCategoricalTargetTest;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 /**
  * Tests for the {@link CaretModelProvider}.
  *
@@ -86,6 +90,43 @@ public class CaretModelTest extends AbstractProviderCategoricalTargetTest<Classi
 
     }
 
+    /**
+     * Verifies that scoring several instances in a single call to R returns the same results as scoring each instance
+     * individually.
+     *
+     * @throws ModelLoadingException If the model cannot be loaded.
+     */
+    @Test
+    public void canScoreInstancesInBatch() throws ModelLoadingException {
+        final ClassificationGenericRModel model = getSecondModel();
+        final List<Instance> instances = ImmutableList.of(getDummyInstance(), getDummyInstanceDifferentResult());
+
+        final double[][] classDistributions = model.getClassDistributions(instances);
+        final int[] classifications = model.classify(instances);
+
+        for (int i = 0; i < instances.size(); i++) {
+            assertThat(classDistributions[i]).containsExactly(model.getClassDistribution(instances.get(i)));
+            assertThat(classifications[i]).isEqualTo(model.classify(instances.get(i)));
+        }
+    }
+
+    /**
+     * Verifies that the predicted class obtained together with the class distribution is the same returned by
+     * {@link ClassificationMLModel#classify(Instance)}.
+     *
+     * @throws ModelLoadingException If the model cannot be loaded.
+     */
+    @Test
+    public void canScoreClassAndDistributionTogether() throws ModelLoadingException {
+        final ClassificationGenericRModel model = getSecondModel();
+        final Instance instance = getDummyInstance();
+
+        final ClassificationScore score = model.score(instance);
+
+        assertThat(score.getPredictedClass()).isEqualTo(model.classify(instance));
+        assertThat(score.getClassDistribution()).containsExactly(model.getClassDistribution(instance));
+    }
+
     @Override
     public Instance getDummyInstance() {
         return new MockInstance(new double[]{1.0, 0.0, 3.0, 1.0, 22.0, 1.0, 0.0, 7.25, 0.0});
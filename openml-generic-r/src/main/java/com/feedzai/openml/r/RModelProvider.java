@@ -26,7 +26,11 @@ import com.feedzai.openml.provider.descriptor.MLAlgorithmDescriptor;
 import com.feedzai.openml.util.algorithm.GenericAlgorithm;
 import com.feedzai.openml.util.algorithm.MLAlgorithmEnum;
 import com.google.auto.service.AutoService;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -53,14 +57,35 @@ public class RModelProvider implements MachineLearningProvider<GenericRModelLoad
 
     @Override
     public Set<MLAlgorithmDescriptor> getAlgorithms() {
-        return MLAlgorithmEnum.getDescriptors(GenericAlgorithm.values());
+        return MLAlgorithmEnum.getDescriptors(GenericAlgorithm.values()).stream()
+                .map(descriptor -> new MLAlgorithmDescriptor(
+                        descriptor.getAlgorithmName(),
+                        Sets.union(descriptor.getParameters(), RLoadParameter.getModelParameters()).immutableCopy(),
+                        descriptor.getAlgorithmType(),
+                        descriptor.getDocumentation()
+                ))
+                .collect(ImmutableSet.toImmutableSet());
     }
 
     @Override
     public Optional<GenericRModelLoader> getModelCreator(final String algorithmName) {
+        return getModelCreator(algorithmName, ImmutableMap.of());
+    }
 
+    /**
+     * Gets the loader of the models of an algorithm, configured with the given {@link RLoadParameter parameters},
+     * i.e. with the values of the parameters of the {@link #getAlgorithms() descriptor} of the algorithm.
+     * <p>
+     * The loaders obtained through the {@link MachineLearningProvider} interface, i.e.
+     * with {@link #getModelCreator(String)}, use the default value of every parameter.
+     *
+     * @param algorithmName The name of the algorithm.
+     * @param params        The parameters used to load the models.
+     * @return the loader, if the algorithm is supported.
+     */
+    public Optional<GenericRModelLoader> getModelCreator(final String algorithmName,
+                                                         final Map<String, String> params) {
         return MLAlgorithmEnum.getByName(GenericAlgorithm.values(), algorithmName)
-                .map(algorithm -> new GenericRModelLoader());
-
+                .map(algorithm -> new GenericRModelLoader(params));
     }
 }
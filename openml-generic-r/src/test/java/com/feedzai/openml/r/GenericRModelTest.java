@@ -27,20 +27,31 @@ import com.feedzai.openml.data.schema.FieldSchema;
 import com.feedzai.openml.data.schema.NumericValueSchema;
 import com.feedzai.openml.mocks.MockInstance;
 import com.feedzai.openml.model.ClassificationMLModel;
+import com.feedzai.openml.provider.descriptor.fieldtype.ParamValidationError;
 import com.feedzai.openml.provider.exception.ModelLoadingException;
 import com.feedzai.openml.util.algorithm.GenericAlgorithm;
 import com.feedzai.openml.util.algorithm.MLAlgorithmEnum;
 import com.feedzai.openml.util.provider.AbstractProviderModelLoadTest;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 /**
  * Tests for the {@link RModelProvider}.
  *
@@ -95,6 +106,192 @@ public class GenericRModelTest extends AbstractProviderModelLoadTest<Classificat
 
     }
 
+    /**
+     * Verifies that scoring several instances in a single call to R returns the same results as scoring each instance
+     * individually.
+     *
+     * @throws ModelLoadingException If the model cannot be loaded.
+     */
+    @Test
+    public void canScoreInstancesInBatch() throws ModelLoadingException {
+        final ClassificationGenericRModel model = getFirstModel();
+        final List<Instance> instances = ImmutableList.of(
+                getDummyInstance(),
+                getDummyInstanceDifferentResult(),
+                getDummyInstance()
+        );
+
+        final double[][] classDistributions = model.getClassDistributions(instances);
+        final int[] classifications = model.classify(instances);
+
+        assertThat(classDistributions).hasSize(instances.size());
+        assertThat(classifications).hasSize(instances.size());
+        for (int i = 0; i < instances.size(); i++) {
+            assertThat(classDistributions[i]).containsExactly(model.getClassDistribution(instances.get(i)));
+            assertThat(classifications[i]).isEqualTo(model.classify(instances.get(i)));
+        }
+
+        assertThat(model.getClassDistributions(ImmutableList.of())).isEmpty();
+        assertThat(model.classify(ImmutableList.<Instance>of())).isEmpty();
+    }
+
+    /**
+     * Verifies that scoring an instance returns both the result of {@link ClassificationGenericRModel#classify(Instance)}
+     * and {@link ClassificationGenericRModel#getClassDistribution(Instance)}, or the class with the highest probability
+     * when {@link RLoadParameter#CLASSIFY_FROM_DISTRIBUTION} is enabled.
+     *
+     * @throws ModelLoadingException If the model cannot be loaded.
+     */
+    @Test
+    public void canScoreClassAndDistributionTogether() throws ModelLoadingException {
+        final Instance instance = getDummyInstance();
+        final ClassificationGenericRModel model = getSecondModel();
+        final ClassificationScore score = model.score(instance);
+
+        assertThat(score.getPredictedClass()).isEqualTo(model.classify(instance));
+        assertThat(score.getClassDistribution()).containsExactly(model.getClassDistribution(instance));
+        model.close();
+
+        final ClassificationGenericRModel modelClassifyingFromDistribution = new GenericRModelLoader(ImmutableMap.of(
+                RLoadParameter.CLASSIFY_FROM_DISTRIBUTION.getName(), "true"
+        )).loadModel(getModelPath(MODEL_1_FILE), createDatasetSchema(TARGET_VALUES));
+
+        assertThat(modelClassifyingFromDistribution.score(instance).getPredictedClass()).isEqualTo(0);
+        modelClassifyingFromDistribution.close();
+    }
+
+    /**
+     * Verifies that the results of a model don't depend on how the instances are transferred to R.
+     *
+     * @throws ModelLoadingException If the model cannot be loaded.
+     */
+    @Test
+    public void canScoreWithEveryTransferMode() throws ModelLoadingException {
+        final List<Instance> instances = ImmutableList.of(getDummyInstance(), getDummyInstanceDifferentResult());
+        final ClassificationGenericRModel model = getFirstModel();
+        final ClassificationScore[] expectedScores = model.score(instances);
+        model.close();
+
+        for (final RInstanceEncoder.TransferMode transferMode : RInstanceEncoder.TransferMode.values()) {
+            final ClassificationGenericRModel transferModel = new GenericRModelLoader(ImmutableMap.of(
+                    RLoadParameter.TRANSFER_MODE.getName(), transferMode.name()
+            )).loadModel(getModelPath(MODEL_0_FILE), createDatasetSchema(TARGET_VALUES));
+
+            assertThat(transferModel.score(instances)).containsExactly(expectedScores);
+            transferModel.close();
+        }
+    }
+
+    /**
+     * Verifies that repeated instances are answered by the prediction cache with the same results.
+     *
+     * @throws ModelLoadingException If the model cannot be loaded.
+     */
+    @Test
+    public void canCachePredictions() throws ModelLoadingException {
+        final ClassificationGenericRModel model = new GenericRModelLoader(ImmutableMap.of(
+                RLoadParameter.PREDICTION_CACHE_SIZE.getName(), "100"
+        )).loadModel(getModelPath(MODEL_0_FILE), createDatasetSchema(TARGET_VALUES));
+        final Instance instance = getDummyInstanceDifferentResult();
+
+        final double[] classDistribution = model.getClassDistribution(instance);
+        assertThat(model.getClassDistribution(instance)).containsExactly(classDistribution);
+        assertThat(model.getClassDistributions(ImmutableList.of(instance, instance))).containsOnly(classDistribution);
+        assertThat(model.getPredictionCacheStats()).hasValueSatisfying(stats -> {
+            assertThat(stats.missCount()).isEqualTo(1);
+            assertThat(stats.hitCount()).isEqualTo(3);
+        });
+        model.close();
+    }
+
+    /**
+     * Verifies that the time spent in each stage of the load of the model is reported.
+     *
+     * @throws ModelLoadingException If the model cannot be loaded.
+     */
+    @Test
+    public void canReportLoadStages() throws ModelLoadingException {
+        final ClassificationGenericRModel model = new GenericRModelLoader(ImmutableMap.of(
+                RLoadParameter.CONNECTION_POOL_SIZE.getName(), "2"
+        )).loadModel(getModelPath(MODEL_0_FILE), createDatasetSchema(TARGET_VALUES));
+
+        assertThat(model.getLoadReport()).hasValueSatisfying(report -> {
+            assertThat(report.getNumberOfConnections()).isEqualTo(2);
+            assertThat(report.getDurations()).containsKeys(
+                    ModelLoadReport.Stage.CONNECTION,
+                    ModelLoadReport.Stage.LOAD_SCRIPT,
+                    ModelLoadReport.Stage.VALIDATE_WORKSPACE,
+                    ModelLoadReport.Stage.LOAD_MODEL,
+                    ModelLoadReport.Stage.VALIDATE_MODEL
+            );
+            assertThat(report.getTotalDuration()).isGreaterThanOrEqualTo(
+                    report.getDuration(ModelLoadReport.Stage.LOAD_MODEL)
+            );
+        });
+        model.close();
+    }
+
+    /**
+     * Verifies that the asynchronous evaluation of an instance returns the same results as the synchronous one.
+     *
+     * @throws Exception If the model cannot be loaded or evaluated.
+     */
+    @Test
+    public void canEvaluateAsynchronously() throws Exception {
+        final ClassificationGenericRModel model = getFirstModel();
+        final Instance instance = getDummyInstanceDifferentResult();
+
+        assertThat(model.getClassDistributionAsync(instance).get()).containsExactly(model.getClassDistribution(instance));
+        assertThat(model.classifyAsync(instance).get()).isEqualTo(model.classify(instance));
+        model.close();
+    }
+
+    /**
+     * Verifies that a model loaded with several connections to R can evaluate instances concurrently and returns the
+     * same results as when evaluated sequentially.
+     *
+     * @throws Exception If the model cannot be loaded or evaluated.
+     */
+    @Test
+    public void canEvaluateConcurrentlyWithConnectionPool() throws Exception {
+        final GenericRModelLoader loader = new GenericRModelLoader(ImmutableMap.of(
+                RLoadParameter.CONNECTION_POOL_SIZE.getName(), "3"
+        ));
+        final ClassificationGenericRModel model = loader.loadModel(
+                getModelPath(MODEL_0_FILE),
+                createDatasetSchema(TARGET_VALUES)
+        );
+        final double[] expectedDistribution = model.getClassDistribution(getDummyInstanceDifferentResult());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            final List<Future<double[]>> results = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                results.add(executor.submit(() -> model.getClassDistribution(getDummyInstanceDifferentResult())));
+            }
+            for (final Future<double[]> result : results) {
+                assertThat(result.get()).containsExactly(expectedDistribution);
+            }
+        } finally {
+            executor.shutdownNow();
+            model.close();
+        }
+    }
+
+    /**
+     * Tests that an invalid number of connections to R is reported during the validation of the model.
+     */
+    @Test
+    public void invalidConnectionPoolSizeIsRejected() {
+        final List<ParamValidationError> errors = getFirstMachineLearningModelLoader().validateForLoad(
+                getModelPath(MODEL_0_FILE),
+                createDatasetSchema(TARGET_VALUES),
+                ImmutableMap.of(RLoadParameter.CONNECTION_POOL_SIZE.getName(), "0")
+        );
+
+        assertThat(errors).hasSize(1);
+    }
+
     /**
      * Tests loading a model that doesn't contain all the required functions.
      *
@@ -108,6 +305,16 @@ public class GenericRModelTest extends AbstractProviderModelLoadTest<Classificat
         loadModel(getValidAlgorithm(), MODEL_NOT_VALID_FILE, TARGET_VALUES);
     }
 
+    /**
+     * Gets the path of a model stored in the test resources.
+     *
+     * @param modelDirName The name of the directory of the model.
+     * @return the path of the model.
+     */
+    private Path getModelPath(final String modelDirName) {
+        return Paths.get(getClass().getResource("/" + modelDirName).getPath());
+    }
+
     @Override
     public Instance getDummyInstance() {
         return new MockInstance(new double[]{1.0, 0.0});
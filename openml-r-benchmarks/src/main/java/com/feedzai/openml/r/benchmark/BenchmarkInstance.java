@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r.benchmark;
+
+import com.feedzai.openml.data.Instance;
+
+/**
+ * {@link Instance} backed by an array of values, used in the benchmarks.
+ *
+ * @since 0.5.0
+ */
+public class BenchmarkInstance implements Instance {
+
+    /**
+     * The values of the fields.
+     */
+    private final double[] values;
+
+    /**
+     * Constructor.
+     *
+     * @param values The values of the fields.
+     */
+    public BenchmarkInstance(final double[] values) {
+        this.values = values;
+    }
+
+    @Override
+    public double getValue(final int index) {
+        return this.values[index];
+    }
+
+    @Override
+    public String getStringValue(final int index) {
+        return String.valueOf(this.values[index]);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r.benchmark;
+
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.r.RInstanceEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.RList;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the conversion of the results returned by Rserve, done by {@link RInstanceEncoder}, i.e. the decoding of
+ * class distributions and predicted classes and the lookup of the index of a target value.
+ *
+ * @since 0.5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    /**
+     * The number of nominal values of the target field.
+     */
+    @Param({"2", "20"})
+    public int numberOfClasses;
+
+    /**
+     * The number of instances whose results are decoded together.
+     */
+    @Param({"1", "100"})
+    public int batchSize;
+
+    /**
+     * The encoder being measured.
+     */
+    private RInstanceEncoder encoder;
+
+    /**
+     * A data frame with the class distributions, as returned by R.
+     */
+    private REXP classDistributions;
+
+    /**
+     * A vector with the predicted classes, as returned by R.
+     */
+    private REXP classifications;
+
+    /**
+     * A target value to look up.
+     */
+    private String targetValue;
+
+    /**
+     * Creates the encoder and the results to decode.
+     *
+     * @throws REXPMismatchException If the results cannot be created.
+     */
+    @Setup
+    public void setUp() throws REXPMismatchException {
+        final DatasetSchema schema = SchemaShape.NARROW.createSchema(this.numberOfClasses);
+        this.encoder = new RInstanceEncoder(schema);
+
+        final Random random = new Random(0);
+        final RList columns = new RList(this.numberOfClasses, true);
+        final String[] predictedClasses = new String[this.batchSize];
+        for (int classIndex = 0; classIndex < this.numberOfClasses; classIndex++) {
+            columns.put("class" + classIndex, new REXPDouble(random.doubles(this.batchSize).toArray()));
+        }
+        for (int row = 0; row < this.batchSize; row++) {
+            predictedClasses[row] = "class" + random.nextInt(this.numberOfClasses);
+        }
+        this.classDistributions = REXP.createDataFrame(columns);
+        this.classifications = new REXPString(predictedClasses);
+        this.targetValue = predictedClasses[0];
+    }
+
+    /**
+     * Measures the decoding of the class distributions.
+     *
+     * @return the class distributions.
+     * @throws REXPMismatchException If the result cannot be decoded.
+     */
+    @Benchmark
+    public double[][] decodeClassDistributions() throws REXPMismatchException {
+        return this.encoder.decodeClassDistributions(this.classDistributions, this.batchSize);
+    }
+
+    /**
+     * Measures the decoding of the predicted classes.
+     *
+     * @return the indexes of the predicted classes.
+     * @throws REXPMismatchException If the result cannot be decoded.
+     */
+    @Benchmark
+    public int[] decodeClassifications() throws REXPMismatchException {
+        return this.encoder.decodeClassifications(this.classifications, this.batchSize);
+    }
+
+    /**
+     * Measures the lookup of the index of a target value.
+     *
+     * @return the index of the target value.
+     */
+    @Benchmark
+    public int getTargetValueIndex() {
+        return this.encoder.getTargetValueIndex(this.targetValue);
+    }
+}
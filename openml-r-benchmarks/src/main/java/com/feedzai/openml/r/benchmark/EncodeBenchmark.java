@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r.benchmark;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.r.RInstanceEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPMismatchException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the conversion of instances to the R objects sent to Rserve, done by {@link RInstanceEncoder}, for each
+ * {@link RInstanceEncoder.TransferMode} in narrow and wide schemas.
+ *
+ * @since 0.5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+
+    /**
+     * The shape of the schema of the instances.
+     */
+    @Param({"NARROW", "WIDE"})
+    public SchemaShape schemaShape;
+
+    /**
+     * How the instances are transferred to R.
+     */
+    @Param({"DATA_FRAME", "COLUMNAR"})
+    public RInstanceEncoder.TransferMode transferMode;
+
+    /**
+     * The number of instances encoded together.
+     */
+    @Param({"1", "100"})
+    public int batchSize;
+
+    /**
+     * The encoder being measured.
+     */
+    private RInstanceEncoder encoder;
+
+    /**
+     * The instances to encode.
+     */
+    private List<Instance> instances;
+
+    /**
+     * Creates the encoder and the instances.
+     */
+    @Setup
+    public void setUp() {
+        final DatasetSchema schema = this.schemaShape.createSchema(2);
+        this.encoder = new RInstanceEncoder(schema, this.transferMode);
+        this.instances = SchemaShape.createInstances(schema, this.batchSize, 0);
+    }
+
+    /**
+     * Measures the creation of the encoder, done once when a model is loaded.
+     *
+     * @return the encoder.
+     */
+    @Benchmark
+    public RInstanceEncoder createEncoder() {
+        return new RInstanceEncoder(this.schemaShape.createSchema(2), this.transferMode);
+    }
+
+    /**
+     * Measures the conversion of the instances to the R object sent to Rserve.
+     *
+     * @return the R object.
+     * @throws REXPMismatchException If the instances cannot be converted.
+     */
+    @Benchmark
+    public REXP encode() throws REXPMismatchException {
+        return this.encoder.encode(this.instances);
+    }
+}
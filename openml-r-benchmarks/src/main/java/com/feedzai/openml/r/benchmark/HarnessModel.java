@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r.benchmark;
+
+import com.feedzai.openml.caret.CaretModelLoader;
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.feedzai.openml.data.schema.NumericValueSchema;
+import com.feedzai.openml.r.GenericRModelLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Enumeration with the models, stored in the test resources of the providers, that can be driven by the
+ * {@link LoadHarness}.
+ *
+ * @since 0.5.0
+ */
+public enum HarnessModel {
+
+    /**
+     * The first model of the generic R provider tests.
+     */
+    MODEL0(
+            "openml-generic-r/src/test/resources/model0",
+            GenericRModelLoader::new,
+            passengerSchema(ImmutableSet.of("a", "b")),
+            new double[][]{{1.0, 0.0}, {0.0, 1.0}}
+    ),
+
+    /**
+     * The second model of the generic R provider tests.
+     */
+    MODEL1(
+            "openml-generic-r/src/test/resources/model1",
+            GenericRModelLoader::new,
+            passengerSchema(ImmutableSet.of("a", "b")),
+            new double[][]{{1.0, 0.0}, {0.0, 1.0}}
+    ),
+
+    /**
+     * The Caret GBM model of the Caret provider tests.
+     */
+    GBM(
+            "openml-caret/src/test/resources/gbm",
+            CaretModelLoader::new,
+            titanicSchema(ImmutableSet.of("0", "1")),
+            titanicInstances()
+    ),
+
+    /**
+     * The Caret PAM model of the Caret provider tests.
+     */
+    PAM(
+            "openml-caret/src/test/resources/pam",
+            CaretModelLoader::new,
+            titanicSchema(ImmutableSet.of("S", "N")),
+            titanicInstances()
+    );
+
+    /**
+     * The path of the model, relative to the root of the project.
+     */
+    private final String relativePath;
+
+    /**
+     * Creates the loader of the model given the load parameters.
+     */
+    private final Function<Map<String, String>, GenericRModelLoader> loaderFactory;
+
+    /**
+     * The schema of the model.
+     */
+    private final DatasetSchema schema;
+
+    /**
+     * The values of the instances used to drive the model.
+     */
+    private final double[][] instanceValues;
+
+    /**
+     * Constructor.
+     *
+     * @param relativePath   The path of the model, relative to the root of the project.
+     * @param loaderFactory  Creates the loader of the model given the load parameters.
+     * @param schema         The schema of the model.
+     * @param instanceValues The values of the instances used to drive the model.
+     */
+    HarnessModel(final String relativePath,
+                 final Function<Map<String, String>, GenericRModelLoader> loaderFactory,
+                 final DatasetSchema schema,
+                 final double[][] instanceValues) {
+        this.relativePath = relativePath;
+        this.loaderFactory = loaderFactory;
+        this.schema = schema;
+        this.instanceValues = instanceValues;
+    }
+
+    /**
+     * Gets the path of the model.
+     *
+     * @param rootDir The root directory of the project.
+     * @return the path of the model.
+     */
+    public Path getPath(final Path rootDir) {
+        return rootDir.resolve(this.relativePath);
+    }
+
+    /**
+     * Creates the loader of the model.
+     *
+     * @param params The parameters used to load the model.
+     * @return the loader.
+     */
+    public GenericRModelLoader createLoader(final Map<String, String> params) {
+        return this.loaderFactory.apply(params);
+    }
+
+    /**
+     * Gets the schema of the model.
+     *
+     * @return the schema.
+     */
+    public DatasetSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Gets the instances used to drive the model.
+     *
+     * @return the instances.
+     */
+    public List<Instance> getInstances() {
+        return Stream.of(this.instanceValues).map(BenchmarkInstance::new).collect(Collectors.toList());
+    }
+
+    /**
+     * Creates the schema of the generic R models.
+     *
+     * @param targetValues The nominal values of the target field.
+     * @return the schema.
+     */
+    private static DatasetSchema passengerSchema(final Set<String> targetValues) {
+        return new DatasetSchema(1, ImmutableList.of(
+                new FieldSchema("PassengerId", 0, new NumericValueSchema(false)),
+                new FieldSchema("Survived", 1, new CategoricalValueSchema(false, targetValues))
+        ));
+    }
+
+    /**
+     * Creates the schema of the Caret models, trained with the Titanic dataset.
+     *
+     * @param targetValues The nominal values of the target field.
+     * @return the schema.
+     */
+    private static DatasetSchema titanicSchema(final Set<String> targetValues) {
+        return new DatasetSchema(1, ImmutableList.of(
+                new FieldSchema("PassengerId", 0, new NumericValueSchema(false)),
+                new FieldSchema("Survived", 1, new CategoricalValueSchema(false, targetValues)),
+                new FieldSchema("Pclass", 2, new NumericValueSchema(false)),
+                new FieldSchema("Sex", 3, new NumericValueSchema(false)),
+                new FieldSchema("Age", 4, new NumericValueSchema(false)),
+                new FieldSchema("SibSp", 5, new NumericValueSchema(false)),
+                new FieldSchema("Parch", 6, new NumericValueSchema(false)),
+                new FieldSchema("Fare", 7, new NumericValueSchema(false)),
+                new FieldSchema("Embarked", 8, new NumericValueSchema(false))
+        ));
+    }
+
+    /**
+     * Creates the values of instances of the Titanic dataset.
+     *
+     * @return the values of the instances.
+     */
+    private static double[][] titanicInstances() {
+        return new double[][]{
+                {1.0, 0.0, 3.0, 1.0, 22.0, 1.0, 0.0, 7.25, 0.0},
+                {0.0, 1.0, 1.0, 0.0, 15.0, 0.0, 1.0, 2.57, 1.0}
+        };
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r.benchmark;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Records the latency of the requests made by a single thread of the {@link LoadHarness}. The latencies of several
+ * threads are merged with {@link #merge(Collection)} to compute percentiles.
+ * <p>
+ * All the latencies are kept, which is affordable for the duration of a load test and gives exact percentiles.
+ *
+ * @since 0.5.0
+ */
+public class LatencyRecorder {
+
+    /**
+     * The recorded latencies, in nanoseconds. Only the first {@link #count} positions are used.
+     */
+    private long[] latencies = new long[1024];
+
+    /**
+     * The number of recorded latencies.
+     */
+    private int count = 0;
+
+    /**
+     * Records the latency of a request.
+     *
+     * @param latencyNanos The latency, in nanoseconds.
+     */
+    public void record(final long latencyNanos) {
+        if (this.count == this.latencies.length) {
+            this.latencies = Arrays.copyOf(this.latencies, this.latencies.length * 2);
+        }
+        this.latencies[this.count++] = latencyNanos;
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return the number of recorded latencies.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Merges the latencies recorded by several threads, sorted in ascending order.
+     *
+     * @param recorders The recorders of each thread.
+     * @return the sorted latencies, in nanoseconds.
+     */
+    public static long[] merge(final Collection<LatencyRecorder> recorders) {
+        final long[] merged = new long[recorders.stream().mapToInt(LatencyRecorder::getCount).sum()];
+        int offset = 0;
+        for (final LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, merged, offset, recorder.count);
+            offset += recorder.count;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * Gets a percentile of sorted latencies, using the nearest-rank method.
+     *
+     * @param sortedLatencies The latencies, sorted in ascending order.
+     * @param percentile      The percentile, between 0 and 100.
+     * @return the latency at the percentile, or 0 if there are no latencies.
+     */
+    public static long percentile(final long[] sortedLatencies, final double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "The percentile must be between 0 and 100.");
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+        return sortedLatencies[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r.benchmark;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.provider.exception.ModelLoadingException;
+import com.feedzai.openml.r.ClassificationGenericRModel;
+import com.feedzai.openml.r.RecordingRModelMetrics;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Load test harness that drives models loaded in a local Rserve at a given concurrency and batch size, and reports
+ * their throughput and latency percentiles.
+ * <p>
+ * The harness is configured with the following system properties:
+ * <ul>
+ *     <li>{@code harness.rootDir}: the root directory of the project, where the models are read from.</li>
+ *     <li>{@code harness.models}: comma separated list of {@link HarnessModel models} to drive.</li>
+ *     <li>{@code harness.concurrency}: number of threads scoring instances concurrently.</li>
+ *     <li>{@code harness.batchSize}: number of instances scored in each request.</li>
+ *     <li>{@code harness.warmupSeconds}: duration of the warm up, whose results are discarded.</li>
+ *     <li>{@code harness.durationSeconds}: duration of the measurement.</li>
+ *     <li>{@code harness.loadParams}: comma separated list of {@code name=value} parameters used to load the models,
+ *     see {@link com.feedzai.openml.r.RLoadParameter}.</li>
+ * </ul>
+ *
+ * @since 0.5.0
+ */
+public final class LoadHarness {
+
+    /**
+     * Format of each line of the report.
+     */
+    private static final String REPORT_FORMAT = "%-8s %11s %6s %10s %7s %10s %12s %9s %9s %9s %9s%n";
+
+    /**
+     * The root directory of the project.
+     */
+    private final Path rootDir;
+
+    /**
+     * Number of threads scoring instances concurrently.
+     */
+    private final int concurrency;
+
+    /**
+     * Number of instances scored in each request.
+     */
+    private final int batchSize;
+
+    /**
+     * Duration of the warm up, in nanoseconds.
+     */
+    private final long warmupNanos;
+
+    /**
+     * Duration of the measurement, in nanoseconds.
+     */
+    private final long durationNanos;
+
+    /**
+     * Parameters used to load the models.
+     */
+    private final Map<String, String> loadParams;
+
+    /**
+     * Constructor.
+     *
+     * @param rootDir         The root directory of the project.
+     * @param concurrency     Number of threads scoring instances concurrently.
+     * @param batchSize       Number of instances scored in each request.
+     * @param warmupSeconds   Duration of the warm up, in seconds.
+     * @param durationSeconds Duration of the measurement, in seconds.
+     * @param loadParams      Parameters used to load the models.
+     */
+    public LoadHarness(final Path rootDir,
+                       final int concurrency,
+                       final int batchSize,
+                       final long warmupSeconds,
+                       final long durationSeconds,
+                       final Map<String, String> loadParams) {
+        this.rootDir = rootDir;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.loadParams = ImmutableMap.copyOf(loadParams);
+    }
+
+    /**
+     * Runs the harness configured with system properties and prints the report to the standard output.
+     *
+     * @param args Ignored.
+     * @throws Exception If a model cannot be loaded or the harness is interrupted.
+     */
+    public static void main(final String[] args) throws Exception {
+        final LoadHarness harness = new LoadHarness(
+                Paths.get(System.getProperty("harness.rootDir", ".")),
+                Integer.getInteger("harness.concurrency", 4),
+                Integer.getInteger("harness.batchSize", 1),
+                Long.getLong("harness.warmupSeconds", 5),
+                Long.getLong("harness.durationSeconds", 30),
+                Splitter.on(',').omitEmptyStrings().trimResults().withKeyValueSeparator('=')
+                        .split(System.getProperty("harness.loadParams", ""))
+        );
+        final List<HarnessModel> models = Splitter.on(',').omitEmptyStrings().trimResults()
+                .splitToList(System.getProperty("harness.models", "model0,model1,gbm,pam"))
+                .stream()
+                .map(name -> HarnessModel.valueOf(name.toUpperCase(Locale.ROOT)))
+                .collect(Collectors.toList());
+
+        System.out.printf(
+                REPORT_FORMAT,
+                "model", "concurrency", "batch", "requests", "errors", "requests/s", "instances/s",
+                "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)"
+        );
+        final Map<HarnessModel, Result> results = new LinkedHashMap<>();
+        for (final HarnessModel model : models) {
+            final Result result = harness.run(model);
+            result.print(model, harness.concurrency);
+            results.put(model, result);
+        }
+
+        System.out.println();
+        results.forEach((model, result) -> result.printPhases(model));
+    }
+
+    /**
+     * Loads a model, warms it up and measures it.
+     *
+     * @param model The model to drive.
+     * @return the result of the measurement.
+     * @throws ModelLoadingException If the model cannot be loaded.
+     * @throws InterruptedException  If the harness is interrupted.
+     */
+    public Result run(final HarnessModel model) throws ModelLoadingException, InterruptedException {
+        final ClassificationGenericRModel rModel = model.createLoader(this.loadParams)
+                .loadModel(model.getPath(this.rootDir), model.getSchema());
+        try {
+            final List<Instance> instances = model.getInstances();
+            drive(rModel, instances, this.warmupNanos);
+
+            final RecordingRModelMetrics phaseMetrics = new RecordingRModelMetrics();
+            rModel.setMetrics(phaseMetrics);
+            return drive(rModel, instances, this.durationNanos).withPhaseMetrics(phaseMetrics);
+        } finally {
+            rModel.close();
+        }
+    }
+
+    /**
+     * Scores instances with a model from several threads during some time.
+     *
+     * @param model         The model.
+     * @param instances     The instances to score, cycled by each thread.
+     * @param durationNanos For how long the model is driven, in nanoseconds.
+     * @return the result of the run.
+     * @throws InterruptedException If the harness is interrupted.
+     */
+    private Result drive(final ClassificationGenericRModel model,
+                         final List<Instance> instances,
+                         final long durationNanos) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                this.concurrency,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("load-harness-%d").build()
+        );
+        final List<LatencyRecorder> recorders = new ArrayList<>(this.concurrency);
+        final List<Future<?>> workers = new ArrayList<>(this.concurrency);
+        final AtomicLong errors = new AtomicLong();
+
+        final long start = System.nanoTime();
+        final long deadline = start + durationNanos;
+        for (int thread = 0; thread < this.concurrency; thread++) {
+            final LatencyRecorder recorder = new LatencyRecorder();
+            final int firstInstance = thread;
+            recorders.add(recorder);
+            workers.add(executor.submit(() -> {
+                int next = firstInstance;
+                while (System.nanoTime() < deadline) {
+                    final List<Instance> batch = new ArrayList<>(this.batchSize);
+                    for (int i = 0; i < this.batchSize; i++) {
+                        batch.add(instances.get(next++ % instances.size()));
+                    }
+
+                    final long requestStart = System.nanoTime();
+                    try {
+                        if (this.batchSize == 1) {
+                            model.getClassDistribution(batch.get(0));
+                        } else {
+                            model.getClassDistributions(batch);
+                        }
+                    } catch (final RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                    recorder.record(System.nanoTime() - requestStart);
+                }
+            }));
+        }
+
+        try {
+            for (final Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("A load harness thread failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new Result(LatencyRecorder.merge(recorders), errors.get(), System.nanoTime() - start, this.batchSize);
+    }
+
+    /**
+     * The result of driving a model.
+     */
+    public static final class Result {
+
+        /**
+         * The latency of each request, in nanoseconds, sorted in ascending order.
+         */
+        private final long[] sortedLatencies;
+
+        /**
+         * The number of requests that failed.
+         */
+        private final long errors;
+
+        /**
+         * The duration of the run, in nanoseconds.
+         */
+        private final long elapsedNanos;
+
+        /**
+         * The number of instances scored in each request.
+         */
+        private final int batchSize;
+
+        /**
+         * The metrics of each phase of the evaluations in R, if recorded.
+         */
+        private RecordingRModelMetrics phaseMetrics;
+
+        /**
+         * Constructor.
+         *
+         * @param sortedLatencies The latency of each request, in nanoseconds, sorted in ascending order.
+         * @param errors          The number of requests that failed.
+         * @param elapsedNanos    The duration of the run, in nanoseconds.
+         * @param batchSize       The number of instances scored in each request.
+         */
+        private Result(final long[] sortedLatencies, final long errors, final long elapsedNanos, final int batchSize) {
+            this.sortedLatencies = sortedLatencies;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Sets the metrics of each phase of the evaluations in R recorded during the run.
+         *
+         * @param phaseMetrics The metrics.
+         * @return this result.
+         */
+        private Result withPhaseMetrics(final RecordingRModelMetrics phaseMetrics) {
+            this.phaseMetrics = phaseMetrics;
+            return this;
+        }
+
+        /**
+         * Gets the number of requests per second.
+         *
+         * @return the throughput in requests.
+         */
+        public double getRequestsPerSecond() {
+            return this.sortedLatencies.length / (this.elapsedNanos / 1e9);
+        }
+
+        /**
+         * Gets a latency percentile.
+         *
+         * @param percentile The percentile, between 0 and 100.
+         * @return the latency, in milliseconds.
+         */
+        public double getLatencyMillis(final double percentile) {
+            return LatencyRecorder.percentile(this.sortedLatencies, percentile) / 1e6;
+        }
+
+        /**
+         * Prints this result as a line of the report.
+         *
+         * @param model       The driven model.
+         * @param concurrency The number of threads that drove the model.
+         */
+        private void print(final HarnessModel model, final int concurrency) {
+            System.out.printf(
+                    REPORT_FORMAT,
+                    model.name().toLowerCase(Locale.ROOT),
+                    concurrency,
+                    this.batchSize,
+                    this.sortedLatencies.length,
+                    this.errors,
+                    String.format("%.1f", getRequestsPerSecond()),
+                    String.format("%.1f", getRequestsPerSecond() * this.batchSize),
+                    String.format("%.3f", getLatencyMillis(50)),
+                    String.format("%.3f", getLatencyMillis(99)),
+                    String.format("%.3f", getLatencyMillis(99.9)),
+                    String.format("%.3f", getLatencyMillis(100))
+            );
+        }
+
+        /**
+         * Prints the time spent in each phase of the evaluations in R, if recorded.
+         *
+         * @param model The driven model.
+         */
+        private void printPhases(final HarnessModel model) {
+            if (this.phaseMetrics != null) {
+                System.out.printf("%s%n%s%n%n", model.name().toLowerCase(Locale.ROOT), this.phaseMetrics);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r.benchmark;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.feedzai.openml.data.schema.NumericValueSchema;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Enumeration with the shapes of the {@link DatasetSchema schemas} used in the benchmarks.
+ *
+ * @since 0.5.0
+ */
+public enum SchemaShape {
+
+    /**
+     * A few numeric fields and a couple of categorical fields with a few values.
+     */
+    NARROW(8, 2, 5),
+
+    /**
+     * Hundreds of numeric fields mixed with categorical fields with many values.
+     */
+    WIDE(400, 100, 200);
+
+    /**
+     * Number of numeric fields.
+     */
+    private final int numericFields;
+
+    /**
+     * Number of categorical fields, excluding the target field.
+     */
+    private final int categoricalFields;
+
+    /**
+     * Number of nominal values of each categorical field.
+     */
+    private final int nominalValues;
+
+    /**
+     * Constructor.
+     *
+     * @param numericFields     Number of numeric fields.
+     * @param categoricalFields Number of categorical fields, excluding the target field.
+     * @param nominalValues     Number of nominal values of each categorical field.
+     */
+    SchemaShape(final int numericFields, final int categoricalFields, final int nominalValues) {
+        this.numericFields = numericFields;
+        this.categoricalFields = categoricalFields;
+        this.nominalValues = nominalValues;
+    }
+
+    /**
+     * Creates a schema with this shape. The categorical fields are spread among the numeric fields and the target field
+     * is the last one.
+     *
+     * @param numberOfClasses The number of nominal values of the target field.
+     * @return the schema.
+     */
+    public DatasetSchema createSchema(final int numberOfClasses) {
+        final int predictiveFields = this.numericFields + this.categoricalFields;
+        final int categoricalStep = this.categoricalFields > 0 ? predictiveFields / this.categoricalFields : 0;
+
+        final List<FieldSchema> fields = new ArrayList<>(predictiveFields + 1);
+        for (int i = 0; i < predictiveFields; i++) {
+            if (categoricalStep > 0 && i % categoricalStep == 0 && i / categoricalStep < this.categoricalFields) {
+                fields.add(new FieldSchema(
+                        "categorical" + i,
+                        i,
+                        new CategoricalValueSchema(false, nominalValues("value", this.nominalValues))
+                ));
+            } else {
+                fields.add(new FieldSchema("numeric" + i, i, new NumericValueSchema(false)));
+            }
+        }
+        fields.add(new FieldSchema(
+                "target",
+                predictiveFields,
+                new CategoricalValueSchema(false, nominalValues("class", numberOfClasses))
+        ));
+
+        return new DatasetSchema(predictiveFields, ImmutableList.copyOf(fields));
+    }
+
+    /**
+     * Creates random instances that conform to a schema.
+     *
+     * @param schema            The schema of the instances.
+     * @param numberOfInstances The number of instances to create.
+     * @param seed              The seed of the random values.
+     * @return the instances.
+     */
+    public static List<Instance> createInstances(final DatasetSchema schema,
+                                                 final int numberOfInstances,
+                                                 final long seed) {
+        final Random random = new Random(seed);
+        final List<FieldSchema> fields = schema.getFieldSchemas();
+
+        final List<Instance> instances = new ArrayList<>(numberOfInstances);
+        for (int i = 0; i < numberOfInstances; i++) {
+            final double[] values = new double[fields.size()];
+            for (int field = 0; field < values.length; field++) {
+                if (fields.get(field).getValueSchema() instanceof CategoricalValueSchema) {
+                    final CategoricalValueSchema valueSchema =
+                            (CategoricalValueSchema) fields.get(field).getValueSchema();
+                    values[field] = random.nextInt(valueSchema.getNominalValues().size());
+                } else {
+                    values[field] = random.nextGaussian() * 100;
+                }
+            }
+            instances.add(new BenchmarkInstance(values));
+        }
+        return instances;
+    }
+
+    /**
+     * Creates the nominal values of a categorical field.
+     *
+     * @param prefix The prefix of the values.
+     * @param size   The number of values.
+     * @return the nominal values.
+     */
+    private static Set<String> nominalValues(final String prefix, final int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> prefix + i)
+                .collect(Collectors.collectingAndThen(Collectors.toSet(), ImmutableSet::copyOf));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r.benchmark;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.r.ClassificationGenericRModel;
+import com.feedzai.openml.r.ClassificationScore;
+import com.feedzai.openml.r.ProviderStandInEvaluator;
+import com.feedzai.openml.r.RConnectionPool;
+import com.feedzai.openml.r.RInstanceEncoder;
+import com.feedzai.openml.r.RLoadParameter;
+import com.feedzai.openml.r.RserveStandIn;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the scoring of instances by a {@link ClassificationGenericRModel} connected to a {@link RserveStandIn},
+ * i.e. the overhead of the connection pool, the batching, the encoding and the Rserve protocol, without R. The time
+ * spent by R is simulated by the latency of the stand-in.
+ *
+ * @since 0.5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class StandInScoringBenchmark {
+
+    /**
+     * The shape of the schema of the instances.
+     */
+    @Param({"NARROW", "WIDE"})
+    public SchemaShape schemaShape;
+
+    /**
+     * How the instances are transferred to R.
+     */
+    @Param({"DATA_FRAME", "COLUMNAR"})
+    public RInstanceEncoder.TransferMode transferMode;
+
+    /**
+     * The number of connections to the stand-in.
+     */
+    @Param({"1", "4"})
+    public int poolSize;
+
+    /**
+     * The number of instances scored in each request.
+     */
+    @Param({"1", "100"})
+    public int batchSize;
+
+    /**
+     * The time R takes to evaluate each request, in microseconds.
+     */
+    @Param({"0", "200"})
+    public long latencyMicros;
+
+    /**
+     * The stand-in for Rserve.
+     */
+    private RserveStandIn standIn;
+
+    /**
+     * The model being measured.
+     */
+    private ClassificationGenericRModel model;
+
+    /**
+     * The instances to score.
+     */
+    private List<Instance> instances;
+
+    /**
+     * Starts the stand-in and creates the model.
+     *
+     * @throws IOException     If the stand-in cannot be started.
+     * @throws RserveException If the model cannot connect to the stand-in.
+     */
+    @Setup
+    public void setUp() throws IOException, RserveException {
+        final DatasetSchema schema = this.schemaShape.createSchema(2);
+        final CategoricalValueSchema targetSchema = (CategoricalValueSchema) schema.getTargetFieldSchema()
+                .orElseThrow(IllegalStateException::new)
+                .getValueSchema();
+
+        this.standIn = new RserveStandIn(
+                0,
+                new ProviderStandInEvaluator(
+                        ImmutableList.copyOf(targetSchema.getNominalValues()),
+                        new double[]{0.3, 0.7},
+                        false
+                ),
+                this.latencyMicros,
+                TimeUnit.MICROSECONDS
+        );
+
+        final List<RConnection> connections = new ArrayList<>(this.poolSize);
+        for (int i = 0; i < this.poolSize; i++) {
+            connections.add(this.standIn.connect());
+        }
+        this.model = new ClassificationGenericRModel(
+                new RConnectionPool(connections),
+                schema,
+                ImmutableMap.of(RLoadParameter.TRANSFER_MODE.getName(), this.transferMode.name())
+        );
+        this.instances = SchemaShape.createInstances(schema, this.batchSize, 0);
+    }
+
+    /**
+     * Closes the model and the stand-in.
+     */
+    @TearDown
+    public void tearDown() {
+        this.model.close();
+        this.standIn.close();
+    }
+
+    /**
+     * Measures the scoring of a batch of instances, from the encoding to the decoding of the results.
+     *
+     * @return the scores.
+     */
+    @Benchmark
+    public ClassificationScore[] score() {
+        return this.model.score(this.instances);
+    }
+}
@@ -20,39 +20,94 @@
 
 package com.feedzai.openml.r;
 
-import com.feedzai.openml.util.data.encoding.EncodingHelper;
 import com.feedzai.openml.data.Instance;
-import com.feedzai.openml.data.schema.AbstractValueSchema;
-import com.feedzai.openml.data.schema.CategoricalValueSchema;
 import com.feedzai.openml.data.schema.DatasetSchema;
-import com.feedzai.openml.data.schema.FieldSchema;
 import com.feedzai.openml.model.ClassificationMLModel;
 import com.feedzai.openml.model.MachineLearningModel;
+import com.feedzai.openml.provider.exception.ModelLoadingException;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Iterables;
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.rosuda.REngine.REXP;
-import org.rosuda.REngine.REXPDouble;
 import org.rosuda.REngine.REXPMismatchException;
-import org.rosuda.REngine.REXPString;
 import org.rosuda.REngine.RList;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
+import org.rosuda.REngine.Rserve.protocol.REXPFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Classification object used to represent a {@link MachineLearningModel model} generated in R.
  * <p>
  * This class is responsible for the interaction with a {@link MachineLearningModel} that was generated in R. It
- * receives an instance of {@link RConnection} that is being used to connect to a Rserve server. This connection allows
- * to execute R code in a independent workspace. The {@link RConnection} is not thread-safe and so we should block the
- * access to this instance to be only be accessible to one thread at the time. The connection to R should be closed when
- * the {@link MachineLearningModel model} is closed.
+ * receives a {@link RConnectionPool pool} of {@link RConnection connections} to a Rserve server. Each connection allows
+ * to execute R code in a independent workspace with its own copy of the model. The {@link RConnection} is not
+ * thread-safe and so each connection is only accessible to one thread at the time, which means that the model can
+ * evaluate as many instances concurrently as the number of connections in the pool. The connections to R should be
+ * closed when the {@link MachineLearningModel model} is closed.
+ * <p>
+ * Optionally, concurrent requests for the class distribution of single instances can be coalesced by a
+ * {@link MicroBatcher} into a single evaluation in R, see {@link RLoadParameter#MICRO_BATCH_MAX_SIZE}.
+ * <p>
+ * Instances can also be evaluated asynchronously, in which case the calling thread doesn't wait for R. The evaluations
+ * are queued and executed by a dedicated executor with as many threads as the number of connections.
+ * <p>
+ * Large batches of instances can be split in {@link RLoadParameter#PARALLEL_CHUNK_SIZE chunks} that are evaluated in
+ * parallel by the connections of the pool, and whose results are gathered in the order of the instances.
+ * <p>
+ * When both the predicted class and the class distribution are needed, {@link #score(Instance)} gets them in a single
+ * call to R. If {@link RLoadParameter#CLASSIFY_FROM_DISTRIBUTION} is enabled, the predicted class is the class with the
+ * highest probability and so R only needs to compute the class distribution.
+ * <p>
+ * The way the instances are transferred to R is chosen with {@link RLoadParameter#TRANSFER_MODE}, see
+ * {@link RInstanceEncoder}. When all the predictive fields are numeric the instances can be sent as a single matrix,
+ * which is given as is to the script if it defines the {@link ProviderRObject#MATRIX_CLASS_DISTRIBUTION_FN} and
+ * {@link ProviderRObject#MATRIX_CLASSIFICATION_FN} functions.
+ * <p>
+ * Optionally, the class distributions and the predicted classes can be kept in a {@link PredictionCache}, so that
+ * repeated instances are not evaluated again in R, see {@link RLoadParameter#PREDICTION_CACHE_SIZE}.
+ * <p>
+ * The time spent in each {@link RModelMetrics.Phase phase} of the evaluations in R, i.e. encoding, waiting for a
+ * connection, assigning, evaluating and decoding, can be observed with {@link #setMetrics(RModelMetrics)}.
+ * <p>
+ * Optionally, each evaluation has a {@link RLoadParameter#EVALUATION_TIMEOUT_MILLIS deadline}. A connection still in
+ * use when the deadline expires is closed, which aborts the call to Rserve, and it is replaced in the background by a
+ * new one if the model has a {@link RConnectionFactory}. The evaluation then returns the
+ * {@link RLoadParameter#FALLBACK_CLASS_DISTRIBUTION fallback class distribution}, which is never cached, or fails with
+ * an {@link EvaluationTimeoutException}. The same happens, whether the evaluations have a deadline or not, when there
+ * is no connection to wait for because all of them are being replaced.
+ * <p>
+ * The connections that break, e.g. because Rserve dropped them, are also replaced in the background, while the other
+ * connections keep serving. Besides the failed evaluations, the idle connections are
+ * {@link RLoadParameter#HEALTH_CHECK_INTERVAL_MILLIS checked periodically}, so that the broken ones are replaced before
+ * being used to score. The replacement of a connection is retried until it succeeds or the model is closed. Without a
+ * {@link RConnectionFactory} the connections are neither checked nor replaced.
  *
  * @author Paulo Pereira (paulo.pereira@feedzai.com)
  * @since 0.1.0
@@ -65,16 +120,205 @@ public class ClassificationGenericRModel implements ClassificationMLModel {
     private static final Logger logger = LoggerFactory.getLogger(ClassificationGenericRModel.class);
 
     /**
-     * A {@link RConnection connection} to RServe to execute R code. This instance should only be closed when the model
-     * is closed, otherwise it will be necessary to load again the model.
+     * Name of the variable used in R to store the instances to evaluate.
+     */
+    private static final String INSTANCE_VARIABLE = "instance";
+
+    /**
+     * R expression evaluated to check whether a connection is healthy, i.e. whether its workspace still has the calls
+     * evaluated for each request.
+     */
+    private static final String HEALTH_CHECK_EXPRESSION = String.format(
+            "exists('%s')",
+            ProviderRObject.CLASS_DISTRIBUTION_CALL.getName()
+    );
+
+    /**
+     * The time to wait before retrying the replacement of a connection, in milliseconds.
+     */
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    /**
+     * R expression that gets the class distribution of the instances.
+     */
+    private static final String CLASS_DISTRIBUTION_EXPRESSION = String.format(
+            "%s(%s)",
+            ProviderRObject.CLASS_DISTRIBUTION_FN.getName(),
+            INSTANCE_VARIABLE
+    );
+
+    /**
+     * R expression that classifies the instances.
+     */
+    private static final String CLASSIFICATION_EXPRESSION = String.format(
+            "%s(%s)",
+            ProviderRObject.CLASSIFICATION_FN.getName(),
+            INSTANCE_VARIABLE
+    );
+
+    /**
+     * R expression that gets both the class distribution and the classification of the instances.
+     */
+    private static final String SCORE_EXPRESSION = String.format(
+            "list(%s, %s)",
+            CLASS_DISTRIBUTION_EXPRESSION,
+            CLASSIFICATION_EXPRESSION
+    );
+
+    /**
+     * R expression that gets the class distribution of the instances given as a numeric matrix.
      */
-    private final RConnection rConnection;
+    private static final String MATRIX_CLASS_DISTRIBUTION_EXPRESSION = String.format(
+            "%s(%s)",
+            ProviderRObject.MATRIX_CLASS_DISTRIBUTION_FN.getName(),
+            INSTANCE_VARIABLE
+    );
+
+    /**
+     * R expression that classifies the instances given as a numeric matrix.
+     */
+    private static final String MATRIX_CLASSIFICATION_EXPRESSION = String.format(
+            "%s(%s)",
+            ProviderRObject.MATRIX_CLASSIFICATION_FN.getName(),
+            INSTANCE_VARIABLE
+    );
+
+    /**
+     * R expression that gets both the class distribution and the classification of the instances given as a numeric
+     * matrix.
+     */
+    private static final String MATRIX_SCORE_EXPRESSION = String.format(
+            "list(%s, %s)",
+            MATRIX_CLASS_DISTRIBUTION_EXPRESSION,
+            MATRIX_CLASSIFICATION_EXPRESSION
+    );
+
+    /**
+     * The {@link RConnectionPool pool} of connections to RServe to execute R code. This instance should only be closed
+     * when the model is closed, otherwise it will be necessary to load again the model.
+     */
+    private final RConnectionPool connectionPool;
 
     /**
      * The {@link DatasetSchema} the model uses.
      */
     private final DatasetSchema schema;
 
+    /**
+     * Converts the instances to R objects, and the results of R to the indexes of the target values.
+     */
+    private final RInstanceEncoder encoder;
+
+    /**
+     * Coalesces concurrent requests for the class distribution of single instances, or {@code null} if micro batching
+     * is disabled.
+     */
+    private final MicroBatcher microBatcher;
+
+    /**
+     * Executes the asynchronous evaluations. It has one thread per connection, created on demand.
+     */
+    private final ExecutorService asyncExecutor;
+
+    /**
+     * The maximum number of instances evaluated in a single call to R when a batch is split to be evaluated in
+     * parallel, or 0 if the batches are not split.
+     */
+    private final int parallelChunkSize;
+
+    /**
+     * Whether the predicted class of {@link #score(Instance)} is the class with the highest probability, instead of
+     * being computed in R.
+     */
+    private final boolean classifyFromDistribution;
+
+    /**
+     * Cache of the results of the model, or {@code null} if the cache is disabled.
+     */
+    private final PredictionCache predictionCache;
+
+    /**
+     * R expression evaluated to get the class distribution of the transferred instances.
+     */
+    private final String classDistributionExpression;
+
+    /**
+     * R expression evaluated to classify the transferred instances.
+     */
+    private final String classificationExpression;
+
+    /**
+     * R expression evaluated to get both the class distribution and the classification of the transferred instances.
+     */
+    private final String scoreExpression;
+
+    /**
+     * The R statement that prepares the workspace of each connection to receive the instances, or {@code null} if it
+     * doesn't need to be prepared.
+     */
+    private final String workspaceSetup;
+
+    /**
+     * The R statement that byte-compiles the script and defines the calls evaluated for each request.
+     */
+    private final String compilation;
+
+    /**
+     * The maximum duration of an evaluation of instances, in nanoseconds, or 0 if evaluations have no deadline.
+     */
+    private final long evaluationTimeoutNanos;
+
+    /**
+     * Closes the connections still in use when the deadline of their evaluation expires, or {@code null} if
+     * evaluations have no deadline.
+     */
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * Checks the health of the connections and creates the ones that replace the connections that can no longer be
+     * used.
+     */
+    private final ScheduledExecutorService maintenanceExecutor;
+
+    /**
+     * The interval between the health checks of the idle connections, in milliseconds, or 0 if they are not checked.
+     */
+    private final long healthCheckIntervalMillis;
+
+    /**
+     * The periodic health checks of the idle connections, or {@code null} until there is a
+     * {@link #connectionFactory} to replace the broken ones.
+     */
+    private ScheduledFuture<?> healthChecks;
+
+    /**
+     * The class distribution returned when an evaluation exceeds the deadline, or {@code null} if such evaluations
+     * fail.
+     */
+    private final double[] fallbackClassDistribution;
+
+    /**
+     * Creates the connections that replace the ones that can no longer be used, or {@code null} if they are not
+     * replaced.
+     */
+    private volatile RConnectionFactory connectionFactory;
+
+    /**
+     * Notified about each evaluation of instances in R.
+     */
+    private volatile RModelMetrics metrics = RModelMetrics.NO_OP;
+
+    /**
+     * The instances evaluated to {@link #warmUp(List) warm up} the connections, or {@code null} if they are not warmed
+     * up.
+     */
+    private volatile List<Instance> warmUpInstances;
+
+    /**
+     * The report of the load of the model, if it was loaded by a {@link GenericRModelLoader}.
+     */
+    private volatile ModelLoadReport loadReport;
+
     /**
      * Constructor for a {@link ClassificationGenericRModel}.
      *
@@ -84,45 +328,257 @@ public class ClassificationGenericRModel implements ClassificationMLModel {
      */
     public ClassificationGenericRModel(final RConnection rConnection,
                                        final DatasetSchema schema) {
+        this(new RConnectionPool(Collections.singletonList(rConnection)), schema);
+    }
+
+    /**
+     * Constructor for a {@link ClassificationGenericRModel} that uses several connections to RServe.
+     *
+     * @param connectionPool {@link RConnectionPool Pool} of connections to RServe, all of them with the model loaded.
+     *                       This instance is only being used by this object and thus it is responsible to close it.
+     * @param schema         The {@link DatasetSchema} the model uses.
+     */
+    public ClassificationGenericRModel(final RConnectionPool connectionPool,
+                                       final DatasetSchema schema) {
+        this(connectionPool, schema, ImmutableMap.of());
+    }
+
+    /**
+     * Constructor for a {@link ClassificationGenericRModel} that uses several connections to RServe and is tuned by
+     * the given {@link RLoadParameter parameters}.
+     *
+     * @param connectionPool {@link RConnectionPool Pool} of connections to RServe, all of them with the model loaded.
+     *                       This instance is only being used by this object and thus it is responsible to close it.
+     * @param schema         The {@link DatasetSchema} the model uses.
+     * @param params         The {@link RLoadParameter parameters} used to load the model.
+     * @throws IllegalStateException If the R workspaces cannot be prepared to receive the instances.
+     * @throws IllegalArgumentException If the {@link RLoadParameter#FALLBACK_CLASS_DISTRIBUTION fallback class
+     *                                  distribution} is not valid.
+     */
+    public ClassificationGenericRModel(final RConnectionPool connectionPool,
+                                       final DatasetSchema schema,
+                                       final Map<String, String> params) {
         Preconditions.checkArgument(schema.getTargetFieldSchema().isPresent(), "R Models require a target variable.");
-        this.rConnection = rConnection;
+        this.connectionPool = connectionPool;
         this.schema = schema;
+        this.encoder = new RInstanceEncoder(
+                schema,
+                RLoadParameter.TRANSFER_MODE.getEnumValue(params, RInstanceEncoder.TransferMode.class)
+        );
+        this.workspaceSetup = this.encoder.getWorkspaceSetup().orElse(null);
+        if (this.encoder.getTransferMode() == RInstanceEncoder.TransferMode.MATRIX && definesMatrixFunctions()) {
+            final Optional<String> matrixAssembly = this.encoder.getMatrixAssembly(INSTANCE_VARIABLE);
+            this.compilation = compileCalls(
+                    ImmutableList.of(
+                            ProviderRObject.MATRIX_CLASS_DISTRIBUTION_FN,
+                            ProviderRObject.MATRIX_CLASSIFICATION_FN
+                    ),
+                    withAssembly(matrixAssembly, MATRIX_CLASS_DISTRIBUTION_EXPRESSION),
+                    withAssembly(matrixAssembly, MATRIX_CLASSIFICATION_EXPRESSION),
+                    withAssembly(matrixAssembly, MATRIX_SCORE_EXPRESSION)
+            );
+        } else {
+            final Optional<String> instanceAssembly = this.encoder.getInstanceAssembly(INSTANCE_VARIABLE);
+            this.compilation = compileCalls(
+                    ImmutableList.of(ProviderRObject.CLASS_DISTRIBUTION_FN, ProviderRObject.CLASSIFICATION_FN),
+                    withAssembly(instanceAssembly, CLASS_DISTRIBUTION_EXPRESSION),
+                    withAssembly(instanceAssembly, CLASSIFICATION_EXPRESSION),
+                    withAssembly(instanceAssembly, SCORE_EXPRESSION)
+            );
+        }
+        connectionPool.getConnections().forEach(this::prepareConnection);
+        this.classDistributionExpression = ProviderRObject.CLASS_DISTRIBUTION_CALL.getName() + "()";
+        this.classificationExpression = ProviderRObject.CLASSIFICATION_CALL.getName() + "()";
+        this.scoreExpression = ProviderRObject.SCORE_CALL.getName() + "()";
+
+        this.asyncExecutor = Executors.newFixedThreadPool(
+                connectionPool.size(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("r-model-async-%d").build()
+        );
+        this.classifyFromDistribution = RLoadParameter.CLASSIFY_FROM_DISTRIBUTION.getBooleanValue(params);
+        this.parallelChunkSize = RLoadParameter.PARALLEL_CHUNK_SIZE.getIntValue(params);
+
+        final int microBatchMaxSize = RLoadParameter.MICRO_BATCH_MAX_SIZE.getIntValue(params);
+        this.microBatcher = microBatchMaxSize > 1
+                ? new MicroBatcher(
+                        microBatchMaxSize,
+                        (long) (RLoadParameter.MICRO_BATCH_WINDOW_MILLIS.getDoubleValue(params) * 1000),
+                        TimeUnit.MICROSECONDS,
+                        connectionPool.size(),
+                        this::evaluateClassDistributions
+                )
+                : null;
+
+        final int predictionCacheSize = RLoadParameter.PREDICTION_CACHE_SIZE.getIntValue(params);
+        this.predictionCache = predictionCacheSize > 0
+                ? new PredictionCache(
+                        schema,
+                        predictionCacheSize,
+                        (long) RLoadParameter.PREDICTION_CACHE_TTL_MILLIS.getDoubleValue(params),
+                        TimeUnit.MILLISECONDS
+                )
+                : null;
+
+        this.evaluationTimeoutNanos = (long) (RLoadParameter.EVALUATION_TIMEOUT_MILLIS.getDoubleValue(params) * 1e6);
+        this.watchdog = this.evaluationTimeoutNanos > 0
+                ? Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("r-model-watchdog-%d").build()
+                )
+                : null;
+        this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("r-model-maintenance-%d").build()
+        );
+        this.healthCheckIntervalMillis = (long) RLoadParameter.HEALTH_CHECK_INTERVAL_MILLIS.getDoubleValue(params);
+        final String fallbackClassDistribution = RLoadParameter.FALLBACK_CLASS_DISTRIBUTION.getValue(params);
+        this.fallbackClassDistribution = fallbackClassDistribution.trim().isEmpty()
+                ? null
+                : parseClassDistribution(fallbackClassDistribution, this.encoder.getNumberOfClasses());
     }
 
     @Override
     public double[] getClassDistribution(final Instance instance) {
-        try {
-            final RList list = evaluateInstance(
-                    ProviderRObject.CLASS_DISTRIBUTION_FN.getName(),
-                    instance
-            ).asList();
+        return fallbackOnTimeout(() -> {
+            if (this.predictionCache != null) {
+                return this.predictionCache.getClassDistribution(instance, this::evaluateClassDistribution);
+            }
+            return evaluateClassDistribution(instance);
+        }, () -> this.fallbackClassDistribution.clone());
+    }
 
-            final Set<String> targetValues = getTargetValues();
-            final double[] classDistribution = new double[targetValues.size()];
-            for (int i = 0; i < classDistribution.length; i++) {
-                classDistribution[i] = list.at(i).asDouble();
+    @Override
+    public int classify(final Instance instance) {
+        return fallbackOnTimeout(() -> {
+            if (this.predictionCache != null) {
+                return this.predictionCache.classify(
+                        instance,
+                        uncachedInstance -> evaluateClassifications(Collections.singletonList(uncachedInstance))[0]
+                );
             }
-            return classDistribution;
+            return evaluateClassifications(Collections.singletonList(instance))[0];
+        }, () -> indexOfMaxValue(this.fallbackClassDistribution));
+    }
 
-        } catch (final Exception e) {
-            logger.warn("Error during instance evaluation. Error found: " + this.rConnection.getLastError());
-            throw new RuntimeException("Error during instance evaluation.", e);
+    /**
+     * Gets the class distribution of an instance asynchronously.
+     *
+     * @param instance The instance to be evaluated.
+     * @return the future class distribution of the instance. It is completed exceptionally if anything goes wrong
+     * during the evaluation.
+     * @see #getClassDistribution(Instance)
+     */
+    public CompletableFuture<double[]> getClassDistributionAsync(final Instance instance) {
+        if (this.predictionCache == null) {
+            return fallbackOnTimeout(evaluateClassDistributionAsync(instance));
         }
+
+        final Optional<double[]> cachedClassDistribution = this.predictionCache.getCachedClassDistribution(instance);
+        if (cachedClassDistribution.isPresent()) {
+            return CompletableFuture.completedFuture(cachedClassDistribution.get());
+        }
+        return fallbackOnTimeout(evaluateClassDistributionAsync(instance).thenApply(classDistribution -> {
+            this.predictionCache.putClassDistribution(instance, classDistribution);
+            return classDistribution;
+        }));
     }
 
-    @Override
-    public int classify(final Instance instance) {
-        try {
-            final String predictedClass = evaluateInstance(
-                    ProviderRObject.CLASSIFICATION_FN.getName(),
-                    instance
-            ).asString();
-            return Iterables.indexOf(getTargetValues(), predictedClass::equals);
+    /**
+     * Classifies an instance asynchronously.
+     *
+     * @param instance The instance to be classified.
+     * @return the future index of the predicted class of the instance. It is completed exceptionally if anything goes
+     * wrong during the evaluation.
+     * @see #classify(Instance)
+     */
+    public CompletableFuture<Integer> classifyAsync(final Instance instance) {
+        return CompletableFuture.supplyAsync(() -> classify(instance), this.asyncExecutor);
+    }
 
-        } catch (final Exception e) {
-            logger.warn("Error during instance evaluation. Error found: " + this.rConnection.getLastError());
-            throw new RuntimeException("Error during instance evaluation.", e);
+    /**
+     * Gets the class distribution of several instances in a single call to R.
+     * <p>
+     * All the instances are sent to R in a single data frame with one row per instance, and so the R function that
+     * gets the class distribution must be able to handle data frames with multiple rows. If the
+     * {@link RLoadParameter#PREDICTION_CACHE_SIZE cache} is enabled, only the instances whose results are not cached are
+     * sent to R. Batches larger than the {@link RLoadParameter#PARALLEL_CHUNK_SIZE chunk size} are split in several
+     * calls evaluated in parallel.
+     *
+     * @param instances The instances to be evaluated.
+     * @return the class distribution of each instance, in the same order of {@code instances}.
+     */
+    public double[][] getClassDistributions(final List<Instance> instances) {
+        return fallbackOnTimeout(() -> {
+            if (this.predictionCache != null) {
+                return this.predictionCache.getClassDistributions(instances, this::evaluateClassDistributions);
+            }
+            return evaluateClassDistributions(instances);
+        }, () -> IntStream.range(0, instances.size())
+                .mapToObj(i -> this.fallbackClassDistribution.clone())
+                .toArray(double[][]::new));
+    }
+
+    /**
+     * Classifies several instances in a single call to R.
+     * <p>
+     * All the instances are sent to R in a single data frame with one row per instance, and so the R function that
+     * classifies instances must be able to handle data frames with multiple rows. If the
+     * {@link RLoadParameter#PREDICTION_CACHE_SIZE cache} is enabled, only the instances whose results are not cached are
+     * sent to R. Batches larger than the {@link RLoadParameter#PARALLEL_CHUNK_SIZE chunk size} are split in several
+     * calls evaluated in parallel.
+     *
+     * @param instances The instances to be classified.
+     * @return the index of the predicted class of each instance, in the same order of {@code instances}.
+     */
+    public int[] classify(final List<Instance> instances) {
+        return fallbackOnTimeout(() -> {
+            if (this.predictionCache != null) {
+                return this.predictionCache.classify(instances, this::evaluateClassifications);
+            }
+            return evaluateClassifications(instances);
+        }, () -> IntStream.range(0, instances.size())
+                .map(i -> indexOfMaxValue(this.fallbackClassDistribution))
+                .toArray());
+    }
+
+    /**
+     * Gets both the predicted class and the class distribution of an instance in a single call to R.
+     *
+     * @param instance The instance to be evaluated.
+     * @return the predicted class and the class distribution of the instance.
+     * @see #score(List)
+     */
+    public ClassificationScore score(final Instance instance) {
+        return score(Collections.singletonList(instance))[0];
+    }
+
+    /**
+     * Gets both the predicted class and the class distribution of several instances in a single call to R.
+     * <p>
+     * If {@link RLoadParameter#CLASSIFY_FROM_DISTRIBUTION} is enabled, only the class distribution is computed in R
+     * and the predicted class is the one with the highest probability. Otherwise both R functions are called in the
+     * same round trip to Rserve. If the {@link RLoadParameter#PREDICTION_CACHE_SIZE cache} is enabled, only the
+     * instances whose predicted class and class distribution are not both cached are sent to R. Batches larger than the
+     * {@link RLoadParameter#PARALLEL_CHUNK_SIZE chunk size} are split in several calls evaluated in parallel.
+     *
+     * @param instances The instances to be evaluated.
+     * @return the predicted class and the class distribution of each instance, in the same order of
+     * {@code instances}.
+     */
+    public ClassificationScore[] score(final List<Instance> instances) {
+        if (instances.isEmpty()) {
+            return new ClassificationScore[0];
         }
+
+        return fallbackOnTimeout(() -> {
+            if (this.predictionCache != null) {
+                return this.predictionCache.score(instances, this::evaluateScores);
+            }
+            return evaluateScores(instances);
+        }, () -> IntStream.range(0, instances.size())
+                .mapToObj(i -> new ClassificationScore(
+                        indexOfMaxValue(this.fallbackClassDistribution),
+                        this.fallbackClassDistribution.clone()
+                ))
+                .toArray(ClassificationScore[]::new));
     }
 
     @Override
@@ -136,79 +592,854 @@ public class ClassificationGenericRModel implements ClassificationMLModel {
         return this.schema;
     }
 
+    /**
+     * Gets the statistics of the {@link RLoadParameter#PREDICTION_CACHE_SIZE cache} of the results of the model, i.e.
+     * the number of hits and misses.
+     *
+     * @return the statistics of the cache, or nothing if the cache is disabled.
+     */
+    public Optional<CacheStats> getPredictionCacheStats() {
+        return Optional.ofNullable(this.predictionCache).map(PredictionCache::getStats);
+    }
+
+    /**
+     * Sets the hook notified about each evaluation of instances in R, e.g. a {@link RecordingRModelMetrics}. By default
+     * nothing is recorded.
+     *
+     * @param metrics The metrics hook, or {@link RModelMetrics#NO_OP} to stop recording.
+     */
+    public void setMetrics(final RModelMetrics metrics) {
+        this.metrics = Preconditions.checkNotNull(metrics, "The metrics hook cannot be null.");
+    }
+
+    /**
+     * Gets the hook notified about each evaluation of instances in R.
+     *
+     * @return the metrics hook.
+     */
+    public RModelMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Gets the report of the time spent in each stage of the load of the model.
+     *
+     * @return the report, or nothing if the model wasn't loaded by a {@link GenericRModelLoader}.
+     */
+    public Optional<ModelLoadReport> getLoadReport() {
+        return Optional.ofNullable(this.loadReport);
+    }
+
+    /**
+     * Sets the report of the load of the model.
+     *
+     * @param loadReport The report.
+     */
+    void setLoadReport(final ModelLoadReport loadReport) {
+        this.loadReport = loadReport;
+    }
+
+    /**
+     * Sets the factory of the connections that replace the ones that can no longer be used, i.e. the ones that broke or
+     * were abandoned after exceeding the {@link RLoadParameter#EVALUATION_TIMEOUT_MILLIS deadline}, and starts the
+     * {@link RLoadParameter#HEALTH_CHECK_INTERVAL_MILLIS health checks} of the idle connections. Without it those
+     * connections are kept in the pool, so the evaluations that use them keep failing, and the connections are not
+     * checked.
+     *
+     * @param connectionFactory Creates connections to Rserve with the model loaded.
+     */
+    synchronized void setConnectionFactory(final RConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+        if (this.healthCheckIntervalMillis > 0 && this.healthChecks == null) {
+            try {
+                this.healthChecks = this.maintenanceExecutor.scheduleWithFixedDelay(
+                        this::checkConnections,
+                        this.healthCheckIntervalMillis,
+                        this.healthCheckIntervalMillis,
+                        TimeUnit.MILLISECONDS
+                );
+            } catch (final RejectedExecutionException e) {
+                // The model was closed, and so are the connections.
+            }
+        }
+    }
+
     @Override
-    public synchronized void close() {
-        this.rConnection.close();
+    public void close() {
+        if (this.microBatcher != null) {
+            this.microBatcher.close();
+        }
+        this.asyncExecutor.shutdownNow();
+        if (this.watchdog != null) {
+            this.watchdog.shutdownNow();
+        }
+        this.maintenanceExecutor.shutdownNow();
+        this.connectionPool.close();
     }
 
     /**
-     * If the target field is categorical then it returns a set with the nominal values, otherwise returns an empty set.
+     * Evaluates the class distribution of an instance in R, coalescing it with other instances if micro batching is
+     * enabled.
      *
-     * @return the values of the target variable.
+     * @param instance The instance to be evaluated.
+     * @return the class distribution of the instance.
      */
-    private Set<String> getTargetValues() {
-        return this.schema.getTargetFieldSchema()
-                .map(FieldSchema::getValueSchema)
-                .filter(CategoricalValueSchema.class::isInstance)
-                .map(CategoricalValueSchema.class::cast)
-                .map(CategoricalValueSchema::getNominalValues)
-                .orElse(ImmutableSortedSet.of());
+    private double[] evaluateClassDistribution(final Instance instance) {
+        if (this.microBatcher != null) {
+            return this.microBatcher.evaluate(instance);
+        }
+        return evaluateClassDistributions(Collections.singletonList(instance))[0];
     }
 
     /**
-     * Calls a R {@code function} to evaluate an {@code instance}.
-     * This function depends on the {@link RConnection connection to Rserve} to run R code. The connection to Rserve
-     * isn't thread-safe and so this method needs to be synchronized.
+     * Evaluates the class distribution of an instance in R asynchronously, coalescing it with other instances if micro
+     * batching is enabled.
      *
-     * @param function Name of the R function to evaluate an instance. It's assumed that this function only receives
-     *                 one parameter.
      * @param instance The instance to be evaluated.
-     * @return The result of the expression.
+     * @return the future class distribution of the instance.
+     */
+    private CompletableFuture<double[]> evaluateClassDistributionAsync(final Instance instance) {
+        if (this.microBatcher != null) {
+            return this.microBatcher.evaluateAsync(instance);
+        }
+        return CompletableFuture.supplyAsync(
+                () -> evaluateClassDistributions(Collections.singletonList(instance))[0],
+                this.asyncExecutor
+        );
+    }
+
+    /**
+     * Evaluates both the predicted class and the class distribution of several instances in a single call to R.
+     *
+     * @param instances The instances to be evaluated.
+     * @return the predicted class and the class distribution of each instance, in the same order of
+     * {@code instances}.
+     */
+    private ClassificationScore[] evaluateScores(final List<Instance> instances) {
+        if (isSplit(instances)) {
+            return scatter(instances, this::evaluateScores).stream()
+                    .flatMap(Arrays::stream)
+                    .toArray(ClassificationScore[]::new);
+        }
+
+        try {
+            if (this.classifyFromDistribution) {
+                return evaluateInstances(this.classDistributionExpression, instances, result -> {
+                    final double[][] classDistributions = this.encoder.decodeClassDistributions(
+                            result,
+                            instances.size()
+                    );
+                    final int[] classifications = Arrays.stream(classDistributions)
+                            .mapToInt(ClassificationGenericRModel::indexOfMaxValue)
+                            .toArray();
+                    return toScores(classifications, classDistributions);
+                });
+            }
+            return evaluateInstances(this.scoreExpression, instances, result -> {
+                final RList results = result.asList();
+                return toScores(
+                        this.encoder.decodeClassifications(results.at(1), instances.size()),
+                        this.encoder.decodeClassDistributions(results.at(0), instances.size())
+                );
+            });
+
+        } catch (final Exception e) {
+            throw evaluationError(e);
+        }
+    }
+
+    /**
+     * Evaluates the class distribution of several instances in a single call to R.
+     *
+     * @param instances The instances to be evaluated.
+     * @return the class distribution of each instance, in the same order of {@code instances}.
+     */
+    private double[][] evaluateClassDistributions(final List<Instance> instances) {
+        if (instances.isEmpty()) {
+            return new double[0][];
+        }
+        if (isSplit(instances)) {
+            return scatter(instances, this::evaluateClassDistributions).stream()
+                    .flatMap(Arrays::stream)
+                    .toArray(double[][]::new);
+        }
+
+        try {
+            return evaluateInstances(
+                    this.classDistributionExpression,
+                    instances,
+                    result -> this.encoder.decodeClassDistributions(result, instances.size())
+            );
+
+        } catch (final Exception e) {
+            throw evaluationError(e);
+        }
+    }
+
+    /**
+     * Classifies several instances in a single call to R.
+     *
+     * @param instances The instances to be classified.
+     * @return the index of the predicted class of each instance, in the same order of {@code instances}.
+     */
+    private int[] evaluateClassifications(final List<Instance> instances) {
+        if (instances.isEmpty()) {
+            return new int[0];
+        }
+        if (isSplit(instances)) {
+            return scatter(instances, this::evaluateClassifications).stream()
+                    .flatMapToInt(Arrays::stream)
+                    .toArray();
+        }
+
+        try {
+            return evaluateInstances(
+                    this.classificationExpression,
+                    instances,
+                    result -> this.encoder.decodeClassifications(result, instances.size())
+            );
+
+        } catch (final Exception e) {
+            throw evaluationError(e);
+        }
+    }
+
+    /**
+     * Checks whether a batch of instances is split in chunks evaluated in parallel, which is only worth it when there
+     * are several connections.
+     *
+     * @param instances The instances to be evaluated.
+     * @return {@code true} if the batch is split, {@code false} if it is evaluated in a single call to R.
+     */
+    private boolean isSplit(final List<Instance> instances) {
+        return this.parallelChunkSize > 0
+                && instances.size() > this.parallelChunkSize
+                && this.connectionPool.size() > 1;
+    }
+
+    /**
+     * Splits a batch of instances in chunks of the {@link #parallelChunkSize}, evaluates them in parallel and gathers
+     * their results in the order of the instances. The first chunk is evaluated by the calling thread and the others by
+     * the {@link #asyncExecutor}, so that each chunk is evaluated by one of the connections of the pool as soon as it
+     * is free.
+     *
+     * @param instances  The instances to be evaluated.
+     * @param evaluation Evaluates a chunk of instances in a single call to R.
+     * @param <T>        The type of the result of a chunk.
+     * @return the result of each chunk, in the order of the instances.
+     */
+    private <T> List<T> scatter(final List<Instance> instances, final Function<List<Instance>, T> evaluation) {
+        final List<List<Instance>> chunks = Lists.partition(instances, this.parallelChunkSize);
+        final List<CompletableFuture<T>> futureResults = chunks.subList(1, chunks.size()).stream()
+                .map(chunk -> CompletableFuture.supplyAsync(() -> evaluation.apply(chunk), this.asyncExecutor))
+                .collect(Collectors.toList());
+
+        final List<T> results = new ArrayList<>(chunks.size());
+        try {
+            results.add(evaluation.apply(chunks.get(0)));
+            for (final CompletableFuture<T> futureResult : futureResults) {
+                results.add(futureResult.join());
+            }
+            return results;
+
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error during instance evaluation.", e.getCause());
+        } finally {
+            // The chunks not evaluated yet are useless if another one failed.
+            futureResults.forEach(futureResult -> futureResult.cancel(false));
+        }
+    }
+
+    /**
+     * Wraps an expression that uses the {@link #INSTANCE_VARIABLE instances} so that they are first assembled from the
+     * object transferred to R, if needed.
+     *
+     * @param assembly   The R statement that assembles the instances, if any.
+     * @param expression The R expression that evaluates the instances.
+     * @return the R expression to evaluate.
+     */
+    private static String withAssembly(final Optional<String> assembly, final String expression) {
+        return assembly
+                .map(statement -> String.format("{ %s; %s }", statement, expression))
+                .orElse(expression);
+    }
+
+    /**
+     * Warms up every connection of the pool by evaluating the given instances with the R expressions used to score,
+     * both for a single instance and for a batch, so that R loads the namespaces and functions they use before the
+     * model receives requests. The instances are kept to warm up the connections that replace the broken ones as well,
+     * before they are added to the pool.
+     * <p>
+     * Every connection is borrowed from the pool during the warm-up, and so this should be called before the model
+     * is used.
+     *
+     * @param instances The instances to evaluate, at least one.
+     * @throws IllegalStateException If anything goes wrong during the execution of R code.
+     */
+    void warmUp(final List<Instance> instances) {
+        Preconditions.checkArgument(!instances.isEmpty(), "At least one instance is required to warm up the model.");
+        this.warmUpInstances = ImmutableList.copyOf(instances);
+
+        final List<RConnection> connections = new ArrayList<>(this.connectionPool.size());
+        try {
+            for (int i = 0; i < this.connectionPool.size(); i++) {
+                connections.add(this.connectionPool.borrow());
+            }
+            for (final RConnection rConnection : connections) {
+                warmUpConnection(rConnection, this.warmUpInstances);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the connections to warm up the model", e);
+        } finally {
+            connections.forEach(this.connectionPool::release);
+        }
+    }
+
+    /**
+     * Warms up a connection by evaluating the given instances with the R expressions used to score, see
+     * {@link #warmUp(List)}.
+     *
+     * @param rConnection A connection that is not used by anyone else.
+     * @param instances   The instances to evaluate, at least one.
+     * @throws IllegalStateException If anything goes wrong during the execution of R code.
+     */
+    private void warmUpConnection(final RConnection rConnection, final List<Instance> instances) {
+        final REXP singleInstance;
+        final REXP batch;
+        try {
+            singleInstance = this.encoder.encode(instances.subList(0, 1));
+            batch = this.encoder.encode(instances);
+        } catch (final REXPMismatchException e) {
+            throw new IllegalStateException("An error was found during the encoding of the warm-up instances", e);
+        }
+        final String batchExpression = this.classifyFromDistribution
+                ? this.classDistributionExpression
+                : this.scoreExpression;
+
+        try {
+            rConnection.assign(INSTANCE_VARIABLE, singleInstance);
+            rConnection.eval(this.classDistributionExpression);
+            rConnection.assign(INSTANCE_VARIABLE, batch);
+            rConnection.eval(batchExpression);
+        } catch (final RserveException e) {
+            logger.error("Could not warm up the R workspace. Error found: " + rConnection.getLastError(), e);
+            throw new IllegalStateException("An error was found during the warm-up of the model", e);
+        }
+    }
+
+    /**
+     * Checks whether the script defines the optional functions that evaluate the instances given as a numeric matrix.
+     * All the connections have the same script loaded, and so only one of them is checked.
+     *
+     * @return {@code true} if both functions are defined, {@code false} otherwise.
+     * @throws IllegalStateException If anything goes wrong during the execution of R code.
+     */
+    private boolean definesMatrixFunctions() {
+        final RConnection rConnection = this.connectionPool.getConnections().get(0);
+        try {
+            return rConnection.eval(String.format(
+                    "exists('%s', mode = 'function') && exists('%s', mode = 'function')",
+                    ProviderRObject.MATRIX_CLASS_DISTRIBUTION_FN.getName(),
+                    ProviderRObject.MATRIX_CLASSIFICATION_FN.getName()
+            )).asBytes()[0] != 0;
+        } catch (final REXPMismatchException | RserveException e) {
+            logger.error("Could not inspect the R workspace. Error found: " + rConnection.getLastError(), e);
+            throw new IllegalStateException("An error was found during the inspection of the R workspace", e);
+        }
+    }
+
+    /**
+     * Prepares the R workspace of a connection with the model loaded to receive the instances, as required by the
+     * {@link #encoder}, and byte-compiles the calls evaluated for each request, see {@link #compileCalls}.
+     *
+     * @param rConnection The connection.
+     * @throws IllegalStateException If anything goes wrong during the execution of R code.
+     */
+    private void prepareConnection(final RConnection rConnection) {
+        if (this.workspaceSetup != null) {
+            try {
+                rConnection.voidEval(this.workspaceSetup);
+            } catch (final RserveException e) {
+                logger.error("Could not prepare the R workspace. Error found: " + rConnection.getLastError(), e);
+                throw new IllegalStateException("An error was found during the preparation of the R workspace", e);
+            }
+        }
+
+        try {
+            rConnection.voidEval(this.compilation);
+        } catch (final RserveException e) {
+            logger.error("Could not compile the R functions. Error found: " + rConnection.getLastError(), e);
+            throw new IllegalStateException("An error was found during the compilation of the R functions", e);
+        }
+    }
+
+    /**
+     * Creates the R statement that byte-compiles the functions of the script used to score and defines the
+     * {@link ProviderRObject#CLASS_DISTRIBUTION_CALL calls} evaluated for each request as byte-compiled functions
+     * without arguments. This way each request only sends a call without arguments, which is cheap to parse, and the
+     * code it runs is already compiled, instead of being interpreted until the JIT of R compiles it.
+     *
+     * @param functions                The functions of the script used to score.
+     * @param classDistributionBody    The R code that gets the class distribution of the transferred instances.
+     * @param classificationBody       The R code that classifies the transferred instances.
+     * @param scoreBody                The R code that gets both the class distribution and the classification of the
+     *                                 transferred instances.
+     * @return the R statement to evaluate in each connection.
+     */
+    private static String compileCalls(final List<ProviderRObject> functions,
+                                       final String classDistributionBody,
+                                       final String classificationBody,
+                                       final String scoreBody) {
+        final StringBuilder compilation = new StringBuilder("{ ");
+        for (final ProviderRObject function : functions) {
+            compilation.append(String.format("%1$s <- compiler::cmpfun(%1$s); ", function.getName()));
+        }
+        compilation
+                .append(compiledCall(ProviderRObject.CLASS_DISTRIBUTION_CALL, classDistributionBody)).append("; ")
+                .append(compiledCall(ProviderRObject.CLASSIFICATION_CALL, classificationBody)).append("; ")
+                .append(compiledCall(ProviderRObject.SCORE_CALL, scoreBody)).append(" }");
+        return compilation.toString();
+    }
+
+    /**
+     * Creates the R statement that defines a byte-compiled function without arguments.
+     *
+     * @param call The name of the function.
+     * @param body The body of the function.
+     * @return the R statement.
+     */
+    private static String compiledCall(final ProviderRObject call, final String body) {
+        return String.format("%s <- compiler::cmpfun(function() %s)", call.getName(), body);
+    }
+
+    /**
+     * Evaluates a R {@code expression} on several {@code instances} at once and decodes its result.
+     * This function depends on the {@link RConnection connection to Rserve} to run R code. The connection to Rserve
+     * isn't thread-safe and so a connection is borrowed from the pool for the assignment and the evaluation, waiting
+     * for one to be available if all of them are in use. The duration of each phase is recorded in the
+     * {@link #metrics}.
+     * <p>
+     * If the evaluation has a deadline, the connection is only waited for until the deadline, and it is closed if it is
+     * still in use when the deadline expires, which aborts the call to Rserve. Such a connection is
+     * {@link #replaceConnection replaced}, as well as a connection that is broken.
+     *
+     * @param expression The R expression that evaluates the instances, which are stored in the
+     *                   {@link #INSTANCE_VARIABLE} variable as encoded by the {@link #encoder}.
+     * @param instances  The instances to be evaluated.
+     * @param decoder    Decodes the result of the expression.
+     * @param <T>        The type of the decoded result.
+     * @return The decoded result of the expression.
      * @throws RserveException If anything goes wrong during the execution of R code.
-     * @throws REXPMismatchException If there is an error during the creation of the data frame.
+     * @throws REXPMismatchException If there is an error during the creation of the data frame or the result doesn't
+     *                               have the expected type.
+     * @throws InterruptedException If the thread was interrupted while waiting for a connection.
+     * @throws EvaluationTimeoutException If the evaluation exceeds its deadline.
      * @see <a href="http://rforge.net/Rserve/">Rserve</a>
      */
-    private synchronized REXP evaluateInstance(final String function,
-                                               final Instance instance) throws RserveException, REXPMismatchException {
-        final String instanceRVar = "instance";
-        this.rConnection.assign(instanceRVar, convertInstanceToDataFrame(instance));
-        return this.rConnection.eval(String.format("%s(%s)", function, instanceRVar));
+    private <T> T evaluateInstances(final String expression,
+                                    final List<Instance> instances,
+                                    final ResultDecoder<T> decoder)
+            throws RserveException, REXPMismatchException, InterruptedException {
+        final RModelMetrics metrics = this.metrics;
+        RModelMetrics.Phase phase = RModelMetrics.Phase.ENCODE;
+        long phaseStart = System.nanoTime();
+        final long deadline = phaseStart + this.evaluationTimeoutNanos;
+        try {
+            final REXP encodedInstances = this.encoder.encode(instances);
+            final long bytesSent = metrics == RModelMetrics.NO_OP
+                    ? 0
+                    : new REXPFactory(encodedInstances).getBinaryLength();
+            phaseStart = recordPhase(metrics, phase, phaseStart);
+
+            phase = RModelMetrics.Phase.CONNECTION_WAIT;
+            final RConnection rConnection = borrowConnection(deadline);
+            phaseStart = recordPhase(metrics, phase, phaseStart);
+            final AtomicBoolean finished = new AtomicBoolean();
+            final ScheduledFuture<?> abandonment = scheduleAbandonment(rConnection, finished, deadline);
+            final REXP result;
+            boolean broken = false;
+            try {
+                phase = RModelMetrics.Phase.ASSIGN;
+                rConnection.assign(INSTANCE_VARIABLE, encodedInstances);
+                phaseStart = recordPhase(metrics, phase, phaseStart);
+
+                phase = RModelMetrics.Phase.EVAL;
+                result = rConnection.eval(expression);
+                phaseStart = recordPhase(metrics, phase, phaseStart);
+            } catch (final RserveException e) {
+                if (finished.get()) {
+                    throw new EvaluationTimeoutException(phase, e);
+                }
+                broken = isBroken(rConnection, e);
+                if (broken) {
+                    logger.warn("The connection to Rserve is broken and will be replaced.", e);
+                } else {
+                    logger.warn("Error during instance evaluation. Error found: " + rConnection.getLastError());
+                }
+                throw e;
+            } finally {
+                if (abandonment != null) {
+                    abandonment.cancel(false);
+                }
+                if (finished.compareAndSet(false, true) && !broken) {
+                    this.connectionPool.release(rConnection);
+                } else {
+                    replaceConnection(rConnection);
+                }
+            }
+
+            phase = RModelMetrics.Phase.DECODE;
+            final T decodedResult = decoder.decode(result);
+            recordPhase(metrics, phase, phaseStart);
+
+            metrics.recordEvaluation(instances.size(), bytesSent);
+            return decodedResult;
+
+        } catch (final EvaluationTimeoutException e) {
+            metrics.recordTimeout(e.getPhase());
+            throw e;
+        } catch (final RserveException | REXPMismatchException | InterruptedException | RuntimeException e) {
+            metrics.recordError(phase);
+            throw e;
+        }
+    }
+
+    /**
+     * Records the duration of a phase that completed now.
+     *
+     * @param metrics    The metrics where the duration is recorded.
+     * @param phase      The phase.
+     * @param phaseStart When the phase started, as given by {@link System#nanoTime()}.
+     * @return when the phase completed, i.e. when the next phase starts.
+     */
+    private static long recordPhase(final RModelMetrics metrics,
+                                    final RModelMetrics.Phase phase,
+                                    final long phaseStart) {
+        final long now = System.nanoTime();
+        metrics.recordPhase(phase, now - phaseStart);
+        return now;
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting at most until the deadline of the evaluation, if any.
+     * <p>
+     * If the pool has no connections, because all of them are being {@link #replaceConnection replaced}, the wait
+     * ends immediately with an {@link EvaluationTimeoutException}, whether the evaluation has a deadline or not, so
+     * that the caller gets the {@link #fallbackClassDistribution} or an error instead of waiting for Rserve to be
+     * reachable again.
+     *
+     * @param deadline The deadline of the evaluation, as given by {@link System#nanoTime()}. It is ignored if
+     *                 evaluations have no deadline.
+     * @return the borrowed connection.
+     * @throws InterruptedException If the thread was interrupted while waiting for a connection.
+     * @throws EvaluationTimeoutException If no connection was available until the deadline or the pool has no
+     *                                    connections.
+     * @throws IllegalStateException If the model is closed.
+     */
+    private RConnection borrowConnection(final long deadline) throws InterruptedException {
+        final RConnection rConnection;
+        try {
+            rConnection = this.evaluationTimeoutNanos == 0
+                    ? this.connectionPool.borrow()
+                    : this.connectionPool.borrow(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (final IllegalStateException e) {
+            if (this.connectionPool.isClosed()) {
+                throw e;
+            }
+            throw new EvaluationTimeoutException(RModelMetrics.Phase.CONNECTION_WAIT, e);
+        }
+        if (rConnection == null) {
+            throw new EvaluationTimeoutException(RModelMetrics.Phase.CONNECTION_WAIT, null);
+        }
+        return rConnection;
     }
 
     /**
-     * Converts a {@link Instance} to a {@link REXP data frame}. This object will be used by the model to classify the
-     * instance.
+     * Schedules the abandonment of a borrowed connection when the deadline of the evaluation expires, which closes the
+     * connection if the evaluation is not {@code finished} by then.
      *
-     * @param instance The instance to classify.
-     * @return the object to be classified by a R model.
-     * @throws REXPMismatchException If it cannot convert an object to an expected type.
+     * @param rConnection The borrowed connection.
+     * @param finished    Whether the evaluation finished or the connection was abandoned, whichever happens first.
+     * @param deadline    The deadline of the evaluation, as given by {@link System#nanoTime()}.
+     * @return the scheduled abandonment, or {@code null} if evaluations have no deadline.
      */
-    private REXP convertInstanceToDataFrame(final Instance instance) throws REXPMismatchException {
-        final RList rlist = new RList();
-        for (int i = 0; i < this.schema.getFieldSchemas().size(); i++) {
-            final FieldSchema fieldSchema = this.schema.getFieldSchemas().get(i);
-            rlist.put(fieldSchema.getFieldName(), convertFieldValue(instance.getValue(i), fieldSchema.getValueSchema()));
+    private ScheduledFuture<?> scheduleAbandonment(final RConnection rConnection,
+                                                   final AtomicBoolean finished,
+                                                   final long deadline) {
+        if (this.watchdog == null) {
+            return null;
         }
-        return REXP.createDataFrame(rlist);
+        return this.watchdog.schedule(
+                () -> {
+                    if (finished.compareAndSet(false, true)) {
+                        logger.warn("Abandoning a connection to Rserve that exceeded the deadline of the evaluation.");
+                        rConnection.close();
+                    }
+                },
+                deadline - System.nanoTime(),
+                TimeUnit.NANOSECONDS
+        );
     }
 
     /**
-     * Converts the value of a field to be used by R. If the type of the schema of categorical we will need to get its
-     * real value.
+     * Checks whether an error of a connection means that the connection is broken, i.e. that Rserve didn't reply,
+     * instead of being an error of the R code.
      *
-     * @param fieldValue  The value of the field.
-     * @param fieldSchema The schema of the field.
-     * @return the value of the field to use in R code.
+     * @param rConnection The connection.
+     * @param e           The error.
+     * @return {@code true} if the connection is broken, {@code false} otherwise.
      */
-    private REXP convertFieldValue(final double fieldValue, final AbstractValueSchema fieldSchema) {
-        if (fieldSchema instanceof CategoricalValueSchema) {
-            return new REXPString(
-                    EncodingHelper.decodeDoubleToCategory(
-                            fieldValue,
-                            (CategoricalValueSchema) fieldSchema
-                    )
-            );
+    private static boolean isBroken(final RConnection rConnection, final RserveException e) {
+        return !rConnection.isConnected() || e.getRequestReturnCode() < 0;
+    }
+
+    /**
+     * Checks the health of the idle connections, one at a time, and replaces the ones that are broken or whose
+     * workspace no longer has the model ready. The connections in use are not checked, since they are healthy enough
+     * to be evaluating instances.
+     */
+    private void checkConnections() {
+        try {
+            for (int i = this.connectionPool.size(); i > 0; i--) {
+                final RConnection rConnection = this.connectionPool.borrow(0, TimeUnit.NANOSECONDS);
+                if (rConnection == null) {
+                    return;
+                }
+                if (isHealthy(rConnection)) {
+                    this.connectionPool.release(rConnection);
+                } else {
+                    replaceConnection(rConnection);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final RuntimeException e) {
+            logger.error("Could not check the health of the connections to Rserve.", e);
+        }
+    }
+
+    /**
+     * Checks whether a connection is able to evaluate instances.
+     *
+     * @param rConnection A borrowed connection.
+     * @return {@code true} if the connection is healthy, {@code false} otherwise.
+     */
+    private static boolean isHealthy(final RConnection rConnection) {
+        try {
+            if (rConnection.eval(HEALTH_CHECK_EXPRESSION).asBytes()[0] != 0) {
+                return true;
+            }
+            logger.warn("The R workspace of a connection to Rserve lost the model and will be replaced.");
+            return false;
+        } catch (final REXPMismatchException | RserveException e) {
+            logger.warn("A connection to Rserve failed the health check and will be replaced.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes a connection that can no longer be used from the pool and creates a new one in the background to take
+     * its place, so that the other connections keep serving in the meantime.
+     * <p>
+     * Without a {@link #connectionFactory} the connection cannot be replaced, and so it is kept in the pool instead:
+     * the evaluations that use it keep failing, as they would if the model didn't replace connections at all, rather
+     * than the pool shrinking until no connection is left.
+     *
+     * @param rConnection The connection that can no longer be used.
+     */
+    private void replaceConnection(final RConnection rConnection) {
+        final RConnectionFactory connectionFactory = this.connectionFactory;
+        if (connectionFactory == null) {
+            logger.warn("A connection to Rserve can no longer be used, but it cannot be replaced without a factory.");
+            this.connectionPool.release(rConnection);
+            return;
+        }
+        this.connectionPool.discard(rConnection);
+        scheduleMaintenance(() -> restoreConnection(connectionFactory), 0);
+    }
+
+    /**
+     * Creates a connection with the model loaded, prepares it and warms it up like the others, and adds it to the
+     * pool, retrying later if it fails.
+     *
+     * @param connectionFactory Creates connections to Rserve with the model loaded.
+     */
+    private void restoreConnection(final RConnectionFactory connectionFactory) {
+        try {
+            final RConnection newConnection = connectionFactory.create();
+            try {
+                prepareConnection(newConnection);
+                final List<Instance> warmUpInstances = this.warmUpInstances;
+                if (warmUpInstances != null) {
+                    warmUpConnection(newConnection, warmUpInstances);
+                }
+            } catch (final IllegalStateException e) {
+                newConnection.close();
+                throw e;
+            }
+            this.connectionPool.add(newConnection);
+            logger.info(String.format(
+                    "A connection to Rserve was replaced, the pool has %d connections.",
+                    this.connectionPool.size()
+            ));
+        } catch (final ModelLoadingException | IllegalStateException e) {
+            logger.error(String.format(
+                    "Could not replace a connection to Rserve, %d connections are left. Retrying in %d ms.",
+                    this.connectionPool.size(),
+                    RECONNECT_DELAY_MILLIS
+            ), e);
+            scheduleMaintenance(() -> restoreConnection(connectionFactory), RECONNECT_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Schedules a maintenance task of the connections, unless the model is closed.
+     *
+     * @param task        The task.
+     * @param delayMillis The time to wait before running the task, in milliseconds.
+     */
+    private void scheduleMaintenance(final Runnable task, final long delayMillis) {
+        try {
+            this.maintenanceExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            // The model was closed, and so are the connections.
+        }
+    }
+
+    /**
+     * Evaluates instances and, if the evaluation exceeds the deadline and there is a
+     * {@link #fallbackClassDistribution}, returns the fallback result instead.
+     *
+     * @param evaluation Evaluates the instances.
+     * @param fallback   Creates the fallback result.
+     * @param <T>        The type of the result.
+     * @return the result of the evaluation or the fallback result.
+     * @throws EvaluationTimeoutException If the evaluation exceeds the deadline and there is no fallback.
+     */
+    private <T> T fallbackOnTimeout(final Supplier<T> evaluation, final Supplier<T> fallback) {
+        try {
+            return evaluation.get();
+        } catch (final EvaluationTimeoutException e) {
+            if (this.fallbackClassDistribution == null) {
+                throw e;
+            }
+            return fallback.get();
+        }
+    }
+
+    /**
+     * Completes a future class distribution with the {@link #fallbackClassDistribution}, if there is one, when the
+     * evaluation exceeds the deadline.
+     *
+     * @param classDistribution The future class distribution.
+     * @return the future class distribution or the fallback one.
+     */
+    private CompletableFuture<double[]> fallbackOnTimeout(final CompletableFuture<double[]> classDistribution) {
+        if (this.fallbackClassDistribution == null) {
+            return classDistribution;
+        }
+        return classDistribution.exceptionally(e -> {
+            final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof EvaluationTimeoutException) {
+                return this.fallbackClassDistribution.clone();
+            }
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+        });
+    }
+
+    /**
+     * Parses a class distribution given as a comma separated list of probabilities.
+     *
+     * @param value           The comma separated list of probabilities.
+     * @param numberOfClasses The number of target values.
+     * @return the class distribution.
+     * @throws IllegalArgumentException If the value is not a valid class distribution with the given number of target
+     *                                  values.
+     */
+    static double[] parseClassDistribution(final String value, final int numberOfClasses) {
+        final double[] classDistribution = Splitter.on(',').trimResults().splitToList(value).stream()
+                .mapToDouble(Double::parseDouble)
+                .toArray();
+        Preconditions.checkArgument(
+                classDistribution.length == numberOfClasses,
+                "The class distribution must have %s probabilities, one per target value, but has %s.",
+                numberOfClasses,
+                classDistribution.length
+        );
+        Preconditions.checkArgument(
+                Arrays.stream(classDistribution).allMatch(probability -> probability >= 0 && probability <= 1),
+                "The probabilities of the class distribution must be between 0 and 1."
+        );
+        return classDistribution;
+    }
+
+    /**
+     * Combines the predicted classes and the class distributions of several instances.
+     *
+     * @param classifications    The index of the predicted class of each instance.
+     * @param classDistributions The class distribution of each instance.
+     * @return the score of each instance.
+     */
+    private static ClassificationScore[] toScores(final int[] classifications, final double[][] classDistributions) {
+        final ClassificationScore[] scores = new ClassificationScore[classifications.length];
+        for (int row = 0; row < scores.length; row++) {
+            scores[row] = new ClassificationScore(classifications[row], classDistributions[row]);
+        }
+        return scores;
+    }
+
+    /**
+     * Gets the index of the greatest value of a class distribution. In case of a tie the first index is returned.
+     *
+     * @param classDistribution The class distribution.
+     * @return the index of the class with the highest probability.
+     */
+    private static int indexOfMaxValue(final double[] classDistribution) {
+        int maxIndex = 0;
+        for (int i = 1; i < classDistribution.length; i++) {
+            if (classDistribution[i] > classDistribution[maxIndex]) {
+                maxIndex = i;
+            }
         }
-        return new REXPDouble(fieldValue);
+        return maxIndex;
+    }
+
+    /**
+     * Wraps an error found during the evaluation of instances. The {@link EvaluationTimeoutException timeouts} are
+     * thrown as they are, so that the callers can tell them apart.
+     *
+     * @param e The error found.
+     * @return the exception to be thrown to the caller.
+     */
+    private static RuntimeException evaluationError(final Exception e) {
+        if (e instanceof EvaluationTimeoutException) {
+            return (EvaluationTimeoutException) e;
+        }
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        return new RuntimeException("Error during instance evaluation.", e);
+    }
+
+    /**
+     * Decodes the result of an R expression.
+     *
+     * @param <T> The type of the decoded result.
+     */
+    @FunctionalInterface
+    private interface ResultDecoder<T> {
+
+        /**
+         * Decodes the result of an R expression.
+         *
+         * @param result The result of the expression.
+         * @return the decoded result.
+         * @throws REXPMismatchException If the result doesn't have the expected type.
+         */
+        T decode(REXP result) throws REXPMismatchException;
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The result of scoring an instance, i.e. both its predicted class and its class distribution.
+ *
+ * @since 0.5.0
+ */
+public final class ClassificationScore {
+
+    /**
+     * The index of the predicted class.
+     */
+    private final int predictedClass;
+
+    /**
+     * The class distribution.
+     */
+    private final double[] classDistribution;
+
+    /**
+     * Constructor.
+     *
+     * @param predictedClass    The index of the predicted class.
+     * @param classDistribution The class distribution.
+     */
+    public ClassificationScore(final int predictedClass, final double[] classDistribution) {
+        this.predictedClass = predictedClass;
+        this.classDistribution = classDistribution;
+    }
+
+    /**
+     * Gets the index of the predicted class, in the same order of the nominal values of the target field.
+     *
+     * @return the index of the predicted class.
+     */
+    public int getPredictedClass() {
+        return this.predictedClass;
+    }
+
+    /**
+     * Gets the probability of each class, in the same order of the nominal values of the target field.
+     *
+     * @return the class distribution.
+     */
+    public double[] getClassDistribution() {
+        return this.classDistribution;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final ClassificationScore that = (ClassificationScore) o;
+        return this.predictedClass == that.predictedClass
+                && Arrays.equals(this.classDistribution, that.classDistribution);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.predictedClass, Arrays.hashCode(this.classDistribution));
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("predictedClass", this.predictedClass)
+                .add("classDistribution", Arrays.toString(this.classDistribution))
+                .toString();
+    }
+}
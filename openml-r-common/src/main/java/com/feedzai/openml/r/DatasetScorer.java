@@ -0,0 +1,532 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.AbstractValueSchema;
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scores a dataset in CSV format with a {@link ClassificationGenericRModel}, streaming it from the input to the output
+ * so that the memory used doesn't depend on the size of the dataset.
+ * <p>
+ * The rows are read in chunks, and each chunk is scored in a single call to the model, i.e. it is encoded, evaluated
+ * in R and decoded by one of the connections of the model. Up to a maximum number of chunks are scored at the same
+ * time; when that limit is reached, the reading of the input waits until the oldest chunk is scored and written, so
+ * that a slow model applies backpressure to the reading instead of accumulating rows in memory. The results are written
+ * as soon as they are available, in the order of the rows.
+ * <p>
+ * The first line of the input is a header with the names of the columns, which are matched with the names of the
+ * fields of the {@link DatasetSchema schema} of the model, and so the columns can be in any order. Every predictive
+ * field must have a column, the other columns are ignored. The values are separated by commas and can be quoted with
+ * double quotes, but cannot span several lines. Empty numeric values are missing values.
+ * <p>
+ * The output has a header followed by one line per row of the input, with the predicted class and the probability of
+ * each target value, in the order of the target values of the schema. The predicted class is empty when the model
+ * predicts a class that is not a target value of the schema.
+ *
+ * @since 0.5.0
+ */
+public class DatasetScorer {
+
+    /**
+     * The default number of rows of each chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * The default maximum number of chunks scored at the same time.
+     */
+    public static final int DEFAULT_MAX_CHUNKS_IN_FLIGHT = 4;
+
+    /**
+     * The separator of the values of a line.
+     */
+    private static final char SEPARATOR = ',';
+
+    /**
+     * The quote of the values of a line.
+     */
+    private static final char QUOTE = '"';
+
+    /**
+     * The model that scores the rows.
+     */
+    private final ClassificationGenericRModel model;
+
+    /**
+     * The number of rows of each chunk.
+     */
+    private final int chunkSize;
+
+    /**
+     * The maximum number of chunks scored at the same time.
+     */
+    private final int maxChunksInFlight;
+
+    /**
+     * The target values, in the order of the class distributions.
+     */
+    private final List<String> targetValues;
+
+    /**
+     * The nominal values of each field of the schema, or {@code null} for the numeric fields.
+     */
+    private final List<List<String>> nominalValues = new ArrayList<>();
+
+    /**
+     * Constructor for a {@link DatasetScorer} with the {@link #DEFAULT_CHUNK_SIZE default chunk size} and
+     * {@link #DEFAULT_MAX_CHUNKS_IN_FLIGHT maximum number of chunks in flight}.
+     *
+     * @param model The model that scores the rows. It is not closed by this object.
+     */
+    public DatasetScorer(final ClassificationGenericRModel model) {
+        this(model, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CHUNKS_IN_FLIGHT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param model             The model that scores the rows. It is not closed by this object.
+     * @param chunkSize         The number of rows of each chunk, i.e. of each call to the model.
+     * @param maxChunksInFlight The maximum number of chunks scored at the same time, which should be at least the
+     *                          number of connections of the model to use all of them.
+     */
+    public DatasetScorer(final ClassificationGenericRModel model, final int chunkSize, final int maxChunksInFlight) {
+        Preconditions.checkArgument(chunkSize > 0, "The chunk size must be positive.");
+        Preconditions.checkArgument(maxChunksInFlight > 0, "The maximum number of chunks in flight must be positive.");
+        this.model = model;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = maxChunksInFlight;
+        this.targetValues = new ArrayList<>(getNominalValues(model.getSchema().getTargetFieldSchema()
+                .orElseThrow(() -> new IllegalArgumentException("The model requires a target variable."))));
+        for (final FieldSchema field : model.getSchema().getFieldSchemas()) {
+            this.nominalValues.add(
+                    field.getValueSchema() instanceof CategoricalValueSchema ? getNominalValues(field) : null
+            );
+        }
+    }
+
+    /**
+     * Scores a dataset in a CSV file and writes the results to another CSV file, both in UTF-8.
+     *
+     * @param input  The path of the dataset.
+     * @param output The path where the results are written, which is replaced if it exists.
+     * @return the number of rows scored.
+     * @throws IOException If the files cannot be read or written.
+     * @see #score(Reader, Writer)
+     */
+    public long score(final Path input, final Path output) throws IOException {
+        try (final Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             final Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            return score(reader, writer);
+        }
+    }
+
+    /**
+     * Scores a dataset in CSV format and writes the results, also in CSV format. The streams are not closed.
+     *
+     * @param input  The dataset.
+     * @param output Where the results are written.
+     * @return the number of rows scored.
+     * @throws IOException If the input cannot be read or the output cannot be written.
+     * @throws IllegalArgumentException If the input doesn't match the schema of the model.
+     * @throws RuntimeException If anything goes wrong during the evaluation of the rows.
+     */
+    public long score(final Reader input, final Writer output) throws IOException {
+        final ChunkReader chunkReader = new ChunkReader(
+                input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input)
+        );
+        writeHeader(output);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                this.maxChunksInFlight,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("r-dataset-scorer-%d").build()
+        );
+        final Deque<CompletableFuture<ClassificationScore[]>> chunksInFlight = new ArrayDeque<>();
+        long scoredRows = 0;
+        try {
+            List<Instance> chunk;
+            while (!(chunk = chunkReader.next(this.chunkSize)).isEmpty()) {
+                if (chunksInFlight.size() == this.maxChunksInFlight) {
+                    scoredRows += writeScores(output, chunksInFlight.removeFirst());
+                }
+                final List<Instance> instances = chunk;
+                chunksInFlight.addLast(CompletableFuture.supplyAsync(() -> this.model.score(instances), executor));
+            }
+            while (!chunksInFlight.isEmpty()) {
+                scoredRows += writeScores(output, chunksInFlight.removeFirst());
+            }
+            output.flush();
+            return scoredRows;
+
+        } finally {
+            chunksInFlight.forEach(scores -> scores.cancel(false));
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the header of the results.
+     *
+     * @param output Where the results are written.
+     * @throws IOException If the output cannot be written.
+     */
+    private void writeHeader(final Writer output) throws IOException {
+        final StringBuilder header = new StringBuilder("prediction");
+        for (final String targetValue : this.targetValues) {
+            header.append(SEPARATOR).append(quote(targetValue));
+        }
+        output.write(header.append(System.lineSeparator()).toString());
+    }
+
+    /**
+     * Waits for the scores of a chunk and writes them.
+     *
+     * @param output Where the results are written.
+     * @param scores The future scores of the chunk.
+     * @return the number of rows of the chunk.
+     * @throws IOException If the output cannot be written.
+     */
+    private int writeScores(final Writer output, final CompletableFuture<ClassificationScore[]> scores)
+            throws IOException {
+        final ClassificationScore[] chunkScores;
+        try {
+            chunkScores = scores.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error during instance evaluation.", e.getCause());
+        }
+
+        final StringBuilder lines = new StringBuilder();
+        for (final ClassificationScore score : chunkScores) {
+            if (score.getPredictedClass() != RInstanceEncoder.UNKNOWN_TARGET_VALUE) {
+                lines.append(quote(this.targetValues.get(score.getPredictedClass())));
+            }
+            for (final double probability : score.getClassDistribution()) {
+                lines.append(SEPARATOR).append(probability);
+            }
+            lines.append(System.lineSeparator());
+        }
+        output.write(lines.toString());
+        return chunkScores.length;
+    }
+
+    /**
+     * Quotes a value if it contains the separator or quotes.
+     *
+     * @param value The value.
+     * @return the value to write.
+     */
+    private static String quote(final String value) {
+        if (value.indexOf(SEPARATOR) < 0 && value.indexOf(QUOTE) < 0) {
+            return value;
+        }
+        return QUOTE + value.replace(String.valueOf(QUOTE), "" + QUOTE + QUOTE) + QUOTE;
+    }
+
+    /**
+     * Splits a line in its values, unquoting them.
+     *
+     * @param line The line.
+     * @return the values of the line.
+     * @throws IllegalArgumentException If a quoted value is not closed.
+     */
+    static List<String> split(final String line) {
+        final List<String> values = new ArrayList<>();
+        final StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c != QUOTE) {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+                    value.append(QUOTE);
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == QUOTE) {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        Preconditions.checkArgument(!quoted, "The line has a quoted value that is not closed.");
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * Gets the nominal values of a categorical field, in the order used to encode them in an {@link Instance}.
+     *
+     * @param fieldSchema The schema of the field.
+     * @return the nominal values.
+     * @throws IllegalArgumentException If the field is not categorical.
+     */
+    private static List<String> getNominalValues(final FieldSchema fieldSchema) {
+        final AbstractValueSchema valueSchema = fieldSchema.getValueSchema();
+        Preconditions.checkArgument(
+                valueSchema instanceof CategoricalValueSchema,
+                "The field %s is not categorical.",
+                fieldSchema.getFieldName()
+        );
+        return new ArrayList<>(((CategoricalValueSchema) valueSchema).getNominalValues());
+    }
+
+    /**
+     * Reads the rows of a dataset in chunks of instances.
+     */
+    private final class ChunkReader {
+
+        /**
+         * The dataset.
+         */
+        private final BufferedReader reader;
+
+        /**
+         * The number of fields of the schema of the model.
+         */
+        private final int numberOfFields;
+
+        /**
+         * The index of each predictive field in the schema.
+         */
+        private final int[] fieldIndexes;
+
+        /**
+         * The column of the dataset of each predictive field.
+         */
+        private final int[] columns;
+
+        /**
+         * The index of each nominal value of each predictive field, or {@code null} for the numeric fields.
+         */
+        private final List<Map<String, Integer>> nominalValueIndexes = new ArrayList<>();
+
+        /**
+         * The number of lines read so far.
+         */
+        private long lineNumber = 0;
+
+        /**
+         * Constructor. Reads the header of the dataset.
+         *
+         * @param reader The dataset.
+         * @throws IOException If the dataset cannot be read.
+         * @throws IllegalArgumentException If the header doesn't have all the predictive fields of the schema.
+         */
+        private ChunkReader(final BufferedReader reader) throws IOException {
+            this.reader = reader;
+            final DatasetSchema schema = DatasetScorer.this.model.getSchema();
+            this.numberOfFields = schema.getFieldSchemas().size();
+
+            final String header = readLine();
+            Preconditions.checkArgument(header != null, "The dataset doesn't have a header.");
+            final List<String> columnNames = split(header);
+
+            final List<FieldSchema> predictiveFields = schema.getPredictiveFields();
+            this.fieldIndexes = new int[predictiveFields.size()];
+            this.columns = new int[predictiveFields.size()];
+            for (int i = 0; i < predictiveFields.size(); i++) {
+                final FieldSchema field = predictiveFields.get(i);
+                this.fieldIndexes[i] = field.getFieldIndex();
+                this.columns[i] = columnNames.indexOf(field.getFieldName());
+                Preconditions.checkArgument(
+                        this.columns[i] >= 0,
+                        "The dataset doesn't have a column for the field %s.",
+                        field.getFieldName()
+                );
+
+                final List<String> nominalValues = DatasetScorer.this.nominalValues.get(field.getFieldIndex());
+                if (nominalValues != null) {
+                    final Map<String, Integer> indexes = new HashMap<>();
+                    for (int value = 0; value < nominalValues.size(); value++) {
+                        indexes.put(nominalValues.get(value), value);
+                    }
+                    this.nominalValueIndexes.add(indexes);
+                } else {
+                    this.nominalValueIndexes.add(null);
+                }
+            }
+        }
+
+        /**
+         * Reads the next chunk of rows.
+         *
+         * @param maxRows The maximum number of rows to read.
+         * @return the instances of the rows, which is empty when there are no more rows.
+         * @throws IOException If the dataset cannot be read.
+         * @throws IllegalArgumentException If a row doesn't match the schema.
+         */
+        private List<Instance> next(final int maxRows) throws IOException {
+            final List<Instance> instances = new ArrayList<>(maxRows);
+            String line;
+            while (instances.size() < maxRows && (line = readLine()) != null) {
+                if (!line.isEmpty()) {
+                    instances.add(toInstance(line));
+                }
+            }
+            return instances;
+        }
+
+        /**
+         * Reads the next line of the dataset.
+         *
+         * @return the line, or {@code null} if the end of the dataset was reached.
+         * @throws IOException If the dataset cannot be read.
+         */
+        private String readLine() throws IOException {
+            final String line = this.reader.readLine();
+            if (line != null) {
+                this.lineNumber++;
+            }
+            return line;
+        }
+
+        /**
+         * Converts a row of the dataset to an instance.
+         *
+         * @param line The line of the row.
+         * @return the instance.
+         * @throws IllegalArgumentException If the row doesn't match the schema.
+         */
+        private Instance toInstance(final String line) {
+            final List<String> row;
+            try {
+                row = split(line);
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Line %d: %s", this.lineNumber, e.getMessage()), e);
+            }
+
+            final double[] values = new double[this.numberOfFields];
+            for (int i = 0; i < this.columns.length; i++) {
+                Preconditions.checkArgument(
+                        this.columns[i] < row.size(),
+                        "Line %s: the row doesn't have the column %s.",
+                        this.lineNumber,
+                        this.columns[i] + 1
+                );
+                values[this.fieldIndexes[i]] = parseValue(row.get(this.columns[i]).trim(), i);
+            }
+            return new RowInstance(values);
+        }
+
+        /**
+         * Parses the value of a predictive field.
+         *
+         * @param value The value in the dataset.
+         * @param field The index of the predictive field.
+         * @return the value of the field in the instance.
+         * @throws IllegalArgumentException If the value is not valid.
+         */
+        private double parseValue(final String value, final int field) {
+            final Map<String, Integer> nominalValueIndexes = this.nominalValueIndexes.get(field);
+            if (nominalValueIndexes != null) {
+                final Integer index = nominalValueIndexes.get(value);
+                Preconditions.checkArgument(
+                        index != null,
+                        "Line %s: [%s] is not a nominal value of the column %s.",
+                        this.lineNumber,
+                        value,
+                        this.columns[field] + 1
+                );
+                return index;
+            }
+
+            if (value.isEmpty()) {
+                return Double.NaN;
+            }
+            try {
+                return Double.parseDouble(value);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException(String.format(
+                        "Line %d: [%s] is not a number in the column %d.",
+                        this.lineNumber,
+                        value,
+                        this.columns[field] + 1
+                ), e);
+            }
+        }
+    }
+
+    /**
+     * Instance with the values of a row of the dataset.
+     */
+    private final class RowInstance implements Instance {
+
+        /**
+         * The value of each field, where the categorical values are the indexes of the nominal values.
+         */
+        private final double[] values;
+
+        /**
+         * Constructor.
+         *
+         * @param values The value of each field.
+         */
+        private RowInstance(final double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public double getValue(final int index) {
+            return this.values[index];
+        }
+
+        @Override
+        public String getStringValue(final int index) {
+            final List<String> fieldNominalValues = DatasetScorer.this.nominalValues.get(index);
+            if (fieldNominalValues != null) {
+                return fieldNominalValues.get((int) this.values[index]);
+            }
+            return String.valueOf(this.values[index]);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+/**
+ * Exception thrown by {@link ClassificationGenericRModel} when an evaluation of instances in R exceeds the
+ * {@link RLoadParameter#EVALUATION_TIMEOUT_MILLIS deadline} and no
+ * {@link RLoadParameter#FALLBACK_CLASS_DISTRIBUTION fallback} is configured. It is also thrown, in the
+ * {@link RModelMetrics.Phase#CONNECTION_WAIT connection wait} phase, when there is no connection to wait for because
+ * all of them are being replaced.
+ *
+ * @since 0.5.0
+ */
+public class EvaluationTimeoutException extends RuntimeException {
+
+    /**
+     * The phase of the evaluation that exceeded the deadline.
+     */
+    private final RModelMetrics.Phase phase;
+
+    /**
+     * Constructor.
+     *
+     * @param phase The phase of the evaluation that exceeded the deadline.
+     * @param cause The error caused by the abandonment of the connection, if any.
+     */
+    public EvaluationTimeoutException(final RModelMetrics.Phase phase, final Throwable cause) {
+        super(String.format("The evaluation of the instances exceeded the deadline in the %s phase.", phase), cause);
+        this.phase = phase;
+    }
+
+    /**
+     * Gets the phase of the evaluation that exceeded the deadline.
+     *
+     * @return the phase.
+     */
+    public RModelMetrics.Phase getPhase() {
+        return this.phase;
+    }
+}
@@ -20,7 +20,12 @@
 
 package com.feedzai.openml.r;
 
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.AbstractValueSchema;
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
 import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.feedzai.openml.mocks.MockInstance;
 import com.feedzai.openml.model.MachineLearningModel;
 import com.feedzai.openml.provider.descriptor.fieldtype.ParamValidationError;
 import com.feedzai.openml.provider.exception.ModelLoadingException;
@@ -28,8 +33,10 @@ import com.feedzai.openml.provider.model.MachineLearningModelLoader;
 import com.feedzai.openml.util.load.LoadSchemaUtils;
 import com.feedzai.openml.util.validate.ClassificationValidationUtils;
 import com.feedzai.openml.util.validate.ValidationUtils;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HostAndPort;
 import org.rosuda.REngine.REXPMismatchException;
 import org.rosuda.REngine.Rserve.RConnection;
 import org.rosuda.REngine.Rserve.RserveException;
@@ -38,16 +45,34 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of the {@link MachineLearningModelLoader}.
  * <p>
  * This class is responsible for the initialization of a {@link MachineLearningModel} that was generated in R. These
- * instances receive an instance of {@link RConnection} that is initialized by this class. That object is being used to
- * connect to a Rserve server that allows to execute R code in a separate workspace for each connection. This connection
- * should be closed when the {@link MachineLearningModel model} is closed.
+ * instances receive a {@link RConnectionPool pool} of {@link RConnection connections} that are initialized by this
+ * class. Those objects are being used to connect to a Rserve server that allows to execute R code in a separate
+ * workspace for each connection, and so the model is loaded in each one of them. These connections should be closed
+ * when the {@link MachineLearningModel model} is closed.
+ * <p>
+ * The way the model is loaded can be tuned with the {@link RLoadParameter parameters} given to this class. In
+ * particular, the connections can be distributed among several Rserve servers, see
+ * {@link RLoadParameter#RSERVE_ENDPOINTS}: the connections of the pool are created in round robin, and each load
+ * starts where the previous one stopped, so that the models loaded in the same JVM are also spread among the servers.
+ * When a server cannot be reached the connection is created in the next one.
+ * <p>
+ * The model is given a {@link RConnectionFactory} that creates connections the same way, so that it can replace in the
+ * background the connections that break or are abandoned, without reloading the whole model.
+ * <p>
+ * The time spent in each {@link ModelLoadReport.Stage stage} of the load is logged and available in
+ * {@link ClassificationGenericRModel#getLoadReport()}.
  *
  * @author Paulo Pereira (paulo.pereira@feedzai.com)
  * @since 0.1.0
@@ -64,24 +89,139 @@ public class GenericRModelLoader implements MachineLearningModelLoader<Classific
      */
     private static final String SCRIPT_PATH = File.separator + "scripts" + File.separator + "classifier.R";
 
+    /**
+     * The R expression that loads the model to the workspace.
+     */
+    private static final String LOAD_MODEL_EXPRESSION = String.format(
+            "%s <- %s()",
+            ProviderRObject.MODEL_VARIABLE.getName(),
+            ProviderRObject.LOAD_MODEL_FN.getName()
+    );
+
+    /**
+     * The seed of the random values of the instances used to warm up the models.
+     */
+    private static final long WARM_UP_SEED = 7;
+
+    /**
+     * The port Rserve listens on by default.
+     */
+    static final int DEFAULT_RSERVE_PORT = 6311;
+
+    /**
+     * The endpoint of the local Rserve with the default configuration.
+     */
+    static final String DEFAULT_RSERVE_ENDPOINT = "localhost:" + DEFAULT_RSERVE_PORT;
+
+    /**
+     * The index of the Rserve endpoint where the next connection is created, shared by all the loaders so that the
+     * models loaded in the same JVM are spread among the endpoints.
+     */
+    private static final AtomicInteger nextEndpoint = new AtomicInteger();
+
+    /**
+     * The {@link RLoadParameter parameters} used to load the models.
+     */
+    private final Map<String, String> params;
+
+    /**
+     * Constructor for a {@link GenericRModelLoader} that uses the default value of all the {@link RLoadParameter}.
+     */
+    public GenericRModelLoader() {
+        this(ImmutableMap.of());
+    }
+
+    /**
+     * Constructor for a {@link GenericRModelLoader}.
+     *
+     * @param params The {@link RLoadParameter parameters} used to load the models.
+     */
+    public GenericRModelLoader(final Map<String, String> params) {
+        this.params = ImmutableMap.copyOf(params);
+    }
+
     @Override
     public ClassificationGenericRModel loadModel(final Path modelPath,
                                                  final DatasetSchema schema) throws ModelLoadingException {
+        return loadModel(modelPath, schema, ImmutableMap.of());
+    }
+
+    /**
+     * Loads a model with the given {@link RLoadParameter parameters}, which override the ones of this loader. These
+     * are the same parameters checked by {@link #validateForLoad(Path, DatasetSchema, Map)} for the same
+     * {@code params}.
+     *
+     * @param modelPath Path of the directory of the model.
+     * @param schema    The {@link DatasetSchema} the model uses.
+     * @param params    The parameters used to load the model.
+     * @return the model.
+     * @throws ModelLoadingException If anything goes wrong.
+     */
+    public ClassificationGenericRModel loadModel(final Path modelPath,
+                                                 final DatasetSchema schema,
+                                                 final Map<String, String> params) throws ModelLoadingException {
         logger.info(String.format("Trying to load a model in path [%s]...", modelPath));
-        ClassificationValidationUtils.validateParamsModelToLoad(this, modelPath, schema, ImmutableMap.of());
+        final Map<String, String> loadParams = getLoadParams(params);
+        ClassificationValidationUtils.validateParamsModelToLoad(this, modelPath, schema, loadParams);
 
-        final RConnection rConnection;
+        final ModelLoadReport.Builder report = new ModelLoadReport.Builder();
+        final int poolSize = RLoadParameter.CONNECTION_POOL_SIZE.getIntValue(loadParams);
+        final List<HostAndPort> endpoints = parseEndpoints(RLoadParameter.RSERVE_ENDPOINTS.getValue(loadParams));
+        final int firstEndpoint = nextEndpoint.getAndAdd(poolSize);
+        final List<RConnection> connections = new ArrayList<>(poolSize);
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                connections.add(createModelConnection(modelPath, endpoints, firstEndpoint + i, report, loadParams));
+            }
+        } catch (final ModelLoadingException e) {
+            connections.forEach(RConnection::close);
+            logger.warn(String.format("Model could not be loaded: %s", report.build()));
+            throw e;
+        }
 
-        rConnection = createConnection();
-        loadScriptFile(rConnection, modelPath);
-        validateRWorkspace(rConnection);
+        long stageStart = System.nanoTime();
+        final RConnectionPool connectionPool = new RConnectionPool(connections);
+        final ClassificationGenericRModel classificationGenericRModel;
+        try {
+            classificationGenericRModel = new ClassificationGenericRModel(connectionPool, schema, loadParams);
+        } catch (final IllegalStateException e) {
+            connectionPool.close();
+            logger.warn(String.format("Model could not be loaded: %s", report.build()));
+            throw new ModelLoadingException("An error was found during the creation of the model", e);
+        }
+        classificationGenericRModel.setConnectionFactory(() -> createModelConnection(
+                modelPath,
+                endpoints,
+                nextEndpoint.getAndIncrement(),
+                new ModelLoadReport.Builder(),
+                loadParams
+        ));
+        stageStart = report.record(ModelLoadReport.Stage.CREATE_MODEL, stageStart);
 
-        loadModel(rConnection);
+        final int warmUpInstances = RLoadParameter.WARM_UP_INSTANCES.getIntValue(loadParams);
+        if (warmUpInstances > 0) {
+            try {
+                classificationGenericRModel.warmUp(createWarmUpInstances(schema, warmUpInstances));
+            } catch (final IllegalStateException e) {
+                classificationGenericRModel.close();
+                logger.warn(String.format("Model could not be loaded: %s", report.build()));
+                throw new ModelLoadingException("An error was found during the warm-up of the model", e);
+            }
+            stageStart = report.record(ModelLoadReport.Stage.WARM_UP, stageStart);
+        }
 
-        final ClassificationGenericRModel classificationGenericRModel = new ClassificationGenericRModel(rConnection, schema);
-        ClassificationValidationUtils.validateClassificationModel(schema, classificationGenericRModel);
+        try {
+            ClassificationValidationUtils.validateClassificationModel(schema, classificationGenericRModel);
+        } catch (final ModelLoadingException | RuntimeException e) {
+            classificationGenericRModel.close();
+            logger.warn(String.format("Model could not be loaded: %s", report.build()));
+            throw e;
+        }
+        report.record(ModelLoadReport.Stage.VALIDATE_MODEL, stageStart);
 
-        logger.info("Model loaded successfully.");
+        final ModelLoadReport loadReport = report.build();
+        classificationGenericRModel.setLoadReport(loadReport);
+        logger.info(String.format("Model loaded successfully: %s", loadReport));
         return classificationGenericRModel;
     }
 
@@ -100,32 +240,300 @@ public class GenericRModelLoader implements MachineLearningModelLoader<Classific
         if (!schema.getTargetFieldSchema().isPresent()) {
             builder.add(new ParamValidationError("R Models must refer a target field in the correspondent schema."));
         }
+        if (params != null) {
+            final Map<String, String> loadParams = getLoadParams(params);
+            final List<ParamValidationError> paramErrors = RLoadParameter.validateAll(loadParams);
+            builder.addAll(paramErrors);
+
+            if (paramErrors.isEmpty()) {
+                try {
+                    parseEndpoints(RLoadParameter.RSERVE_ENDPOINTS.getValue(loadParams));
+                } catch (final IllegalArgumentException e) {
+                    builder.add(new ParamValidationError(
+                            RLoadParameter.RSERVE_ENDPOINTS.getName(),
+                            RLoadParameter.RSERVE_ENDPOINTS.getValue(loadParams),
+                            e.getMessage()
+                    ));
+                }
+            }
+            if (paramErrors.isEmpty()) {
+                validateFallbackClassDistribution(schema, loadParams).ifPresent(builder::add);
+            }
+            if (paramErrors.isEmpty()
+                    && RLoadParameter.TRANSFER_MODE.getEnumValue(loadParams, RInstanceEncoder.TransferMode.class)
+                            == RInstanceEncoder.TransferMode.MATRIX
+                    && !RInstanceEncoder.isNumericOnly(schema)) {
+                builder.add(new ParamValidationError(
+                        RLoadParameter.TRANSFER_MODE.getName(),
+                        RLoadParameter.TRANSFER_MODE.getValue(loadParams),
+                        "The MATRIX transfer mode requires all the predictive fields to be numeric."
+                ));
+            }
+        }
 
         return builder.build();
     }
 
+    /**
+     * Gets the parameters used to load a model, i.e. the given {@code params} together with the parameters of this
+     * loader that they don't define.
+     *
+     * @param params The parameters given to load the model.
+     * @return the parameters used to load the model.
+     */
+    private Map<String, String> getLoadParams(final Map<String, String> params) {
+        final Map<String, String> loadParams = new HashMap<>(this.params);
+        loadParams.putAll(params);
+        return ImmutableMap.copyOf(loadParams);
+    }
+
+    /**
+     * Validates the {@link RLoadParameter#FALLBACK_CLASS_DISTRIBUTION fallback class distribution}, if it is defined,
+     * against the target values of the schema.
+     *
+     * @param schema The {@link DatasetSchema} the model uses.
+     * @param params The parameters used to load the model.
+     * @return the validation error, if the fallback class distribution is not valid.
+     */
+    private static Optional<ParamValidationError> validateFallbackClassDistribution(final DatasetSchema schema,
+                                                                                    final Map<String, String> params) {
+        final String fallbackClassDistribution = RLoadParameter.FALLBACK_CLASS_DISTRIBUTION.getValue(params);
+        final Optional<AbstractValueSchema> targetValueSchema = schema.getTargetFieldSchema()
+                .map(FieldSchema::getValueSchema);
+        if (fallbackClassDistribution.trim().isEmpty()
+                || !targetValueSchema.filter(CategoricalValueSchema.class::isInstance).isPresent()) {
+            return Optional.empty();
+        }
+
+        try {
+            ClassificationGenericRModel.parseClassDistribution(
+                    fallbackClassDistribution,
+                    ((CategoricalValueSchema) targetValueSchema.get()).getNominalValues().size()
+            );
+            return Optional.empty();
+        } catch (final IllegalArgumentException e) {
+            return Optional.of(new ParamValidationError(
+                    RLoadParameter.FALLBACK_CLASS_DISTRIBUTION.getName(),
+                    fallbackClassDistribution,
+                    e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Creates a connection to RServe with a R workspace ready to classify events, i.e. with the script file loaded,
+     * validated and the model loaded. When the {@link RLoadParameter#SHARED_WORKSPACE workspace is shared}, the
+     * workspace inherited from the Rserve server is only validated.
+     *
+     * @param modelPath     Path of the directory of the model.
+     * @param endpoints     The endpoints of the Rserve servers.
+     * @param endpointIndex The index of the endpoint tried first, which wraps around the endpoints.
+     * @param report        Where the time spent in each stage is recorded.
+     * @param params        The parameters used to load the model.
+     * @return a {@link RConnection connection} to RServe with the model loaded.
+     * @throws ModelLoadingException If anything goes wrong. In that case the connection is closed.
+     */
+    private RConnection createModelConnection(final Path modelPath,
+                                              final List<HostAndPort> endpoints,
+                                              final int endpointIndex,
+                                              final ModelLoadReport.Builder report,
+                                              final Map<String, String> params) throws ModelLoadingException {
+        long stageStart = System.nanoTime();
+        final RConnection rConnection = createConnection(endpoints, endpointIndex, params);
+        stageStart = report.record(ModelLoadReport.Stage.CONNECTION, stageStart);
+        if (RLoadParameter.SHARED_WORKSPACE.getBooleanValue(params)) {
+            validateRWorkspace(rConnection, true);
+            report.record(ModelLoadReport.Stage.VALIDATE_WORKSPACE, stageStart);
+            report.recordConnection();
+            return rConnection;
+        }
+
+        loadPackages(rConnection);
+        stageStart = report.record(ModelLoadReport.Stage.LOAD_PACKAGES, stageStart);
+        loadScriptFile(rConnection, modelPath);
+        stageStart = report.record(ModelLoadReport.Stage.LOAD_SCRIPT, stageStart);
+        validateRWorkspace(rConnection, false);
+        stageStart = report.record(ModelLoadReport.Stage.VALIDATE_WORKSPACE, stageStart);
+        loadModel(rConnection);
+        report.record(ModelLoadReport.Stage.LOAD_MODEL, stageStart);
+        report.recordConnection();
+        return rConnection;
+    }
+
     /**
      * Performs the necessary steps to create a connection to RServe to be used to load a model and classify events.
+     * The endpoints are tried in order, starting at the given index, until a connection is established.
      *
+     * @param endpoints     The endpoints of the Rserve servers.
+     * @param endpointIndex The index of the endpoint tried first, which wraps around the endpoints.
+     * @param params        The parameters used to load the model.
      * @return a {@link RConnection connection} to RServe.
-     * @throws ModelLoadingException If anything goes wrong.
+     * @throws ModelLoadingException If no connection can be established or the login fails.
      */
-    private RConnection createConnection() throws ModelLoadingException {
-        final RConnection rConnection;
+    private RConnection createConnection(final List<HostAndPort> endpoints,
+                                         final int endpointIndex,
+                                         final Map<String, String> params) throws ModelLoadingException {
+        RserveException lastError = null;
+        for (int attempt = 0; attempt < endpoints.size(); attempt++) {
+            final HostAndPort endpoint = endpoints.get(Math.floorMod(endpointIndex + attempt, endpoints.size()));
+            final RConnection rConnection;
+            try {
+                rConnection = new RConnection(endpoint.getHost(), endpoint.getPort());
+            } catch (final RserveException e) {
+                logger.warn(String.format("Could not connect to RServe in [%s].", endpoint));
+                lastError = e;
+                continue;
+            }
+
+            login(rConnection, endpoint, params);
+            logger.info(String.format("Connection to R established in [%s].", endpoint));
+            return rConnection;
+        }
+
+        logger.error("Could not connect to RServe.");
+        throw new ModelLoadingException("Could not connect to RServe", lastError);
+    }
+
+    /**
+     * Logs in a Rserve server, if it requires authentication, with the configured
+     * {@link RLoadParameter#RSERVE_USER user} and {@link RLoadParameter#RSERVE_PASSWORD password}.
+     *
+     * @param rConnection {@link RConnection connection} to RServe.
+     * @param endpoint    The endpoint of the Rserve server.
+     * @param params      The parameters used to load the model.
+     * @throws ModelLoadingException If the login fails. In that case the connection is closed.
+     */
+    private void login(final RConnection rConnection,
+                       final HostAndPort endpoint,
+                       final Map<String, String> params) throws ModelLoadingException {
+        if (!rConnection.needLogin()) {
+            return;
+        }
+
+        final String user = RLoadParameter.RSERVE_USER.getValue(params);
+        if (user.isEmpty()) {
+            rConnection.close();
+            throw new ModelLoadingException(String.format(
+                    "RServe in [%s] requires authentication but no user was configured.",
+                    endpoint
+            ));
+        }
         try {
-            // Creates a connection to RServe, by default it assumes that there is a local instance running on port 6311
-            rConnection = new RConnection();
+            rConnection.login(user, RLoadParameter.RSERVE_PASSWORD.getValue(params));
         } catch (final RserveException e) {
-            logger.error("Could not connect to RServe.");
-            throw new ModelLoadingException("Could not connect to RServe", e);
+            logger.error(String.format("Could not log in RServe in [%s].", endpoint));
+            rConnection.close();
+            throw new ModelLoadingException(String.format("Could not log in RServe in [%s]", endpoint), e);
         }
+    }
 
-        logger.info("Connection to R established.");
-        return rConnection;
+    /**
+     * Parses the endpoints of the Rserve servers.
+     *
+     * @param endpoints Comma separated list of {@code host:port}, where the port is optional.
+     * @return the endpoints, with the {@link #DEFAULT_RSERVE_PORT default port} when it is omitted.
+     * @throws IllegalArgumentException If the endpoints are not valid.
+     */
+    static List<HostAndPort> parseEndpoints(final String endpoints) {
+        final List<HostAndPort> parsedEndpoints = new ArrayList<>();
+        for (final String endpoint : Splitter.on(',').trimResults().omitEmptyStrings().split(endpoints)) {
+            final HostAndPort hostAndPort = HostAndPort.fromString(endpoint).withDefaultPort(DEFAULT_RSERVE_PORT);
+            if (hostAndPort.getHost().isEmpty()) {
+                throw new IllegalArgumentException(String.format("The endpoint [%s] has no host.", endpoint));
+            }
+            parsedEndpoints.add(hostAndPort);
+        }
+        if (parsedEndpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one Rserve endpoint is required.");
+        }
+        return parsedEndpoints;
     }
 
     /**
-     * Loads the objects defined in {@link #SCRIPT_PATH} to the R workspace created by {@link RConnection}.
+     * Creates the synthetic instances used to warm up a model, with random values that respect the schema. The
+     * instances are the same in every load, so that the warm-up is reproducible.
+     *
+     * @param schema            The {@link DatasetSchema} of the model.
+     * @param numberOfInstances The number of instances.
+     * @return the instances.
+     */
+    private static List<Instance> createWarmUpInstances(final DatasetSchema schema, final int numberOfInstances) {
+        final Random random = new Random(WARM_UP_SEED);
+        final List<Instance> instances = new ArrayList<>(numberOfInstances);
+        for (int i = 0; i < numberOfInstances; i++) {
+            instances.add(new MockInstance(schema, random));
+        }
+        return instances;
+    }
+
+    /**
+     * Creates the R script that prepares a workspace with the model loaded, i.e. that loads the
+     * {@link #getRPackages() packages}, the {@link #getScript(Path) script} and the model, as done in each connection.
+     * <p>
+     * This script is meant to be run by the Rserve server before it accepts connections, e.g. as the init script of a
+     * {@link RserveSupervisor}, so that the model is loaded once and inherited by all the connections, which then use
+     * {@link RLoadParameter#SHARED_WORKSPACE}. That server should not be shared with other models, since the objects
+     * of the workspace have the same names for every model.
+     *
+     * @param modelPath Path of the directory of the model.
+     * @return the R script.
+     * @throws ModelLoadingException If the files of the model cannot be found.
+     */
+    public String createWorkspaceScript(final Path modelPath) throws ModelLoadingException {
+        final StringBuilder script = new StringBuilder();
+        for (final String rPackage : getRPackages()) {
+            script.append(String.format("library(%s)", rPackage)).append(System.lineSeparator());
+        }
+        return script.append(getScript(modelPath)).append(System.lineSeparator())
+                .append(LOAD_MODEL_EXPRESSION).append(System.lineSeparator())
+                .toString();
+    }
+
+    /**
+     * Gets the R packages required by the provider, which are loaded before the {@link #getScript(Path) script}. By
+     * default there are none, since the packages required by a generic R model are loaded by its own script.
+     *
+     * @return the names of the R packages.
+     */
+    protected List<String> getRPackages() {
+        return ImmutableList.of();
+    }
+
+    /**
+     * Gets the R script that defines the {@link ProviderRObject provider functions} in the workspace, by default by
+     * sourcing {@link #SCRIPT_PATH} of the model.
+     *
+     * @param modelPath Path of the directory of the model.
+     * @return the R script.
+     * @throws ModelLoadingException If the files of the model cannot be found.
+     */
+    protected String getScript(final Path modelPath) throws ModelLoadingException {
+        return String.format("source('%s%s')", modelPath.toAbsolutePath().toString(), SCRIPT_PATH);
+    }
+
+    /**
+     * Loads the {@link #getRPackages() R packages required by the provider} to the R workspace created by
+     * {@link RConnection}, before the script is loaded.
+     *
+     * @param rConnection {@link RConnection connection} to RServe.
+     * @throws ModelLoadingException If anything goes wrong. In that case the connection is closed.
+     */
+    protected void loadPackages(final RConnection rConnection) throws ModelLoadingException {
+        for (final String rPackage : getRPackages()) {
+            try {
+                rConnection.voidEval(String.format("library(%s)", rPackage));
+            } catch (final RserveException e) {
+                final String errorMsg = String.format("Unable to load the %s package.", rPackage);
+                logger.error(errorMsg + " Error found: " + rConnection.getLastError());
+                rConnection.close();
+                throw new ModelLoadingException(errorMsg, e);
+            }
+        }
+    }
+
+    /**
+     * Loads the objects defined in the {@link #getScript(Path) script} to the R workspace created by
+     * {@link RConnection}.
      *
      * @param rConnection   {@link RConnection connection} to RServe.
      * @param modelFilePath Path of the directory of the model.
@@ -134,7 +542,7 @@ public class GenericRModelLoader implements MachineLearningModelLoader<Classific
     protected void loadScriptFile(final RConnection rConnection,
                                   final Path modelFilePath) throws ModelLoadingException {
         try {
-            rConnection.voidEval(String.format("source('%s%s')", modelFilePath.toAbsolutePath().toString(), SCRIPT_PATH));
+            rConnection.voidEval(getScript(modelFilePath));
         } catch (final RserveException e) {
             logger.error("Could not load the script file. Error found: " + rConnection.getLastError(), e);
             rConnection.close();
@@ -147,9 +555,11 @@ public class GenericRModelLoader implements MachineLearningModelLoader<Classific
      * and classify events.
      *
      * @param rConnection {@link RConnection connection} to RServe.
+     * @param modelLoaded Whether the model must already be loaded in the workspace.
      * @throws ModelLoadingException If anything goes wrong.
      */
-    private void validateRWorkspace(final RConnection rConnection) throws ModelLoadingException {
+    private void validateRWorkspace(final RConnection rConnection,
+                                    final boolean modelLoaded) throws ModelLoadingException {
         final List<String> requiredFunctions = ImmutableList.<String>builder()
                 .add(ProviderRObject.LOAD_MODEL_FN.getName())
                 .add(ProviderRObject.CLASS_DISTRIBUTION_FN.getName())
@@ -179,6 +589,23 @@ public class GenericRModelLoader implements MachineLearningModelLoader<Classific
                 throw new ModelLoadingException(errorMsg, e);
             }
         }
+
+        if (modelLoaded) {
+            try {
+                if (rConnection.eval(String.format("exists('%s')", ProviderRObject.MODEL_VARIABLE.getName()))
+                        .asBytes()[0] == 0) {
+                    final String errorMsg = "The model is not loaded in the shared R workspace.";
+                    logger.error(errorMsg);
+                    rConnection.close();
+                    throw new ModelLoadingException(errorMsg);
+                }
+            } catch (final REXPMismatchException | RserveException e) {
+                final String errorMsg = "An error was found during the validation of the workspace";
+                logger.error(errorMsg + " Error found: " + rConnection.getLastError(), e);
+                rConnection.close();
+                throw new ModelLoadingException(errorMsg, e);
+            }
+        }
     }
 
     /**
@@ -189,9 +616,7 @@ public class GenericRModelLoader implements MachineLearningModelLoader<Classific
      */
     private void loadModel(final RConnection rConnection) throws ModelLoadingException {
         try {
-            rConnection.voidEval(String.format("%s <- %s()",
-                                               ProviderRObject.MODEL_VARIABLE.getName(),
-                                               ProviderRObject.LOAD_MODEL_FN.getName()));
+            rConnection.voidEval(LOAD_MODEL_EXPRESSION);
         } catch (final RserveException e) {
             logger.error("Could not load the model. Error found: " + rConnection.getLastError(), e);
             rConnection.close();
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations, in nanoseconds, with a fixed memory footprint that can be recorded concurrently without
+ * locks.
+ * <p>
+ * Each power of two is split in {@value #SUB_BUCKETS} buckets of the same width, and so the percentiles are reported
+ * with a relative error of at most 1/{@value #SUB_BUCKETS}, rounded up to the upper bound of their bucket.
+ *
+ * @since 0.5.0
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits of a value used to choose the bucket within its power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * Number of buckets of each power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets needed to hold any positive long.
+     */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * The number of values in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The number of recorded values.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of the recorded values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * The greatest recorded value.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a duration.
+     *
+     * @param durationNanos The duration, in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(final long durationNanos) {
+        final long value = Math.max(durationNanos, 0);
+        this.counts.incrementAndGet(bucketIndex(value));
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    /**
+     * Gets the number of recorded durations.
+     *
+     * @return the number of recorded durations.
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Gets the mean of the recorded durations.
+     *
+     * @return the mean, in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        final long count = getCount();
+        return count == 0 ? 0 : (double) this.sum.sum() / count;
+    }
+
+    /**
+     * Gets the greatest recorded duration.
+     *
+     * @return the greatest duration, in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Gets a percentile of the recorded durations, using the nearest rank method.
+     *
+     * @param percentile The percentile, between 0 (exclusive) and 100.
+     * @return the duration of the percentile, in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentile(final double percentile) {
+        Preconditions.checkArgument(percentile > 0 && percentile <= 100, "The percentile must be in ]0, 100].");
+
+        long remaining = 0;
+        final long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            remaining += snapshot[i];
+        }
+        final long rank = (long) Math.ceil(percentile / 100 * remaining);
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Discards all the recorded durations.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "count=%d, mean=%.0fns, p50=%dns, p99=%dns, p999=%dns, max=%dns",
+                getCount(),
+                getMean(),
+                getPercentile(50),
+                getPercentile(99),
+                getPercentile(99.9),
+                getMax()
+        );
+    }
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value The value, not negative.
+     * @return the index of the bucket.
+     */
+    private static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Gets the greatest value of a bucket.
+     *
+     * @param index The index of the bucket.
+     * @return the greatest value of the bucket.
+     */
+    private static long bucketUpperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
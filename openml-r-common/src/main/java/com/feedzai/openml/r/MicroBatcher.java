@@ -0,0 +1,279 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.Instance;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces the evaluation of single instances requested concurrently by several threads into the evaluation of
+ * batches of instances.
+ * <p>
+ * Each instance to evaluate is put in a queue and the calling thread either waits for its result or gets a future
+ * result. Dispatcher threads take the instances from the queue and wait at most {@code window} for more instances to
+ * arrive, or until {@code maxBatchSize} instances are gathered, before evaluating all of them at once. The results are
+ * then handed back to the callers. There should be as many dispatcher threads as the number of batches that can be
+ * evaluated concurrently, e.g. the number of connections to Rserve.
+ *
+ * @since 0.5.0
+ */
+public class MicroBatcher implements AutoCloseable {
+
+    /**
+     * Logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatcher.class);
+
+    /**
+     * Instances waiting to be evaluated.
+     */
+    private final BlockingQueue<PendingInstance> pendingInstances = new LinkedBlockingQueue<>();
+
+    /**
+     * Maximum number of instances evaluated in a single batch.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Maximum time, in nanoseconds, to wait for more instances after the first instance of a batch arrives.
+     */
+    private final long windowNanos;
+
+    /**
+     * Function that evaluates a batch of instances, returning the result of each one in the same order.
+     */
+    private final Function<List<Instance>, double[][]> batchEvaluator;
+
+    /**
+     * The threads that gather and evaluate the batches.
+     */
+    private final ExecutorService dispatchers;
+
+    /**
+     * Whether this object was closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBatchSize   Maximum number of instances evaluated in a single batch.
+     * @param window         Maximum time to wait for more instances after the first instance of a batch arrives.
+     * @param windowUnit     The unit of {@code window}.
+     * @param dispatchers    Number of batches that can be evaluated concurrently.
+     * @param batchEvaluator Function that evaluates a batch of instances, returning the result of each one in the
+     *                       same order.
+     */
+    public MicroBatcher(final int maxBatchSize,
+                        final long window,
+                        final TimeUnit windowUnit,
+                        final int dispatchers,
+                        final Function<List<Instance>, double[][]> batchEvaluator) {
+        Preconditions.checkArgument(maxBatchSize > 0, "The maximum batch size must be positive.");
+        Preconditions.checkArgument(window >= 0, "The batch window cannot be negative.");
+        Preconditions.checkArgument(dispatchers > 0, "The number of dispatchers must be positive.");
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = windowUnit.toNanos(window);
+        this.batchEvaluator = batchEvaluator;
+        this.dispatchers = Executors.newFixedThreadPool(
+                dispatchers,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("r-micro-batcher-%d").build()
+        );
+        for (int i = 0; i < dispatchers; i++) {
+            this.dispatchers.execute(this::dispatch);
+        }
+    }
+
+    /**
+     * Evaluates an instance together with the other instances that arrive in the same batch window, waiting for its
+     * result.
+     *
+     * @param instance The instance to evaluate.
+     * @return the result of the evaluation of the instance.
+     * @throws IllegalStateException If this object is closed.
+     * @throws RuntimeException      If anything goes wrong during the evaluation.
+     */
+    public double[] evaluate(final Instance instance) {
+        try {
+            return evaluateAsync(instance).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the evaluation of the instance.", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error during instance evaluation.", e.getCause());
+        }
+    }
+
+    /**
+     * Schedules the evaluation of an instance together with the other instances that arrive in the same batch window,
+     * without waiting for its result.
+     *
+     * @param instance The instance to evaluate.
+     * @return the future result of the evaluation of the instance.
+     * @throws IllegalStateException If this object is closed.
+     */
+    public CompletableFuture<double[]> evaluateAsync(final Instance instance) {
+        Preconditions.checkState(!this.closed, "The micro batcher is closed.");
+        final PendingInstance pendingInstance = new PendingInstance(instance);
+        this.pendingInstances.add(pendingInstance);
+        if (this.closed && this.pendingInstances.remove(pendingInstance)) {
+            throw new IllegalStateException("The micro batcher is closed.");
+        }
+        return pendingInstance.result;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.dispatchers.shutdownNow();
+
+        final List<PendingInstance> remaining = new ArrayList<>();
+        this.pendingInstances.drainTo(remaining);
+        rejectClosed(remaining);
+    }
+
+    /**
+     * Completes exceptionally the results of instances that will not be evaluated because this object was closed.
+     *
+     * @param rejected The instances that will not be evaluated.
+     */
+    private static void rejectClosed(final List<PendingInstance> rejected) {
+        rejected.forEach(pendingInstance -> pendingInstance.result.completeExceptionally(
+                new IllegalStateException("The micro batcher was closed before evaluating the instance.")
+        ));
+    }
+
+    /**
+     * Loop executed by each dispatcher thread, which gathers batches of instances and evaluates them until this object
+     * is closed.
+     */
+    private void dispatch() {
+        while (!this.closed) {
+            final List<PendingInstance> batch;
+            try {
+                batch = nextBatch();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            evaluateBatch(batch);
+        }
+    }
+
+    /**
+     * Waits for the next batch of instances, i.e. waits for an instance and then for more instances until the batch
+     * window expires or the batch is full.
+     *
+     * @return the instances to be evaluated together.
+     * @throws InterruptedException If the thread was interrupted while waiting, i.e. this object was closed. In that
+     *                              case the instances already taken from the queue are rejected.
+     */
+    private List<PendingInstance> nextBatch() throws InterruptedException {
+        final List<PendingInstance> batch = new ArrayList<>(this.maxBatchSize);
+        batch.add(this.pendingInstances.take());
+
+        final long deadline = System.nanoTime() + this.windowNanos;
+        try {
+            while (batch.size() < this.maxBatchSize) {
+                final long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    this.pendingInstances.drainTo(batch, this.maxBatchSize - batch.size());
+                    break;
+                }
+
+                final PendingInstance pendingInstance = this.pendingInstances.poll(
+                        remainingNanos,
+                        TimeUnit.NANOSECONDS
+                );
+                if (pendingInstance == null) {
+                    break;
+                }
+                batch.add(pendingInstance);
+            }
+        } catch (final InterruptedException e) {
+            rejectClosed(batch);
+            throw e;
+        }
+        return batch;
+    }
+
+    /**
+     * Evaluates a batch of instances and hands back the results to the threads waiting for them.
+     *
+     * @param batch The instances to evaluate.
+     */
+    private void evaluateBatch(final List<PendingInstance> batch) {
+        try {
+            final double[][] results = this.batchEvaluator.apply(
+                    batch.stream().map(pendingInstance -> pendingInstance.instance).collect(Collectors.toList())
+            );
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(results[i]);
+            }
+        } catch (final Exception e) {
+            logger.debug("Error evaluating a batch of {} instances.", batch.size(), e);
+            batch.forEach(pendingInstance -> pendingInstance.result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * An instance waiting to be evaluated, together with the future result of its evaluation.
+     */
+    private static final class PendingInstance {
+
+        /**
+         * The instance to evaluate.
+         */
+        private final Instance instance;
+
+        /**
+         * The result of the evaluation of the instance.
+         */
+        private final CompletableFuture<double[]> result = new CompletableFuture<>();
+
+        /**
+         * Constructor.
+         *
+         * @param instance The instance to evaluate.
+         */
+        private PendingInstance(final Instance instance) {
+            this.instance = instance;
+        }
+    }
+}
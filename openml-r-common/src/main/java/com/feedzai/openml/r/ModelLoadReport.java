@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Report of the time spent in each {@link Stage} of the load of a model by {@link GenericRModelLoader}, so that slow
+ * loads can be attributed, e.g. to the load of R packages or to the deserialization of the model.
+ * <p>
+ * The stages that are executed for each connection of the {@link RConnectionPool pool} are summed over all the
+ * connections.
+ *
+ * @since 0.5.0
+ */
+public final class ModelLoadReport {
+
+    /**
+     * Enumeration with the stages of the load of a model, in the order they are executed.
+     */
+    public enum Stage {
+
+        /**
+         * Creation of the connection to Rserve.
+         */
+        CONNECTION("connection"),
+
+        /**
+         * Load of the R packages required by the provider, e.g. {@code library(caret)}.
+         */
+        LOAD_PACKAGES("loadPackages"),
+
+        /**
+         * Load of the objects of the script to the R workspace, e.g. {@code source('classifier.R')}.
+         */
+        LOAD_SCRIPT("loadScript"),
+
+        /**
+         * Validation that the R workspace has the required functions.
+         */
+        VALIDATE_WORKSPACE("validateWorkspace"),
+
+        /**
+         * Execution of the R function that loads the model, e.g. {@code readRDS}.
+         */
+        LOAD_MODEL("loadModel"),
+
+        /**
+         * Creation of the {@link ClassificationGenericRModel}, which prepares the R workspaces to receive instances.
+         */
+        CREATE_MODEL("createModel"),
+
+        /**
+         * Evaluation of synthetic instances in each connection, see {@link RLoadParameter#WARM_UP_INSTANCES}.
+         */
+        WARM_UP("warmUp"),
+
+        /**
+         * Validation of the loaded model by scoring instances.
+         */
+        VALIDATE_MODEL("validateModel");
+
+        /**
+         * The name of the stage in the reports.
+         */
+        private final String name;
+
+        /**
+         * Constructor.
+         *
+         * @param name The name of the stage in the reports.
+         */
+        Stage(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name of the stage in the reports.
+         *
+         * @return the name of the stage.
+         */
+        public String getName() {
+            return this.name;
+        }
+    }
+
+    /**
+     * The time spent in each executed stage, in nanoseconds.
+     */
+    private final Map<Stage, Long> stageNanos;
+
+    /**
+     * The number of connections where the model was loaded.
+     */
+    private final int numberOfConnections;
+
+    /**
+     * The duration of the whole load, in nanoseconds.
+     */
+    private final long totalNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param stageNanos          The time spent in each executed stage, in nanoseconds.
+     * @param numberOfConnections The number of connections where the model was loaded.
+     * @param totalNanos          The duration of the whole load, in nanoseconds.
+     */
+    private ModelLoadReport(final Map<Stage, Long> stageNanos, final int numberOfConnections, final long totalNanos) {
+        this.stageNanos = ImmutableMap.copyOf(stageNanos);
+        this.numberOfConnections = numberOfConnections;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Gets the time spent in a stage.
+     *
+     * @param stage The stage.
+     * @return the time spent in the stage, which is zero if it wasn't executed.
+     */
+    public Duration getDuration(final Stage stage) {
+        return Duration.ofNanos(this.stageNanos.getOrDefault(stage, 0L));
+    }
+
+    /**
+     * Gets the time spent in each executed stage, in the order they are executed.
+     *
+     * @return the time spent in each stage.
+     */
+    public Map<Stage, Duration> getDurations() {
+        return this.stageNanos.entrySet().stream().collect(ImmutableMap.toImmutableMap(
+                Map.Entry::getKey,
+                entry -> Duration.ofNanos(entry.getValue())
+        ));
+    }
+
+    /**
+     * Gets the duration of the whole load.
+     *
+     * @return the duration of the load.
+     */
+    public Duration getTotalDuration() {
+        return Duration.ofNanos(this.totalNanos);
+    }
+
+    /**
+     * Gets the number of connections where the model was loaded.
+     *
+     * @return the number of connections.
+     */
+    public int getNumberOfConnections() {
+        return this.numberOfConnections;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "total=%dms in %d connection(s) [%s]",
+                TimeUnit.NANOSECONDS.toMillis(this.totalNanos),
+                this.numberOfConnections,
+                this.stageNanos.entrySet().stream()
+                        .map(entry -> String.format(
+                                "%s=%dms",
+                                entry.getKey().getName(),
+                                TimeUnit.NANOSECONDS.toMillis(entry.getValue())
+                        ))
+                        .collect(Collectors.joining(", "))
+        );
+    }
+
+    /**
+     * Builder of a {@link ModelLoadReport}, that accumulates the time spent in each stage during a load.
+     * <p>
+     * This class is not thread-safe.
+     */
+    static final class Builder {
+
+        /**
+         * When the load started, as given by {@link System#nanoTime()}.
+         */
+        private final long start = System.nanoTime();
+
+        /**
+         * The time spent in each executed stage, in nanoseconds.
+         */
+        private final Map<Stage, Long> stageNanos = new EnumMap<>(Stage.class);
+
+        /**
+         * The number of connections where the model was loaded so far.
+         */
+        private int numberOfConnections;
+
+        /**
+         * Records a stage that completed now.
+         *
+         * @param stage      The stage.
+         * @param stageStart When the stage started, as given by {@link System#nanoTime()}.
+         * @return when the stage completed, i.e. when the next stage starts.
+         */
+        long record(final Stage stage, final long stageStart) {
+            final long now = System.nanoTime();
+            this.stageNanos.merge(stage, now - stageStart, Long::sum);
+            return now;
+        }
+
+        /**
+         * Records that the model was loaded in one more connection.
+         */
+        void recordConnection() {
+            this.numberOfConnections++;
+        }
+
+        /**
+         * Builds the report of the load so far.
+         *
+         * @return the report.
+         */
+        ModelLoadReport build() {
+            return new ModelLoadReport(this.stageNanos, this.numberOfConnections, System.nanoTime() - this.start);
+        }
+    }
+}
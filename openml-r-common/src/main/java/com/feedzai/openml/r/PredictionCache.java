@@ -0,0 +1,364 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded cache of the results of a model, so that instances with exactly the same values are only evaluated in R
+ * once.
+ * <p>
+ * The results are keyed by the values of the predictive fields of the instances, the target field is ignored. The
+ * cache holds at most {@code maximumSize} results of each kind, evicting the least recently used ones, and each result
+ * can also expire some time after being computed. The number of hits and misses is recorded and available in
+ * {@link #getStats()}.
+ * <p>
+ * This class is thread-safe. Concurrent requests for the same instance are evaluated only once.
+ *
+ * @since 0.5.0
+ */
+public class PredictionCache {
+
+    /**
+     * The indexes of the predictive fields, whose values are used as the key of the cache.
+     */
+    private final int[] predictiveFieldIndexes;
+
+    /**
+     * The class distributions computed by the model.
+     */
+    private final Cache<InstanceKey, double[]> classDistributions;
+
+    /**
+     * The predicted classes computed by the model.
+     */
+    private final Cache<InstanceKey, Integer> classifications;
+
+    /**
+     * Constructor.
+     *
+     * @param schema      The {@link DatasetSchema} of the instances.
+     * @param maximumSize The maximum number of results of each kind kept in the cache.
+     * @param ttl         Time after which a result expires, or 0 if the results don't expire.
+     * @param ttlUnit     The unit of {@code ttl}.
+     */
+    public PredictionCache(final DatasetSchema schema,
+                           final long maximumSize,
+                           final long ttl,
+                           final TimeUnit ttlUnit) {
+        Preconditions.checkArgument(maximumSize > 0, "The size of the cache must be positive.");
+        Preconditions.checkArgument(ttl >= 0, "The time to live of the results cannot be negative.");
+        this.predictiveFieldIndexes = schema.getPredictiveFields().stream()
+                .mapToInt(FieldSchema::getFieldIndex)
+                .toArray();
+        this.classDistributions = newCache(maximumSize, ttl, ttlUnit);
+        this.classifications = newCache(maximumSize, ttl, ttlUnit);
+    }
+
+    /**
+     * Gets the class distribution of an instance from the cache, computing it if it is not cached.
+     *
+     * @param instance  The instance to evaluate.
+     * @param evaluator Computes the class distribution of the instance.
+     * @return the class distribution of the instance.
+     */
+    public double[] getClassDistribution(final Instance instance, final Function<Instance, double[]> evaluator) {
+        return get(this.classDistributions, instance, () -> evaluator.apply(instance).clone()).clone();
+    }
+
+    /**
+     * Gets the class distribution of several instances, computing the ones that are not cached with a single call to
+     * {@code evaluator}.
+     *
+     * @param instances The instances to evaluate.
+     * @param evaluator Computes the class distribution of several instances, in the same order.
+     * @return the class distribution of each instance, in the same order of {@code instances}.
+     */
+    public double[][] getClassDistributions(final List<Instance> instances,
+                                            final Function<List<Instance>, double[][]> evaluator) {
+        final double[][] results = new double[instances.size()][];
+        final List<Integer> missingIndexes = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            final double[] cached = this.classDistributions.getIfPresent(toKey(instances.get(i)));
+            if (cached != null) {
+                results[i] = cached.clone();
+            } else {
+                missingIndexes.add(i);
+            }
+        }
+
+        if (!missingIndexes.isEmpty()) {
+            final double[][] computed = evaluator.apply(select(instances, missingIndexes));
+            for (int i = 0; i < missingIndexes.size(); i++) {
+                final int index = missingIndexes.get(i);
+                results[index] = computed[i];
+                this.classDistributions.put(toKey(instances.get(index)), computed[i].clone());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Gets the class distribution of an instance only if it is in the cache.
+     *
+     * @param instance The instance to evaluate.
+     * @return the cached class distribution, if any.
+     */
+    public Optional<double[]> getCachedClassDistribution(final Instance instance) {
+        return Optional.ofNullable(this.classDistributions.getIfPresent(toKey(instance))).map(double[]::clone);
+    }
+
+    /**
+     * Stores the class distribution of an instance.
+     *
+     * @param instance          The evaluated instance.
+     * @param classDistribution The class distribution of the instance.
+     */
+    public void putClassDistribution(final Instance instance, final double[] classDistribution) {
+        this.classDistributions.put(toKey(instance), classDistribution.clone());
+    }
+
+    /**
+     * Gets the predicted class of an instance from the cache, computing it if it is not cached.
+     *
+     * @param instance  The instance to classify.
+     * @param evaluator Computes the index of the predicted class of the instance.
+     * @return the index of the predicted class of the instance.
+     */
+    public int classify(final Instance instance, final ToIntFunction<Instance> evaluator) {
+        return get(this.classifications, instance, () -> evaluator.applyAsInt(instance));
+    }
+
+    /**
+     * Gets the predicted class of several instances, computing the ones that are not cached with a single call to
+     * {@code evaluator}.
+     *
+     * @param instances The instances to classify.
+     * @param evaluator Computes the index of the predicted class of several instances, in the same order.
+     * @return the index of the predicted class of each instance, in the same order of {@code instances}.
+     */
+    public int[] classify(final List<Instance> instances, final Function<List<Instance>, int[]> evaluator) {
+        final int[] results = new int[instances.size()];
+        final List<Integer> missingIndexes = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            final Integer cached = this.classifications.getIfPresent(toKey(instances.get(i)));
+            if (cached != null) {
+                results[i] = cached;
+            } else {
+                missingIndexes.add(i);
+            }
+        }
+
+        if (!missingIndexes.isEmpty()) {
+            final int[] computed = evaluator.apply(select(instances, missingIndexes));
+            for (int i = 0; i < missingIndexes.size(); i++) {
+                final int index = missingIndexes.get(i);
+                results[index] = computed[i];
+                this.classifications.put(toKey(instances.get(index)), computed[i]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Gets both the predicted class and the class distribution of several instances, computing the ones that don't
+     * have both cached with a single call to {@code evaluator}.
+     *
+     * @param instances The instances to evaluate.
+     * @param evaluator Computes the predicted class and the class distribution of several instances, in the same
+     *                  order.
+     * @return the predicted class and the class distribution of each instance, in the same order of
+     * {@code instances}.
+     */
+    public ClassificationScore[] score(final List<Instance> instances,
+                                       final Function<List<Instance>, ClassificationScore[]> evaluator) {
+        final ClassificationScore[] results = new ClassificationScore[instances.size()];
+        final List<Integer> missingIndexes = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            final InstanceKey key = toKey(instances.get(i));
+            final double[] cachedClassDistribution = this.classDistributions.getIfPresent(key);
+            final Integer cachedClassification = cachedClassDistribution != null
+                    ? this.classifications.getIfPresent(key)
+                    : null;
+            if (cachedClassification != null) {
+                results[i] = new ClassificationScore(cachedClassification, cachedClassDistribution.clone());
+            } else {
+                missingIndexes.add(i);
+            }
+        }
+
+        if (!missingIndexes.isEmpty()) {
+            final ClassificationScore[] computed = evaluator.apply(select(instances, missingIndexes));
+            for (int i = 0; i < missingIndexes.size(); i++) {
+                final int index = missingIndexes.get(i);
+                final InstanceKey key = toKey(instances.get(index));
+                results[index] = computed[i];
+                this.classDistributions.put(key, computed[i].getClassDistribution().clone());
+                this.classifications.put(key, computed[i].getPredictedClass());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Gets the statistics of the cache, i.e. the number of hits and misses of both class distributions and
+     * classifications.
+     *
+     * @return the statistics of the cache.
+     */
+    public CacheStats getStats() {
+        return this.classDistributions.stats().plus(this.classifications.stats());
+    }
+
+    /**
+     * Discards all the cached results.
+     */
+    public void invalidateAll() {
+        this.classDistributions.invalidateAll();
+        this.classifications.invalidateAll();
+    }
+
+    /**
+     * Gets a result from a cache, computing it if it is not cached.
+     *
+     * @param cache    The cache.
+     * @param instance The instance whose result is wanted.
+     * @param loader   Computes the result.
+     * @param <V>      The type of the result.
+     * @return the result.
+     */
+    private <V> V get(final Cache<InstanceKey, V> cache, final Instance instance, final Callable<V> loader) {
+        try {
+            return cache.get(toKey(instance), loader);
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error during instance evaluation.", e.getCause());
+        }
+    }
+
+    /**
+     * Creates the key of the cache for an instance.
+     *
+     * @param instance The instance.
+     * @return the key with the values of the predictive fields of the instance.
+     */
+    private InstanceKey toKey(final Instance instance) {
+        final double[] values = new double[this.predictiveFieldIndexes.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = instance.getValue(this.predictiveFieldIndexes[i]);
+        }
+        return new InstanceKey(values);
+    }
+
+    /**
+     * Selects some instances of a list.
+     *
+     * @param instances The instances.
+     * @param indexes   The indexes of the instances to select.
+     * @return the selected instances, in the same order of {@code indexes}.
+     */
+    private static List<Instance> select(final List<Instance> instances, final List<Integer> indexes) {
+        final List<Instance> selected = new ArrayList<>(indexes.size());
+        indexes.forEach(index -> selected.add(instances.get(index)));
+        return selected;
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param maximumSize The maximum number of entries.
+     * @param ttl         Time after which an entry expires, or 0 if the entries don't expire.
+     * @param ttlUnit     The unit of {@code ttl}.
+     * @param <V>         The type of the values.
+     * @return the new cache.
+     */
+    private static <V> Cache<InstanceKey, V> newCache(final long maximumSize, final long ttl, final TimeUnit ttlUnit) {
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats();
+        if (ttl > 0) {
+            builder.expireAfterWrite(ttl, ttlUnit);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Key of the cache, the values of the predictive fields of an instance.
+     */
+    private static final class InstanceKey {
+
+        /**
+         * The values of the predictive fields.
+         */
+        private final double[] values;
+
+        /**
+         * The hash code of the values, computed once.
+         */
+        private final int hashCode;
+
+        /**
+         * Constructor.
+         *
+         * @param values The values of the predictive fields.
+         */
+        private InstanceKey(final double[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final InstanceKey that = (InstanceKey) o;
+            return this.hashCode == that.hashCode && Arrays.equals(this.values, that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
@@ -42,7 +42,44 @@ public enum ProviderRObject {
     /**
      * Name of the function used in R to classify an instance in the model and get the predicted class.
      */
-    CLASSIFICATION_FN("classify");
+    CLASSIFICATION_FN("classify"),
+    /**
+     * Name of the function used in R to assemble the instances transferred column by column into a data frame.
+     */
+    ASSEMBLE_INSTANCE_FN(".assembleInstance"),
+    /**
+     * Name of the variable used in R to store the levels of each categorical field, used to build factors from the
+     * codes of the categorical values.
+     */
+    FACTOR_LEVELS_VARIABLE(".factorLevels"),
+    /**
+     * Name of the function used in R to name the columns of the numeric matrix transferred to R.
+     */
+    ASSEMBLE_MATRIX_FN(".assembleMatrix"),
+    /**
+     * Name of the optional function used in R to get the class distribution of the instances given as a numeric
+     * matrix.
+     */
+    MATRIX_CLASS_DISTRIBUTION_FN("getClassDistributionFromMatrix"),
+    /**
+     * Name of the optional function used in R to get the predicted class of the instances given as a numeric matrix.
+     */
+    MATRIX_CLASSIFICATION_FN("classifyFromMatrix"),
+    /**
+     * Name of the byte-compiled function, without arguments, that gets the class distribution of the transferred
+     * instances.
+     */
+    CLASS_DISTRIBUTION_CALL(".classDistributionCall"),
+    /**
+     * Name of the byte-compiled function, without arguments, that gets the predicted class of the transferred
+     * instances.
+     */
+    CLASSIFICATION_CALL(".classificationCall"),
+    /**
+     * Name of the byte-compiled function, without arguments, that gets both the class distribution and the predicted
+     * class of the transferred instances.
+     */
+    SCORE_CALL(".scoreCall");
 
     /**
      * Name of the object.
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.provider.exception.ModelLoadingException;
+import org.rosuda.REngine.Rserve.RConnection;
+
+/**
+ * Creates {@link RConnection connections} to Rserve with the model loaded, so that a
+ * {@link ClassificationGenericRModel} can replace the connections of its {@link RConnectionPool pool} that can no
+ * longer be used, re-running the same steps that loaded the model in the original connections.
+ *
+ * @since 0.5.0
+ */
+@FunctionalInterface
+public interface RConnectionFactory {
+
+    /**
+     * Creates a connection to Rserve with the script and the model loaded in its R workspace.
+     *
+     * @return the new connection, which is owned by the caller.
+     * @throws ModelLoadingException If the connection cannot be created or the model cannot be loaded.
+     */
+    RConnection create() throws ModelLoadingException;
+}
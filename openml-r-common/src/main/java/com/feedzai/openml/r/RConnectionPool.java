@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import org.rosuda.REngine.Rserve.RConnection;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of {@link RConnection connections} to Rserve that share the same R workspace setup, i.e. all of them have the
+ * same model loaded.
+ * <p>
+ * A {@link RConnection} is not thread-safe, and so each connection is lent to a single thread at a time. Threads that
+ * want to use a connection while all of them are in use wait until one is returned to the pool.
+ * <p>
+ * A connection that can no longer be used, e.g. because it was abandoned in the middle of an evaluation, is
+ * {@link #discard(RConnection) discarded} instead of being released, and can be replaced by a new one with
+ * {@link #add(RConnection)}.
+ *
+ * @since 0.5.0
+ */
+public class RConnectionPool implements AutoCloseable {
+
+    /**
+     * The maximum time, in nanoseconds, that a thread waits for an idle connection before checking again whether the
+     * pool was closed or lost all its connections.
+     */
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * All the connections managed by this pool.
+     */
+    private final List<RConnection> connections;
+
+    /**
+     * The connections that are not being used.
+     */
+    private final BlockingQueue<RConnection> idleConnections;
+
+    /**
+     * Whether this pool was closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param connections The {@link RConnection connections} to be managed by this pool. These instances are only
+     *                    used by this pool and thus it is responsible to close them.
+     */
+    public RConnectionPool(final List<RConnection> connections) {
+        Preconditions.checkArgument(!connections.isEmpty(), "The pool requires at least one connection.");
+        this.connections = new CopyOnWriteArrayList<>(connections);
+        this.idleConnections = new LinkedBlockingQueue<>(connections);
+    }
+
+    /**
+     * Gets a connection from the pool, waiting for one to be available if all of them are in use.
+     * <p>
+     * The connection must be returned to the pool with {@link #release(RConnection)} after being used. The wait ends
+     * with an {@link IllegalStateException} as soon as the pool is closed or has no connections left, e.g. because all
+     * of them were {@link #discard(RConnection) discarded}, instead of blocking forever.
+     *
+     * @return a {@link RConnection} that can only be used by the calling thread until it is released.
+     * @throws InterruptedException If the thread was interrupted while waiting for a connection.
+     * @throws IllegalStateException If the pool is closed or has no connections.
+     */
+    public RConnection borrow() throws InterruptedException {
+        RConnection rConnection;
+        do {
+            rConnection = poll(POLL_INTERVAL_NANOS);
+        } while (rConnection == null);
+        return rConnection;
+    }
+
+    /**
+     * Gets a connection from the pool, waiting up to the given time for one to be available if all of them are in use.
+     * <p>
+     * The connection must be returned to the pool with {@link #release(RConnection)} after being used. As with
+     * {@link #borrow()}, the wait ends as soon as the pool is closed or has no connections left.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of {@code timeout}.
+     * @return a {@link RConnection} that can only be used by the calling thread until it is released, or {@code null}
+     * if none was available in time.
+     * @throws InterruptedException If the thread was interrupted while waiting for a connection.
+     * @throws IllegalStateException If the pool is closed or has no connections.
+     */
+    public RConnection borrow(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long remaining = unit.toNanos(timeout);
+        do {
+            final RConnection rConnection = poll(Math.min(remaining, POLL_INTERVAL_NANOS));
+            if (rConnection != null) {
+                return rConnection;
+            }
+            remaining = deadline - System.nanoTime();
+        } while (remaining > 0);
+        return null;
+    }
+
+    /**
+     * Gets an idle connection, waiting up to the given time for one to be available, after checking that the pool can
+     * still lend connections.
+     *
+     * @param timeoutNanos The maximum time to wait, in nanoseconds.
+     * @return an idle connection, or {@code null} if none was available in time.
+     * @throws InterruptedException If the thread was interrupted while waiting for a connection.
+     * @throws IllegalStateException If the pool is closed or has no connections.
+     */
+    private RConnection poll(final long timeoutNanos) throws InterruptedException {
+        Preconditions.checkState(!this.closed, "The connection pool is closed.");
+        Preconditions.checkState(!this.connections.isEmpty(), "The connection pool has no connections.");
+        return this.idleConnections.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Checks whether this pool was {@link #close() closed}.
+     *
+     * @return {@code true} if the pool was closed, {@code false} otherwise.
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Returns a connection to the pool, making it available to other threads.
+     *
+     * @param rConnection A connection previously obtained with {@link #borrow()}.
+     */
+    public void release(final RConnection rConnection) {
+        this.idleConnections.offer(rConnection);
+    }
+
+    /**
+     * Removes a borrowed connection from the pool and closes it, instead of {@link #release(RConnection) releasing}
+     * it, because it can no longer be used.
+     *
+     * @param rConnection A connection previously obtained with {@link #borrow()}.
+     */
+    public void discard(final RConnection rConnection) {
+        this.connections.remove(rConnection);
+        rConnection.close();
+    }
+
+    /**
+     * Adds a new connection to the pool, e.g. to replace a {@link #discard(RConnection) discarded} one. The connection
+     * must have the same R workspace setup as the others. If the pool is already closed, the connection is closed.
+     *
+     * @param rConnection The connection, which is only used by this pool from now on.
+     */
+    public synchronized void add(final RConnection rConnection) {
+        if (this.closed) {
+            rConnection.close();
+            return;
+        }
+        this.connections.add(rConnection);
+        this.idleConnections.offer(rConnection);
+    }
+
+    /**
+     * Gets the number of connections managed by this pool.
+     *
+     * @return the number of connections.
+     */
+    public int size() {
+        return this.connections.size();
+    }
+
+    /**
+     * Gets all the connections managed by this pool, whether they are in use or not.
+     * <p>
+     * This is meant to prepare the R workspace of every connection before the pool is used, the connections should not
+     * be used for anything else without being borrowed.
+     *
+     * @return the connections managed by this pool.
+     */
+    public List<RConnection> getConnections() {
+        return ImmutableList.copyOf(this.connections);
+    }
+
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        this.connections.forEach(RConnection::close);
+    }
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.AbstractValueSchema;
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPGenericVector;
+import org.rosuda.REngine.REXPInteger;
+import org.rosuda.REngine.REXPList;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.RList;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Converts {@link Instance instances} to the R objects used by the models, and the results of the models back to the
+ * indexes of the target values.
+ * <p>
+ * Everything that only depends on the {@link DatasetSchema} is computed once when this object is created, i.e. the
+ * names of the fields, the nominal values of the categorical fields and the index of each target value, so that the
+ * conversion of each instance doesn't need to inspect the schema. This class is immutable and thus thread-safe.
+ * <p>
+ * The instances are sent to R according to a {@link TransferMode}. When the data frame cannot be sent as is, the R
+ * workspace must be prepared with {@link #getWorkspaceSetup()} and the transferred object must be converted to a data
+ * frame with {@link #getInstanceAssembly(String)} before being used.
+ *
+ * @since 0.5.0
+ */
+public final class RInstanceEncoder {
+
+    /**
+     * Index returned for values that are not a target value.
+     */
+    public static final int UNKNOWN_TARGET_VALUE = -1;
+
+    /**
+     * How the instances are transferred to R.
+     */
+    private final TransferMode transferMode;
+
+    /**
+     * The names of the fields, in the same order of the schema.
+     */
+    private final String[] fieldNames;
+
+    /**
+     * The nominal values of each field, in the same order of the schema, or {@code null} if the field is not
+     * categorical.
+     */
+    private final String[][] nominalValues;
+
+    /**
+     * The index of the target field, or -1 if the schema has no target field.
+     */
+    private final int targetIndex;
+
+    /**
+     * The nominal values of the target field.
+     */
+    private final String[] targetValues;
+
+    /**
+     * The index of each nominal value of the target field.
+     */
+    private final Map<String, Integer> targetValueIndexes;
+
+    /**
+     * The indexes of the numeric fields, i.e. the fields that are not categorical.
+     */
+    private final int[] numericFieldIndexes;
+
+    /**
+     * The indexes of the categorical fields.
+     */
+    private final int[] categoricalFieldIndexes;
+
+    /**
+     * Constructor for an encoder that sends the instances as a data frame.
+     *
+     * @param schema The {@link DatasetSchema} of the instances to convert.
+     */
+    public RInstanceEncoder(final DatasetSchema schema) {
+        this(schema, TransferMode.DATA_FRAME);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param schema       The {@link DatasetSchema} of the instances to convert.
+     * @param transferMode How the instances are transferred to R.
+     * @throws IllegalArgumentException If the schema doesn't support the transfer mode.
+     */
+    public RInstanceEncoder(final DatasetSchema schema, final TransferMode transferMode) {
+        Preconditions.checkArgument(
+                transferMode != TransferMode.MATRIX || isNumericOnly(schema),
+                "The %s transfer mode requires all the predictive fields to be numeric.",
+                transferMode
+        );
+        this.transferMode = transferMode;
+        final List<FieldSchema> fieldSchemas = schema.getFieldSchemas();
+        this.fieldNames = new String[fieldSchemas.size()];
+        this.nominalValues = new String[fieldSchemas.size()][];
+        for (int i = 0; i < fieldSchemas.size(); i++) {
+            this.fieldNames[i] = fieldSchemas.get(i).getFieldName();
+            this.nominalValues[i] = getNominalValues(fieldSchemas.get(i).getValueSchema());
+        }
+
+        this.targetIndex = schema.getTargetIndex().orElse(-1);
+        this.targetValues = schema.getTargetFieldSchema()
+                .map(FieldSchema::getValueSchema)
+                .map(RInstanceEncoder::getNominalValues)
+                .orElse(new String[0]);
+
+        final ImmutableMap.Builder<String, Integer> targetValueIndexes = ImmutableMap.builder();
+        for (int i = 0; i < this.targetValues.length; i++) {
+            targetValueIndexes.put(this.targetValues[i], i);
+        }
+        this.targetValueIndexes = targetValueIndexes.build();
+
+        this.numericFieldIndexes = IntStream.range(0, this.fieldNames.length)
+                .filter(i -> this.nominalValues[i] == null)
+                .toArray();
+        this.categoricalFieldIndexes = IntStream.range(0, this.fieldNames.length)
+                .filter(i -> this.nominalValues[i] != null)
+                .toArray();
+    }
+
+    /**
+     * Gets how the instances are transferred to R.
+     *
+     * @return the {@link TransferMode}.
+     */
+    public TransferMode getTransferMode() {
+        return this.transferMode;
+    }
+
+    /**
+     * Gets the R code that defines, in a R workspace, the objects needed to {@link #getInstanceAssembly(String)
+     * assemble} the instances transferred to R. It must be evaluated once in each workspace before evaluating
+     * instances.
+     *
+     * @return the R code to evaluate, or nothing if the workspace doesn't need to be prepared.
+     */
+    public Optional<String> getWorkspaceSetup() {
+        if (this.transferMode == TransferMode.DATA_FRAME) {
+            return Optional.empty();
+        }
+
+        if (this.transferMode == TransferMode.MATRIX) {
+            return Optional.of(String.join("\n",
+                    ProviderRObject.ASSEMBLE_MATRIX_FN.getName() + " <- function(numeric) {",
+                    "  dimnames(numeric) <- list(NULL, " + toRStrings(getFieldNames(this.numericFieldIndexes)) + ")",
+                    "  numeric",
+                    "}",
+                    ProviderRObject.ASSEMBLE_INSTANCE_FN.getName() + " <- function(numeric) {",
+                    "  as.data.frame(" + ProviderRObject.ASSEMBLE_MATRIX_FN.getName() + "(numeric))",
+                    "}"
+            ));
+        }
+
+        final String factorLevels = IntStream.of(this.categoricalFieldIndexes)
+                .mapToObj(fieldIndex -> toRStrings(this.nominalValues[fieldIndex]))
+                .collect(Collectors.joining(", ", "list(", ")"));
+
+        return Optional.of(String.join("\n",
+                ProviderRObject.FACTOR_LEVELS_VARIABLE.getName() + " <- " + factorLevels,
+                ProviderRObject.ASSEMBLE_INSTANCE_FN.getName() + " <- function(columns) {",
+                "  numeric <- columns[[1L]]",
+                "  instance <- vector('list', " + this.fieldNames.length + "L)",
+                "  instance[" + toRIndexes(this.numericFieldIndexes) + "] <- "
+                        + "lapply(seq_len(ncol(numeric)), function(i) numeric[, i])",
+                "  instance[" + toRIndexes(this.categoricalFieldIndexes) + "] <- Map("
+                        + "function(codes, levels) structure(codes, levels = levels, class = 'factor'), "
+                        + "columns[-1L], " + ProviderRObject.FACTOR_LEVELS_VARIABLE.getName() + ")",
+                "  names(instance) <- " + toRStrings(this.fieldNames),
+                "  structure(instance, class = 'data.frame', row.names = c(NA_integer_, -nrow(numeric)))",
+                "}"
+        ));
+    }
+
+    /**
+     * Gets the R statement that converts the object {@link #encode(List) transferred} to R into a data frame with one
+     * row per instance.
+     *
+     * @param variable The name of the R variable that holds the transferred object, which is replaced by the data
+     *                 frame.
+     * @return the R statement to evaluate, or nothing if the transferred object is already a data frame.
+     */
+    public Optional<String> getInstanceAssembly(final String variable) {
+        if (this.transferMode == TransferMode.DATA_FRAME) {
+            return Optional.empty();
+        }
+        return Optional.of(String.format(
+                "%s <- %s(%s)",
+                variable,
+                ProviderRObject.ASSEMBLE_INSTANCE_FN.getName(),
+                variable
+        ));
+    }
+
+    /**
+     * Gets the R statement that converts the object {@link #encode(List) transferred} to R into a named numeric matrix
+     * with one row per instance and one column per predictive field.
+     *
+     * @param variable The name of the R variable that holds the transferred object, which is replaced by the matrix.
+     * @return the R statement to evaluate, or nothing if the instances are not transferred as a
+     * {@link TransferMode#MATRIX matrix}.
+     */
+    public Optional<String> getMatrixAssembly(final String variable) {
+        if (this.transferMode != TransferMode.MATRIX) {
+            return Optional.empty();
+        }
+        return Optional.of(String.format(
+                "%s <- %s(%s)",
+                variable,
+                ProviderRObject.ASSEMBLE_MATRIX_FN.getName(),
+                variable
+        ));
+    }
+
+    /**
+     * Converts a list of {@link Instance instances} to the R object, according to the {@link TransferMode}, that
+     * represents a data frame with one row per instance. This object will be used by the model to classify the
+     * instances.
+     *
+     * @param instances The instances to classify.
+     * @return the object to be classified by a R model.
+     * @throws REXPMismatchException If it cannot convert an object to an expected type.
+     * @throws IllegalArgumentException If the value of a categorical predictive field is not the index of one of its
+     *                                  nominal values.
+     */
+    public REXP encode(final List<Instance> instances) throws REXPMismatchException {
+        if (this.transferMode == TransferMode.COLUMNAR) {
+            return encodeColumns(instances);
+        }
+        if (this.transferMode == TransferMode.MATRIX) {
+            return encodeNumericMatrix(instances);
+        }
+
+        final RList rlist = new RList(this.fieldNames.length, true);
+        for (int i = 0; i < this.fieldNames.length; i++) {
+            rlist.put(this.fieldNames[i], encodeField(instances, i));
+        }
+        return REXP.createDataFrame(rlist);
+    }
+
+    /**
+     * Gets the number of nominal values of the target field.
+     *
+     * @return the number of classes.
+     */
+    public int getNumberOfClasses() {
+        return this.targetValues.length;
+    }
+
+    /**
+     * Gets the index of a nominal value of the target field.
+     *
+     * @param targetValue The nominal value.
+     * @return the index of the nominal value, or {@link #UNKNOWN_TARGET_VALUE} if it is not a nominal value of the
+     * target field.
+     */
+    public int getTargetValueIndex(final String targetValue) {
+        final Integer index = this.targetValueIndexes.get(targetValue);
+        return index != null ? index : UNKNOWN_TARGET_VALUE;
+    }
+
+    /**
+     * Decodes the class distributions returned by R, a data frame with one column per class and one row per instance.
+     *
+     * @param result            The result of the R function that gets the class distribution.
+     * @param numberOfInstances The number of evaluated instances.
+     * @return the class distribution of each instance.
+     * @throws REXPMismatchException If the result doesn't have the expected type.
+     */
+    public double[][] decodeClassDistributions(final REXP result,
+                                               final int numberOfInstances) throws REXPMismatchException {
+        final RList list = result.asList();
+        final int numberClasses = getNumberOfClasses();
+        final double[][] classDistributions = new double[numberOfInstances][numberClasses];
+        for (int classIndex = 0; classIndex < numberClasses; classIndex++) {
+            final double[] classProbabilities = list.at(classIndex).asDoubles();
+            checkResultSize(classProbabilities.length, numberOfInstances);
+            for (int row = 0; row < numberOfInstances; row++) {
+                classDistributions[row][classIndex] = classProbabilities[row];
+            }
+        }
+        return classDistributions;
+    }
+
+    /**
+     * Decodes the predicted classes returned by R, a vector with the name of the predicted class of each instance.
+     *
+     * @param result            The result of the R function that classifies the instances.
+     * @param numberOfInstances The number of evaluated instances.
+     * @return the index of the predicted class of each instance.
+     * @throws REXPMismatchException If the result doesn't have the expected type.
+     */
+    public int[] decodeClassifications(final REXP result,
+                                       final int numberOfInstances) throws REXPMismatchException {
+        final String[] predictedClasses = result.asStrings();
+        checkResultSize(predictedClasses.length, numberOfInstances);
+
+        final int[] classifications = new int[numberOfInstances];
+        for (int row = 0; row < numberOfInstances; row++) {
+            classifications[row] = getTargetValueIndex(predictedClasses[row]);
+        }
+        return classifications;
+    }
+
+    /**
+     * Checks that R returned one result for each evaluated instance.
+     *
+     * @param resultSize        The number of results returned by R.
+     * @param numberOfInstances The number of evaluated instances.
+     * @throws IllegalStateException If there are less results than instances.
+     */
+    private static void checkResultSize(final int resultSize, final int numberOfInstances) {
+        if (resultSize < numberOfInstances) {
+            throw new IllegalStateException(String.format(
+                    "Expected %d results from R but only %d were returned. Make sure the R functions handle data "
+                            + "frames with multiple rows.",
+                    numberOfInstances,
+                    resultSize
+            ));
+        }
+    }
+
+    /**
+     * Converts a list of {@link Instance instances} to a list where the first element is a matrix with all the numeric
+     * fields, one column per field, and the remaining elements are the codes of the categorical fields. The levels of
+     * the categorical fields are already registered in the R workspace, and so only the codes are sent.
+     *
+     * @param instances The instances to classify.
+     * @return the object to be transferred to R.
+     */
+    private REXP encodeColumns(final List<Instance> instances) {
+        final int rows = instances.size();
+        final RList columns = new RList(1 + this.categoricalFieldIndexes.length, false);
+        columns.add(encodeNumericMatrix(instances));
+        for (final int fieldIndex : this.categoricalFieldIndexes) {
+            final int[] codes = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                final int index = getNominalValueIndex(instances.get(row), fieldIndex);
+                // R factors use 1-based codes
+                codes[row] = index == UNKNOWN_TARGET_VALUE ? REXPInteger.NA : index + 1;
+            }
+            columns.add(new REXPInteger(codes));
+        }
+        return new REXPGenericVector(columns);
+    }
+
+    /**
+     * Converts the numeric fields of a list of {@link Instance instances} to a matrix with one row per instance and one
+     * column per numeric field. The values are sent to R as a single vector in column-major order.
+     *
+     * @param instances The instances to classify.
+     * @return the matrix to be transferred to R.
+     */
+    private REXP encodeNumericMatrix(final List<Instance> instances) {
+        final int rows = instances.size();
+        final double[] numericValues = new double[rows * this.numericFieldIndexes.length];
+        for (int column = 0; column < this.numericFieldIndexes.length; column++) {
+            final int fieldIndex = this.numericFieldIndexes[column];
+            final int offset = column * rows;
+            for (int row = 0; row < rows; row++) {
+                numericValues[offset + row] = instances.get(row).getValue(fieldIndex);
+            }
+        }
+
+        return new REXPDouble(numericValues, new REXPList(new RList(
+                new REXP[]{new REXPInteger(new int[]{rows, this.numericFieldIndexes.length})},
+                new String[]{"dim"}
+        )));
+    }
+
+    /**
+     * Converts the values of a field in several instances to a column to be used by R. If the field is categorical we
+     * will need to get its real value.
+     *
+     * @param instances  The instances that contain the field.
+     * @param fieldIndex The index of the field.
+     * @return the column with the values of the field to use in R code.
+     */
+    private REXP encodeField(final List<Instance> instances, final int fieldIndex) {
+        final String[] fieldNominalValues = this.nominalValues[fieldIndex];
+        if (fieldNominalValues != null) {
+            final String[] values = new String[instances.size()];
+            for (int row = 0; row < values.length; row++) {
+                final int index = getNominalValueIndex(instances.get(row), fieldIndex);
+                values[row] = index == UNKNOWN_TARGET_VALUE ? null : fieldNominalValues[index];
+            }
+            return new REXPString(values);
+        }
+
+        final double[] values = new double[instances.size()];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = instances.get(row).getValue(fieldIndex);
+        }
+        return new REXPDouble(values);
+    }
+
+    /**
+     * Gets the index of the nominal value of a categorical field in an instance, which is also the index of the value
+     * in the levels of the field registered in the R workspace in {@link ProviderRObject#FACTOR_LEVELS_VARIABLE}, since
+     * both come from {@link #nominalValues}.
+     * <p>
+     * The target field is not used to score, and so it is usually not set in the instances: its invalid values are
+     * sent to R as missing values instead of being rejected.
+     *
+     * @param instance   The instance.
+     * @param fieldIndex The index of the categorical field.
+     * @return the index of the nominal value, or {@link #UNKNOWN_TARGET_VALUE} if the field is the target field and its
+     * value is not valid.
+     * @throws IllegalArgumentException If the value of a predictive field is not the index of one of its nominal
+     *                                  values, e.g. because it is {@code NaN} or out of range.
+     */
+    private int getNominalValueIndex(final Instance instance, final int fieldIndex) {
+        final String[] fieldNominalValues = this.nominalValues[fieldIndex];
+        final double value = instance.getValue(fieldIndex);
+        if (!(value >= 0 && value < fieldNominalValues.length)) {
+            if (fieldIndex == this.targetIndex) {
+                return UNKNOWN_TARGET_VALUE;
+            }
+            throw new IllegalArgumentException(String.format(
+                    "The value %s of the categorical field '%s' is not the index of one of its %d nominal values.",
+                    value,
+                    this.fieldNames[fieldIndex],
+                    fieldNominalValues.length
+            ));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Gets the names of some fields.
+     *
+     * @param fieldIndexes The indexes of the fields.
+     * @return the names of the fields, in the same order of {@code fieldIndexes}.
+     */
+    private String[] getFieldNames(final int[] fieldIndexes) {
+        return IntStream.of(fieldIndexes)
+                .mapToObj(fieldIndex -> this.fieldNames[fieldIndex])
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Checks whether all the predictive fields of a schema are numeric, in which case the instances can be transferred
+     * to R as a {@link TransferMode#MATRIX matrix}.
+     *
+     * @param schema The {@link DatasetSchema} of the instances.
+     * @return {@code true} if there are no categorical predictive fields, {@code false} otherwise.
+     */
+    public static boolean isNumericOnly(final DatasetSchema schema) {
+        return schema.getPredictiveFields().stream()
+                .map(FieldSchema::getValueSchema)
+                .noneMatch(CategoricalValueSchema.class::isInstance);
+    }
+
+    /**
+     * Gets the nominal values of a field, in the order used to encode them in an {@link Instance}.
+     *
+     * @param valueSchema The schema of the field.
+     * @return the nominal values, or {@code null} if the field is not categorical.
+     */
+    private static String[] getNominalValues(final AbstractValueSchema valueSchema) {
+        if (valueSchema instanceof CategoricalValueSchema) {
+            return ((CategoricalValueSchema) valueSchema).getNominalValues().toArray(new String[0]);
+        }
+        return null;
+    }
+
+    /**
+     * Converts 0-based indexes to a R vector of 1-based indexes.
+     *
+     * @param indexes The indexes.
+     * @return the R code of the vector.
+     */
+    private static String toRIndexes(final int[] indexes) {
+        if (indexes.length == 0) {
+            return "integer(0)";
+        }
+        return IntStream.of(indexes)
+                .mapToObj(index -> (index + 1) + "L")
+                .collect(Collectors.joining(", ", "c(", ")"));
+    }
+
+    /**
+     * Converts strings to a R character vector.
+     *
+     * @param values The strings.
+     * @return the R code of the vector.
+     */
+    private static String toRStrings(final String[] values) {
+        return Stream.of(values)
+                .map(value -> "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'")
+                .collect(Collectors.joining(", ", "c(", ")"));
+    }
+
+    /**
+     * How the instances are transferred to R.
+     */
+    public enum TransferMode {
+
+        /**
+         * The instances are sent as a data frame with one vector per field, categorical values are sent as strings.
+         */
+        DATA_FRAME,
+
+        /**
+         * The numeric fields are sent together in a single matrix and the categorical fields as integer codes, and the
+         * data frame is assembled in R, turning the codes into factors with the levels registered in the R workspace
+         * when the model is loaded. This avoids sending the attributes of the data frame and strings for each
+         * categorical value, but the models receive factors instead of strings.
+         */
+        COLUMNAR,
+
+        /**
+         * Only available when all the predictive fields are numeric. The instances are sent as a single matrix with
+         * one column per predictive field, without the target field. If the script defines the
+         * {@link ProviderRObject#MATRIX_CLASS_DISTRIBUTION_FN} and {@link ProviderRObject#MATRIX_CLASSIFICATION_FN}
+         * functions the matrix is given to them as is, otherwise it is converted to a data frame in R.
+         */
+        MATRIX
+    }
+}
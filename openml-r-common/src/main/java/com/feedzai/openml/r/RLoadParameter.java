@@ -0,0 +1,422 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.provider.descriptor.ModelParameter;
+import com.feedzai.openml.provider.descriptor.fieldtype.BooleanFieldType;
+import com.feedzai.openml.provider.descriptor.fieldtype.ChoiceFieldType;
+import com.feedzai.openml.provider.descriptor.fieldtype.FreeTextFieldType;
+import com.feedzai.openml.provider.descriptor.fieldtype.ModelParameterType;
+import com.feedzai.openml.provider.descriptor.fieldtype.NumericFieldType;
+import com.feedzai.openml.provider.descriptor.fieldtype.ParamValidationError;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Enumeration with the parameters that can be used to tune how a model generated in R is loaded by
+ * {@link GenericRModelLoader}.
+ * <p>
+ * All the parameters are optional, when a parameter is not defined its default value is used instead.
+ *
+ * @since 0.5.0
+ */
+public enum RLoadParameter {
+
+    /**
+     * Comma separated list of the {@code host:port} of the Rserve servers where the model is loaded, see
+     * {@link GenericRModelLoader}. The port can be omitted, in which case the default Rserve port is used.
+     */
+    RSERVE_ENDPOINTS(new ModelParameter(
+            "rserveEndpoints",
+            "Rserve endpoints",
+            "Comma separated list of the host:port of the Rserve servers. The connections of the pool are "
+                    + "distributed among them in round robin, and the next ones are tried when a server is down.",
+            false,
+            new FreeTextFieldType(GenericRModelLoader.DEFAULT_RSERVE_ENDPOINT)
+    )),
+
+    /**
+     * User used to log in the Rserve servers that require authentication.
+     */
+    RSERVE_USER(new ModelParameter(
+            "rserveUser",
+            "Rserve user",
+            "User used to log in the Rserve servers that require authentication.",
+            false,
+            new FreeTextFieldType("")
+    )),
+
+    /**
+     * Password used to log in the Rserve servers that require authentication.
+     */
+    RSERVE_PASSWORD(new ModelParameter(
+            "rservePassword",
+            "Rserve password",
+            "Password used to log in the Rserve servers that require authentication.",
+            false,
+            new FreeTextFieldType("")
+    )),
+
+    /**
+     * Number of connections to Rserve used by a model. Each connection has its own R workspace with its own copy of
+     * the model, and so the model is able to score as many instances concurrently as the number of connections.
+     */
+    CONNECTION_POOL_SIZE(new ModelParameter(
+            "connectionPoolSize",
+            "Connection pool size",
+            "Number of connections to Rserve used to score instances concurrently. Each connection loads its own "
+                    + "copy of the model.",
+            false,
+            NumericFieldType.min(1, NumericFieldType.ParameterConfigType.INT, 1)
+    )),
+
+    /**
+     * Whether the Rserve servers already have the model loaded in the workspace they fork for each connection, e.g. by
+     * running {@link GenericRModelLoader#createWorkspaceScript} in a {@link RserveSupervisor}. In that case the model
+     * is not loaded in each connection, which shares the memory of the model with the other connections of the
+     * server.
+     */
+    SHARED_WORKSPACE(new ModelParameter(
+            "sharedWorkspace",
+            "Shared workspace",
+            "Whether the Rserve servers were started with the model already loaded, in which case the "
+                    + "connections use that model instead of loading their own copy.",
+            false,
+            new BooleanFieldType(false)
+    )),
+
+    /**
+     * Number of synthetic instances, generated from the schema, evaluated in each connection of the pool before the
+     * model is returned by {@link GenericRModelLoader}, so that the first requests don't pay the lazy load of the R
+     * namespaces and functions used to score. The warm-up is disabled when this value is 0.
+     */
+    WARM_UP_INSTANCES(new ModelParameter(
+            "warmUpInstances",
+            "Warm-up instances",
+            "Number of synthetic instances evaluated in each connection after the model is loaded, so that the "
+                    + "first requests are not slower than the following ones. Use 0 to disable the warm-up.",
+            false,
+            NumericFieldType.min(0, NumericFieldType.ParameterConfigType.INT, 0)
+    )),
+
+    /**
+     * Maximum number of concurrent requests for the class distribution of single instances that are coalesced into a
+     * single evaluation in R. Micro batching is disabled when this value is 1.
+     */
+    MICRO_BATCH_MAX_SIZE(new ModelParameter(
+            "microBatchMaxSize",
+            "Micro batch maximum size",
+            "Maximum number of concurrent requests for the class distribution of single instances that are evaluated "
+                    + "together in a single call to R. Use 1 to disable micro batching.",
+            false,
+            NumericFieldType.min(1, NumericFieldType.ParameterConfigType.INT, 1)
+    )),
+
+    /**
+     * Maximum time, in milliseconds, that a request waits for other requests to be coalesced with when micro batching
+     * is enabled. This bounds the latency added by micro batching.
+     */
+    MICRO_BATCH_WINDOW_MILLIS(new ModelParameter(
+            "microBatchWindowMillis",
+            "Micro batch window (ms)",
+            "Maximum time, in milliseconds, to wait for other requests to be evaluated together when micro batching "
+                    + "is enabled.",
+            false,
+            NumericFieldType.min(0, NumericFieldType.ParameterConfigType.DOUBLE, 1)
+    )),
+
+    /**
+     * Maximum number of instances evaluated in a single call to R when a large batch is scored. Larger batches are
+     * split in chunks of this size, which are evaluated in parallel by the connections of the pool and whose results
+     * are gathered in the order of the instances. The batches are not split when this value is 0.
+     */
+    PARALLEL_CHUNK_SIZE(new ModelParameter(
+            "parallelChunkSize",
+            "Parallel chunk size",
+            "Maximum number of instances of a batch evaluated in a single call to R. Larger batches are split in "
+                    + "chunks evaluated in parallel by the connections. Use 0 to never split the batches.",
+            false,
+            NumericFieldType.min(0, NumericFieldType.ParameterConfigType.INT, 0)
+    )),
+
+    /**
+     * Whether the predicted class returned together with the class distribution is the class with the highest
+     * probability, which avoids calling the R function that classifies instances. This should only be enabled when
+     * that function is consistent with the class distribution.
+     */
+    CLASSIFY_FROM_DISTRIBUTION(new ModelParameter(
+            "classifyFromDistribution",
+            "Classify from distribution",
+            "Whether the predicted class is derived from the class distribution (the class with the highest "
+                    + "probability) when both are requested, instead of calling the classify function in R.",
+            false,
+            new BooleanFieldType(false)
+    )),
+
+    /**
+     * How the instances are transferred to R, see {@link RInstanceEncoder.TransferMode}.
+     */
+    TRANSFER_MODE(new ModelParameter(
+            "transferMode",
+            "Transfer mode",
+            "How the instances are sent to R. DATA_FRAME sends a data frame with categorical values as strings. "
+                    + "COLUMNAR sends the numeric fields as a single matrix and categorical fields as factors, "
+                    + "assembling the data frame in R. MATRIX, only for schemas without categorical predictive fields, "
+                    + "sends a single numeric matrix.",
+            false,
+            new ChoiceFieldType(
+                    Arrays.stream(RInstanceEncoder.TransferMode.values())
+                            .map(Enum::name)
+                            .collect(Collectors.toSet()),
+                    RInstanceEncoder.TransferMode.DATA_FRAME.name()
+            )
+    )),
+
+    /**
+     * Maximum number of class distributions, and of predicted classes, kept in a {@link PredictionCache} so that
+     * instances with exactly the same values are not evaluated again in R. The cache is disabled when this value is 0.
+     */
+    PREDICTION_CACHE_SIZE(new ModelParameter(
+            "predictionCacheSize",
+            "Prediction cache size",
+            "Maximum number of results kept in a cache so that repeated instances are not evaluated again in R, "
+                    + "the least recently used results are evicted first. Use 0 to disable the cache.",
+            false,
+            NumericFieldType.min(0, NumericFieldType.ParameterConfigType.INT, 0)
+    )),
+
+    /**
+     * Time, in milliseconds, after which a result kept in the {@link #PREDICTION_CACHE_SIZE cache} expires. The results
+     * don't expire when this value is 0.
+     */
+    PREDICTION_CACHE_TTL_MILLIS(new ModelParameter(
+            "predictionCacheTtlMillis",
+            "Prediction cache TTL (ms)",
+            "Time, in milliseconds, after which a cached result expires. Use 0 to keep the results until they are "
+                    + "evicted.",
+            false,
+            NumericFieldType.min(0, NumericFieldType.ParameterConfigType.INT, 0)
+    )),
+
+    /**
+     * Interval, in milliseconds, between the health checks of the idle connections of a model. The broken connections
+     * are replaced in the background, whether they are found by a health check or by a failed evaluation. The health
+     * checks are disabled when this value is 0.
+     */
+    HEALTH_CHECK_INTERVAL_MILLIS(new ModelParameter(
+            "healthCheckIntervalMillis",
+            "Health check interval (ms)",
+            "Interval, in milliseconds, between the health checks of the idle connections to Rserve. Broken "
+                    + "connections are replaced in the background. Use 0 to disable the health checks.",
+            false,
+            NumericFieldType.min(0, NumericFieldType.ParameterConfigType.DOUBLE, 30000)
+    )),
+
+    /**
+     * Maximum time, in milliseconds, that an evaluation of instances in R may take, including the wait for a free
+     * connection. A connection that exceeds it is abandoned and replaced, and the evaluation returns the
+     * {@link #FALLBACK_CLASS_DISTRIBUTION} or fails. Evaluations have no deadline when this value is 0, but even then
+     * the wait for a connection is bounded: when all the connections are being replaced, e.g. because Rserve is down,
+     * the evaluation returns the {@link #FALLBACK_CLASS_DISTRIBUTION} or fails immediately.
+     */
+    EVALUATION_TIMEOUT_MILLIS(new ModelParameter(
+            "evaluationTimeoutMillis",
+            "Evaluation timeout (ms)",
+            "Maximum time, in milliseconds, to evaluate instances in R, including the wait for a free connection. "
+                    + "Use 0 to wait indefinitely, except when all the connections are being replaced, e.g. because "
+                    + "Rserve is down, in which case the evaluation returns the fallback or fails immediately.",
+            false,
+            NumericFieldType.min(0, NumericFieldType.ParameterConfigType.DOUBLE, 0)
+    )),
+
+    /**
+     * Comma separated list with the probability of each target value, in the order of the target values of the
+     * schema, returned for the instances whose evaluation exceeds the {@link #EVALUATION_TIMEOUT_MILLIS deadline} or
+     * finds no connection to wait for. When it is empty, such evaluations fail fast instead.
+     */
+    FALLBACK_CLASS_DISTRIBUTION(new ModelParameter(
+            "fallbackClassDistribution",
+            "Fallback class distribution",
+            "Comma separated list with the probability of each target value returned when an evaluation exceeds the "
+                    + "timeout or all the connections to Rserve are being replaced. Leave it empty to fail the "
+                    + "evaluation instead.",
+            false,
+            new FreeTextFieldType("")
+    ));
+
+    /**
+     * The {@link ModelParameter} that describes this parameter.
+     */
+    private final ModelParameter modelParameter;
+
+    /**
+     * Constructor.
+     *
+     * @param modelParameter The {@link ModelParameter} that describes this parameter.
+     */
+    RLoadParameter(final ModelParameter modelParameter) {
+        this.modelParameter = modelParameter;
+    }
+
+    /**
+     * Gets the name of the parameter.
+     *
+     * @return the name of the parameter.
+     */
+    public String getName() {
+        return this.modelParameter.getName();
+    }
+
+    /**
+     * Gets the {@link ModelParameter} that describes this parameter.
+     *
+     * @return the {@link ModelParameter} that describes this parameter.
+     */
+    public ModelParameter getModelParameter() {
+        return this.modelParameter;
+    }
+
+    /**
+     * Gets the {@link ModelParameter} that describes each parameter, to be exposed in the descriptors of the
+     * algorithms of the providers.
+     *
+     * @return the {@link ModelParameter} of all the parameters.
+     */
+    public static Set<ModelParameter> getModelParameters() {
+        return Arrays.stream(values())
+                .map(RLoadParameter::getModelParameter)
+                .collect(ImmutableSet.toImmutableSet());
+    }
+
+    /**
+     * Gets the value of this parameter in the given {@code params}, or its default value if it is not defined.
+     *
+     * @param params The parameters used to load the model.
+     * @return the value of this parameter.
+     */
+    public String getValue(final Map<String, String> params) {
+        final String value = params.get(getName());
+        return value != null ? value : getDefaultValue(this.modelParameter.getFieldType());
+    }
+
+    /**
+     * Gets the value of this parameter as an integer.
+     *
+     * @param params The parameters used to load the model.
+     * @return the value of this parameter.
+     * @see #getValue(Map)
+     */
+    public int getIntValue(final Map<String, String> params) {
+        return (int) getDoubleValue(params);
+    }
+
+    /**
+     * Gets the value of this parameter as a double.
+     *
+     * @param params The parameters used to load the model.
+     * @return the value of this parameter.
+     * @see #getValue(Map)
+     */
+    public double getDoubleValue(final Map<String, String> params) {
+        return Double.parseDouble(getValue(params));
+    }
+
+    /**
+     * Gets the value of this parameter as a boolean.
+     *
+     * @param params The parameters used to load the model.
+     * @return the value of this parameter.
+     * @see #getValue(Map)
+     */
+    public boolean getBooleanValue(final Map<String, String> params) {
+        return Boolean.parseBoolean(getValue(params));
+    }
+
+    /**
+     * Gets the value of this parameter as a constant of the given enumeration.
+     *
+     * @param params   The parameters used to load the model.
+     * @param enumType The class of the enumeration.
+     * @param <E>      The type of the enumeration.
+     * @return the value of this parameter.
+     * @see #getValue(Map)
+     */
+    public <E extends Enum<E>> E getEnumValue(final Map<String, String> params, final Class<E> enumType) {
+        return Enum.valueOf(enumType, getValue(params));
+    }
+
+    /**
+     * Validates the value of this parameter, if it is defined in the given {@code params}.
+     *
+     * @param params The parameters used to load the model.
+     * @return the validation error, if the value is not valid.
+     */
+    public Optional<ParamValidationError> validate(final Map<String, String> params) {
+        final String value = params.get(getName());
+        if (value == null) {
+            return Optional.empty();
+        }
+        return this.modelParameter.getFieldType().validate(getName(), value);
+    }
+
+    /**
+     * Validates all the parameters defined in the given {@code params}.
+     *
+     * @param params The parameters used to load the model.
+     * @return the list of validation errors found.
+     */
+    public static List<ParamValidationError> validateAll(final Map<String, String> params) {
+        final ImmutableList.Builder<ParamValidationError> errors = ImmutableList.builder();
+        for (final RLoadParameter parameter : values()) {
+            parameter.validate(params).ifPresent(errors::add);
+        }
+        return errors.build();
+    }
+
+    /**
+     * Gets the default value of a parameter with the given type.
+     *
+     * @param fieldType The type of the parameter.
+     * @return the default value.
+     */
+    private static String getDefaultValue(final ModelParameterType fieldType) {
+        if (fieldType instanceof NumericFieldType) {
+            return String.valueOf(((NumericFieldType) fieldType).getDefaultValue());
+        }
+        if (fieldType instanceof BooleanFieldType) {
+            return String.valueOf(((BooleanFieldType) fieldType).isDefaultTrue());
+        }
+        if (fieldType instanceof FreeTextFieldType) {
+            return ((FreeTextFieldType) fieldType).getDefaultValue();
+        }
+        if (fieldType instanceof ChoiceFieldType) {
+            return ((ChoiceFieldType) fieldType).getDefaultValue();
+        }
+        throw new IllegalArgumentException("Unsupported parameter type: " + fieldType);
+    }
+}
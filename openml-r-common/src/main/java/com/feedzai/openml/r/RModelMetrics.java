@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+/**
+ * Hook notified by {@link ClassificationGenericRModel} about each evaluation of instances in R, so that the time spent
+ * in each {@link Phase} of the evaluation can be attributed.
+ * <p>
+ * The implementations must be thread-safe, since the model evaluates instances concurrently, and cheap, since they
+ * are called in the scoring path. {@link RecordingRModelMetrics} keeps counters and latency histograms.
+ *
+ * @since 0.5.0
+ */
+public interface RModelMetrics {
+
+    /**
+     * Enumeration with the phases of an evaluation of instances in R, in the order they are executed.
+     */
+    enum Phase {
+
+        /**
+         * Conversion of the instances to an R object, see {@link RInstanceEncoder#encode}.
+         */
+        ENCODE,
+
+        /**
+         * Wait for a free {@link RConnectionPool connection} to Rserve.
+         */
+        CONNECTION_WAIT,
+
+        /**
+         * Transfer of the instances to the R workspace.
+         */
+        ASSIGN,
+
+        /**
+         * Evaluation of the provider functions in R, including the transfer of the result.
+         */
+        EVAL,
+
+        /**
+         * Conversion of the result of R to class distributions or predicted classes.
+         */
+        DECODE
+    }
+
+    /**
+     * Metrics that ignore everything.
+     */
+    RModelMetrics NO_OP = new RModelMetrics() {
+        @Override
+        public void recordPhase(final Phase phase, final long durationNanos) {
+        }
+
+        @Override
+        public void recordEvaluation(final int numberOfInstances, final long bytesSent) {
+        }
+
+        @Override
+        public void recordError(final Phase phase) {
+        }
+
+        @Override
+        public void recordTimeout(final Phase phase) {
+        }
+    };
+
+    /**
+     * Records the duration of a phase that completed successfully.
+     *
+     * @param phase         The phase.
+     * @param durationNanos The duration of the phase, in nanoseconds.
+     */
+    void recordPhase(Phase phase, long durationNanos);
+
+    /**
+     * Records an evaluation that completed successfully, after all its phases.
+     *
+     * @param numberOfInstances The number of evaluated instances.
+     * @param bytesSent         The size of the instances sent to Rserve, in bytes.
+     */
+    void recordEvaluation(int numberOfInstances, long bytesSent);
+
+    /**
+     * Records an evaluation that failed.
+     *
+     * @param phase The phase where the evaluation failed.
+     */
+    void recordError(Phase phase);
+
+    /**
+     * Records an evaluation that exceeded the {@link RLoadParameter#EVALUATION_TIMEOUT_MILLIS deadline}.
+     *
+     * @param phase The phase where the deadline was exceeded.
+     */
+    void recordTimeout(Phase phase);
+}
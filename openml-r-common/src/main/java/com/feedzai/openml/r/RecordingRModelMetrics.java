@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link RModelMetrics} that keeps a {@link LatencyHistogram} of each {@link Phase phase} and counts the evaluations,
+ * the evaluated instances, the bytes sent to Rserve and the errors and timeouts of each phase.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @since 0.5.0
+ */
+public class RecordingRModelMetrics implements RModelMetrics {
+
+    /**
+     * The histogram of each phase.
+     */
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+
+    /**
+     * The number of errors in each phase.
+     */
+    private final Map<Phase, LongAdder> errors = new EnumMap<>(Phase.class);
+
+    /**
+     * The number of timeouts in each phase.
+     */
+    private final Map<Phase, LongAdder> timeouts = new EnumMap<>(Phase.class);
+
+    /**
+     * The number of successful evaluations.
+     */
+    private final LongAdder evaluations = new LongAdder();
+
+    /**
+     * The number of instances successfully evaluated.
+     */
+    private final LongAdder instances = new LongAdder();
+
+    /**
+     * The number of bytes sent to Rserve in successful evaluations.
+     */
+    private final LongAdder bytesSent = new LongAdder();
+
+    /**
+     * Constructor.
+     */
+    public RecordingRModelMetrics() {
+        for (final Phase phase : Phase.values()) {
+            this.histograms.put(phase, new LatencyHistogram());
+            this.errors.put(phase, new LongAdder());
+            this.timeouts.put(phase, new LongAdder());
+        }
+    }
+
+    @Override
+    public void recordPhase(final Phase phase, final long durationNanos) {
+        this.histograms.get(phase).record(durationNanos);
+    }
+
+    @Override
+    public void recordEvaluation(final int numberOfInstances, final long bytesSent) {
+        this.evaluations.increment();
+        this.instances.add(numberOfInstances);
+        this.bytesSent.add(bytesSent);
+    }
+
+    @Override
+    public void recordError(final Phase phase) {
+        this.errors.get(phase).increment();
+    }
+
+    @Override
+    public void recordTimeout(final Phase phase) {
+        this.timeouts.get(phase).increment();
+    }
+
+    /**
+     * Gets the histogram of the durations of a phase.
+     *
+     * @param phase The phase.
+     * @return the histogram.
+     */
+    public LatencyHistogram getHistogram(final Phase phase) {
+        return this.histograms.get(phase);
+    }
+
+    /**
+     * Gets the number of errors in a phase.
+     *
+     * @param phase The phase.
+     * @return the number of errors.
+     */
+    public long getErrorCount(final Phase phase) {
+        return this.errors.get(phase).sum();
+    }
+
+    /**
+     * Gets the number of errors in all phases.
+     *
+     * @return the number of errors.
+     */
+    public long getErrorCount() {
+        return this.errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Gets the number of timeouts in a phase.
+     *
+     * @param phase The phase.
+     * @return the number of timeouts.
+     */
+    public long getTimeoutCount(final Phase phase) {
+        return this.timeouts.get(phase).sum();
+    }
+
+    /**
+     * Gets the number of timeouts in all phases.
+     *
+     * @return the number of timeouts.
+     */
+    public long getTimeoutCount() {
+        return this.timeouts.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Gets the number of successful evaluations, i.e. of round trips to Rserve.
+     *
+     * @return the number of evaluations.
+     */
+    public long getEvaluationCount() {
+        return this.evaluations.sum();
+    }
+
+    /**
+     * Gets the number of instances successfully evaluated.
+     *
+     * @return the number of instances.
+     */
+    public long getInstanceCount() {
+        return this.instances.sum();
+    }
+
+    /**
+     * Gets the number of bytes sent to Rserve in successful evaluations.
+     *
+     * @return the number of bytes.
+     */
+    public long getBytesSent() {
+        return this.bytesSent.sum();
+    }
+
+    /**
+     * Discards all the recorded metrics.
+     */
+    public void reset() {
+        this.histograms.values().forEach(LatencyHistogram::reset);
+        this.errors.values().forEach(LongAdder::reset);
+        this.timeouts.values().forEach(LongAdder::reset);
+        this.evaluations.reset();
+        this.instances.reset();
+        this.bytesSent.reset();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(String.format(
+                "evaluations=%d, instances=%d, bytesSent=%d, errors=%d, timeouts=%d",
+                getEvaluationCount(),
+                getInstanceCount(),
+                getBytesSent(),
+                getErrorCount(),
+                getTimeoutCount()
+        ));
+        for (final Phase phase : Phase.values()) {
+            builder.append(System.lineSeparator()).append(phase).append(": ").append(getHistogram(phase));
+        }
+        return builder.toString();
+    }
+}
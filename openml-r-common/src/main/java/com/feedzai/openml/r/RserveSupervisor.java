@@ -0,0 +1,613 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Launches and supervises a set of local Rserve processes, one per port, so that Rserve doesn't have to be managed as
+ * an external daemon.
+ * <p>
+ * Each process runs an init script before accepting connections, which loads the configured R packages and can also
+ * prepare the workspace of a model (see {@link GenericRModelLoader#createWorkspaceScript}). The connections created to
+ * the process, which Rserve forks from it, inherit that workspace copy-on-write, and so they don't pay the startup of
+ * R, the load of the packages nor the load of the model, and share the memory of the model. The processes that die
+ * are restarted by a periodic health check.
+ * <p>
+ * The supervised processes are used by the loaders by setting {@link RLoadParameter#RSERVE_ENDPOINTS} to
+ * {@link #getEndpoints()}, or directly through {@link #connect()}. By default there is one process per available
+ * core.
+ *
+ * @since 0.5.0
+ */
+public class RserveSupervisor implements Closeable {
+
+    /**
+     * Launches a Rserve process.
+     */
+    @FunctionalInterface
+    public interface Launcher {
+
+        /**
+         * Launches a Rserve process listening on a port of the loopback interface.
+         *
+         * @param port       The port.
+         * @param initScript The R script to run before Rserve accepts connections.
+         * @return the process.
+         * @throws IOException If the process cannot be launched.
+         */
+        Process launch(int port, String initScript) throws IOException;
+    }
+
+    /**
+     * Logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RserveSupervisor.class);
+
+    /**
+     * The host where the supervised processes listen.
+     */
+    private static final String HOST = "127.0.0.1";
+
+    /**
+     * The time between the attempts to connect to a process that is starting, in milliseconds.
+     */
+    private static final long READINESS_POLL_MILLIS = 100;
+
+    /**
+     * The maximum time to wait for a connection when checking whether a port is already in use, in milliseconds.
+     */
+    private static final int PORT_CHECK_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * The time given to the processes to exit when the supervisor is closed, in seconds.
+     */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    /**
+     * The supervised processes.
+     */
+    private final List<SupervisedProcess> processes;
+
+    /**
+     * The R script run by each process before accepting connections.
+     */
+    private final String initScript;
+
+    /**
+     * Launches the processes.
+     */
+    private final Launcher launcher;
+
+    /**
+     * The time a process has to accept connections after being launched.
+     */
+    private final Duration startupTimeout;
+
+    /**
+     * The time between health checks.
+     */
+    private final Duration healthCheckInterval;
+
+    /**
+     * Runs the health checks.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The index of the process where the next connection of {@link #connect()} is created.
+     */
+    private final AtomicInteger nextProcess = new AtomicInteger();
+
+    /**
+     * The number of processes restarted after dying.
+     */
+    private final AtomicLong restartCount = new AtomicLong();
+
+    /**
+     * Whether the supervisor was closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param builder The builder with the configuration of the supervisor.
+     */
+    private RserveSupervisor(final Builder builder) {
+        this.processes = builder.ports.stream().map(SupervisedProcess::new).collect(Collectors.toList());
+        this.initScript = createInitScript(builder.packages, builder.initScript);
+        this.launcher = builder.launcher;
+        this.startupTimeout = builder.startupTimeout;
+        this.healthCheckInterval = builder.healthCheckInterval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rserve-supervisor-%d").build()
+        );
+    }
+
+    /**
+     * Creates a builder of a supervisor.
+     *
+     * @return the builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Launches all the processes, waits until they accept connections and starts the health checks.
+     *
+     * @throws IOException If a process cannot be launched or doesn't accept connections in time. In that case the
+     *                     processes already launched are stopped.
+     */
+    public void start() throws IOException {
+        Preconditions.checkState(!this.closed, "The supervisor was closed.");
+        try {
+            for (final SupervisedProcess process : this.processes) {
+                launch(process);
+            }
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+
+        final long intervalMillis = this.healthCheckInterval.toMillis();
+        this.scheduler.scheduleWithFixedDelay(this::checkHealth, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info(String.format("Rserve processes started in [%s].", getEndpoints()));
+    }
+
+    /**
+     * Gets the endpoints of the supervised processes, in the format of {@link RLoadParameter#RSERVE_ENDPOINTS}.
+     *
+     * @return the endpoints.
+     */
+    public String getEndpoints() {
+        return this.processes.stream()
+                .map(process -> HOST + ":" + process.port)
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Creates a connection to one of the supervised processes, chosen in round robin.
+     *
+     * @return the connection.
+     * @throws RserveException If the connection cannot be established.
+     */
+    public RConnection connect() throws RserveException {
+        final SupervisedProcess process = this.processes.get(
+                Math.floorMod(this.nextProcess.getAndIncrement(), this.processes.size())
+        );
+        return new RConnection(HOST, process.port);
+    }
+
+    /**
+     * Gets the number of processes restarted after dying.
+     *
+     * @return the number of restarts.
+     */
+    public long getRestartCount() {
+        return this.restartCount.get();
+    }
+
+    /**
+     * Stops the health checks and all the processes.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.scheduler.shutdownNow();
+        for (final SupervisedProcess process : this.processes) {
+            final Process current = process.process;
+            if (current == null) {
+                continue;
+            }
+            current.destroy();
+            try {
+                if (!current.waitFor(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    current.destroyForcibly();
+                }
+            } catch (final InterruptedException e) {
+                current.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Restarts the processes that died since the last health check.
+     */
+    private void checkHealth() {
+        for (final SupervisedProcess process : this.processes) {
+            if (this.closed || process.process.isAlive()) {
+                continue;
+            }
+            logger.warn(String.format(
+                    "Rserve process in port [%d] exited with code [%d]. Restarting it...",
+                    process.port,
+                    process.process.exitValue()
+            ));
+            try {
+                launch(process);
+                this.restartCount.incrementAndGet();
+            } catch (final IOException e) {
+                logger.error(String.format("Could not restart the Rserve process in port [%d].", process.port), e);
+            }
+        }
+    }
+
+    /**
+     * Launches a process and waits until it accepts connections.
+     * <p>
+     * The port must be free before the process is launched, since otherwise the readiness check would be answered by
+     * whatever is already listening there, e.g. a Rserve left behind by a previous run, and the process would be
+     * reported as ready while it fails to start. For the same reason the process must still be alive once the port
+     * accepts connections.
+     *
+     * @param process The process.
+     * @throws IOException If the port is already in use, or the process cannot be launched or doesn't accept
+     *                     connections in time. In that case the process is stopped.
+     */
+    private void launch(final SupervisedProcess process) throws IOException {
+        checkPortIsFree(process.port);
+        process.process = this.launcher.launch(process.port, this.initScript);
+
+        final long deadline = System.nanoTime() + this.startupTimeout.toNanos();
+        while (true) {
+            if (!process.process.isAlive()) {
+                throw new IOException(String.format(
+                        "Rserve process in port [%d] exited with code [%d] during startup.",
+                        process.port,
+                        process.process.exitValue()
+                ));
+            }
+            try {
+                new RConnection(HOST, process.port).close();
+                if (!process.process.isAlive()) {
+                    throw new IOException(String.format(
+                            "Rserve process in port [%d] exited with code [%d] during startup, while another "
+                                    + "process accepted connections in its port.",
+                            process.port,
+                            process.process.exitValue()
+                    ));
+                }
+                return;
+            } catch (final RserveException e) {
+                if (System.nanoTime() > deadline) {
+                    process.process.destroyForcibly();
+                    throw new IOException(String.format(
+                            "Rserve process in port [%d] didn't accept connections in %s.",
+                            process.port,
+                            this.startupTimeout
+                    ), e);
+                }
+            }
+            try {
+                Thread.sleep(READINESS_POLL_MILLIS);
+            } catch (final InterruptedException e) {
+                process.process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the Rserve process to start.", e);
+            }
+        }
+    }
+
+    /**
+     * Checks that nothing is accepting connections in a port where a process is about to be launched.
+     *
+     * @param port The port.
+     * @throws IOException If the port is already in use.
+     */
+    private static void checkPortIsFree(final int port) throws IOException {
+        try (final Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(HOST, port), PORT_CHECK_TIMEOUT_MILLIS);
+        } catch (final ConnectException e) {
+            return;
+        }
+        throw new IOException(String.format(
+                "Port [%d] is already in use by another process, Rserve cannot be launched there.",
+                port
+        ));
+    }
+
+    /**
+     * Creates the R script run by each process before accepting connections. The packages that are not installed are
+     * skipped with a warning instead of aborting the startup, since they may only be needed by some models.
+     *
+     * @param packages   The R packages to load.
+     * @param initScript The R script run after loading the packages.
+     * @return the script.
+     */
+    static String createInitScript(final List<String> packages, final String initScript) {
+        final StringBuilder script = new StringBuilder();
+        for (final String rPackage : packages) {
+            script.append(String.format(
+                    "if (requireNamespace('%1$s', quietly = TRUE)) suppressPackageStartupMessages(library(%1$s)) "
+                            + "else warning('The R package %1$s is not installed and was not preloaded.')",
+                    rPackage
+            )).append(System.lineSeparator());
+        }
+        return script.append(initScript).toString();
+    }
+
+    /**
+     * A process supervised in a port.
+     */
+    private static final class SupervisedProcess {
+
+        /**
+         * The port where the process listens.
+         */
+        private final int port;
+
+        /**
+         * The current process, or {@code null} if it was never launched.
+         */
+        private volatile Process process;
+
+        /**
+         * Constructor.
+         *
+         * @param port The port where the process listens.
+         */
+        private SupervisedProcess(final int port) {
+            this.port = port;
+        }
+    }
+
+    /**
+     * {@link Launcher} that runs Rserve with {@code Rscript}. The init script of each process is written to
+     * {@code rserve-<port>.R}, followed by a call to {@code Rserve::run.Rserve}, and its output is appended to
+     * {@code rserve-<port>.log}, both in a work directory.
+     */
+    public static class RscriptLauncher implements Launcher {
+
+        /**
+         * The {@code Rscript} executable.
+         */
+        private final String rscript;
+
+        /**
+         * The directory of the scripts and of the logs of the processes.
+         */
+        private final Path workDirectory;
+
+        /**
+         * Constructor for a launcher that uses the {@code Rscript} in the {@code PATH} and the temporary directory.
+         */
+        public RscriptLauncher() {
+            this("Rscript", Paths.get(System.getProperty("java.io.tmpdir")));
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param rscript       The {@code Rscript} executable.
+         * @param workDirectory The directory of the scripts and of the logs of the processes.
+         */
+        public RscriptLauncher(final String rscript, final Path workDirectory) {
+            this.rscript = rscript;
+            this.workDirectory = workDirectory;
+        }
+
+        @Override
+        public Process launch(final int port, final String initScript) throws IOException {
+            final Path script = this.workDirectory.resolve("rserve-" + port + ".R");
+            Files.write(script, createScript(port, initScript).getBytes(StandardCharsets.UTF_8));
+
+            final File log = this.workDirectory.resolve("rserve-" + port + ".log").toFile();
+            return new ProcessBuilder(this.rscript, script.toAbsolutePath().toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                    .start();
+        }
+
+        /**
+         * Creates the R script that runs the init script and then Rserve in the foreground.
+         *
+         * @param port       The port where Rserve listens.
+         * @param initScript The R script to run before Rserve accepts connections.
+         * @return the script.
+         */
+        static String createScript(final int port, final String initScript) {
+            return initScript + System.lineSeparator() + String.format("Rserve::run.Rserve(port = %d)", port);
+        }
+    }
+
+    /**
+     * Builder of a {@link RserveSupervisor}.
+     */
+    public static final class Builder {
+
+        /**
+         * The ports of the processes.
+         */
+        private List<Integer> ports = consecutivePorts(
+                GenericRModelLoader.DEFAULT_RSERVE_PORT,
+                Runtime.getRuntime().availableProcessors()
+        );
+
+        /**
+         * The R packages loaded by each process.
+         */
+        private List<String> packages = ImmutableList.of();
+
+        /**
+         * The R script run by each process after loading the packages.
+         */
+        private String initScript = "";
+
+        /**
+         * Launches the processes.
+         */
+        private Launcher launcher = new RscriptLauncher();
+
+        /**
+         * The time a process has to accept connections after being launched.
+         */
+        private Duration startupTimeout = Duration.ofMinutes(1);
+
+        /**
+         * The time between health checks.
+         */
+        private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+        /**
+         * Constructor.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of processes, listening on consecutive ports.
+         *
+         * @param numberOfProcesses The number of processes.
+         * @param basePort          The port of the first process.
+         * @return this builder.
+         */
+        public Builder processes(final int numberOfProcesses, final int basePort) {
+            Preconditions.checkArgument(numberOfProcesses > 0, "At least one process is required.");
+            this.ports = consecutivePorts(basePort, numberOfProcesses);
+            return this;
+        }
+
+        /**
+         * Sets the ports of the processes, one process per port.
+         *
+         * @param ports The ports.
+         * @return this builder.
+         */
+        public Builder ports(final Collection<Integer> ports) {
+            Preconditions.checkArgument(!ports.isEmpty(), "At least one process is required.");
+            this.ports = ImmutableList.copyOf(ports);
+            return this;
+        }
+
+        /**
+         * Sets the R packages loaded by each process before it accepts connections. The packages that are not
+         * installed are skipped with a warning.
+         *
+         * @param packages The packages.
+         * @return this builder.
+         */
+        public Builder packages(final Collection<String> packages) {
+            this.packages = ImmutableList.copyOf(packages);
+            return this;
+        }
+
+        /**
+         * Sets the R script run by each process before it accepts connections, after loading the packages, e.g. the
+         * {@link GenericRModelLoader#createWorkspaceScript workspace of a model}.
+         *
+         * @param initScript The R script.
+         * @return this builder.
+         */
+        public Builder initScript(final String initScript) {
+            this.initScript = Preconditions.checkNotNull(initScript);
+            return this;
+        }
+
+        /**
+         * Sets how the processes are launched, by default with a {@link RscriptLauncher}.
+         *
+         * @param launcher The launcher.
+         * @return this builder.
+         */
+        public Builder launcher(final Launcher launcher) {
+            this.launcher = Preconditions.checkNotNull(launcher);
+            return this;
+        }
+
+        /**
+         * Sets the time a process has to accept connections after being launched.
+         *
+         * @param startupTimeout The timeout.
+         * @return this builder.
+         */
+        public Builder startupTimeout(final Duration startupTimeout) {
+            this.startupTimeout = Preconditions.checkNotNull(startupTimeout);
+            return this;
+        }
+
+        /**
+         * Sets the time between the health checks that restart the dead processes.
+         *
+         * @param healthCheckInterval The interval.
+         * @return this builder.
+         */
+        public Builder healthCheckInterval(final Duration healthCheckInterval) {
+            Preconditions.checkArgument(!healthCheckInterval.isNegative() && !healthCheckInterval.isZero(),
+                                        "The health check interval must be positive.");
+            this.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
+        /**
+         * Builds the supervisor, which must be {@link RserveSupervisor#start() started}.
+         *
+         * @return the supervisor.
+         */
+        public RserveSupervisor build() {
+            return new RserveSupervisor(this);
+        }
+
+        /**
+         * Creates a list of consecutive ports.
+         *
+         * @param basePort The first port.
+         * @param count    The number of ports.
+         * @return the ports.
+         */
+        private static List<Integer> consecutivePorts(final int basePort, final int count) {
+            final List<Integer> ports = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ports.add(basePort + i);
+            }
+            return ports;
+        }
+    }
+}
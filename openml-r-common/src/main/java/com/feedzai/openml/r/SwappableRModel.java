@@ -0,0 +1,383 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.model.ClassificationMLModel;
+import com.feedzai.openml.provider.exception.ModelLoadingException;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Handle of a {@link ClassificationGenericRModel} whose version can be replaced without interrupting the scoring.
+ * <p>
+ * The new version is loaded by a {@link GenericRModelLoader} in the background, on its own connections to Rserve and
+ * warmed up as configured in its {@link RLoadParameter parameters}, while the current version keeps serving. Once it
+ * is ready, the new version receives all the following requests, and the previous version is closed as soon as the
+ * requests it is evaluating are completed. If the new version cannot be loaded the current one keeps serving.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @since 0.5.0
+ */
+public class SwappableRModel implements ClassificationMLModel {
+
+    /**
+     * Logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SwappableRModel.class);
+
+    /**
+     * The version that receives the requests.
+     */
+    private volatile ModelVersion currentVersion;
+
+    /**
+     * Whether this object was closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Loads the new versions in the background.
+     */
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("r-model-swap-%d").build()
+    );
+
+    /**
+     * Constructor.
+     *
+     * @param model The first version of the model. This instance is only used by this object from now on and thus it
+     *              is responsible to close it.
+     */
+    public SwappableRModel(final ClassificationGenericRModel model) {
+        this.currentVersion = new ModelVersion(model);
+    }
+
+    /**
+     * Loads a new version of the model in the background and, once it is loaded, replaces the current version with
+     * it, see {@link #swap(ClassificationGenericRModel)}. The new version must have the same schema.
+     *
+     * @param loader    The loader of the new version, with the {@link RLoadParameter parameters} to use.
+     * @param modelPath The path of the directory of the new version.
+     * @return the future completed when the new version receives the requests and the previous version is drained and
+     * closed. It is completed exceptionally if the new version cannot be loaded, in which case the current version
+     * keeps serving.
+     */
+    public CompletableFuture<Void> swap(final GenericRModelLoader loader, final Path modelPath) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return swap(loader.loadModel(modelPath, getSchema()));
+            } catch (final ModelLoadingException e) {
+                logger.error(String.format("The new version of the model in [%s] could not be loaded.", modelPath), e);
+                throw new CompletionException(e);
+            }
+        }, this.loadExecutor).thenCompose(drained -> drained);
+    }
+
+    /**
+     * Replaces the current version of the model with the given one. The new version receives all the following
+     * requests, and the previous version is closed as soon as the requests it is evaluating are completed.
+     *
+     * @param model The new version of the model, which must have the same schema. This instance is only used by this
+     *              object from now on and thus it is responsible to close it.
+     * @return the future completed when the previous version is drained and closed.
+     * @throws IllegalArgumentException If the new version has a different schema.
+     * @throws IllegalStateException    If this object is closed, in which case the new version is closed.
+     */
+    public synchronized CompletableFuture<Void> swap(final ClassificationGenericRModel model) {
+        if (this.closed) {
+            model.close();
+            throw new IllegalStateException("The model is closed.");
+        }
+        if (!model.getSchema().equals(getSchema())) {
+            model.close();
+            throw new IllegalArgumentException("The new version of the model must have the same schema.");
+        }
+
+        final ModelVersion previousVersion = this.currentVersion;
+        this.currentVersion = new ModelVersion(model);
+        logger.info("The new version of the model is receiving the requests, draining the previous version.");
+        previousVersion.retire();
+        return previousVersion.drained;
+    }
+
+    /**
+     * Gets the version of the model that receives the requests, e.g. to access its metrics. It is closed when it is
+     * replaced by another version.
+     *
+     * @return the current version of the model.
+     */
+    public ClassificationGenericRModel getModel() {
+        return this.currentVersion.model;
+    }
+
+    @Override
+    public double[] getClassDistribution(final Instance instance) {
+        return withModel(model -> model.getClassDistribution(instance));
+    }
+
+    @Override
+    public int classify(final Instance instance) {
+        return withModel(model -> model.classify(instance));
+    }
+
+    /**
+     * Gets the class distribution of an instance asynchronously.
+     *
+     * @param instance The instance to be evaluated.
+     * @return the future class distribution of the instance.
+     * @see ClassificationGenericRModel#getClassDistributionAsync(Instance)
+     */
+    public CompletableFuture<double[]> getClassDistributionAsync(final Instance instance) {
+        return withModelAsync(model -> model.getClassDistributionAsync(instance));
+    }
+
+    /**
+     * Classifies an instance asynchronously.
+     *
+     * @param instance The instance to be classified.
+     * @return the future index of the predicted class of the instance.
+     * @see ClassificationGenericRModel#classifyAsync(Instance)
+     */
+    public CompletableFuture<Integer> classifyAsync(final Instance instance) {
+        return withModelAsync(model -> model.classifyAsync(instance));
+    }
+
+    /**
+     * Gets the class distribution of several instances in a single call to R.
+     *
+     * @param instances The instances to be evaluated.
+     * @return the class distribution of each instance, in the same order of {@code instances}.
+     * @see ClassificationGenericRModel#getClassDistributions(List)
+     */
+    public double[][] getClassDistributions(final List<Instance> instances) {
+        return withModel(model -> model.getClassDistributions(instances));
+    }
+
+    /**
+     * Classifies several instances in a single call to R.
+     *
+     * @param instances The instances to be classified.
+     * @return the index of the predicted class of each instance, in the same order of {@code instances}.
+     * @see ClassificationGenericRModel#classify(List)
+     */
+    public int[] classify(final List<Instance> instances) {
+        return withModel(model -> model.classify(instances));
+    }
+
+    /**
+     * Gets both the predicted class and the class distribution of an instance in a single call to R.
+     *
+     * @param instance The instance to be evaluated.
+     * @return the predicted class and the class distribution of the instance.
+     * @see ClassificationGenericRModel#score(Instance)
+     */
+    public ClassificationScore score(final Instance instance) {
+        return withModel(model -> model.score(instance));
+    }
+
+    /**
+     * Gets both the predicted class and the class distribution of several instances in a single call to R.
+     *
+     * @param instances The instances to be evaluated.
+     * @return the predicted class and the class distribution of each instance, in the same order of
+     * {@code instances}.
+     * @see ClassificationGenericRModel#score(List)
+     */
+    public ClassificationScore[] score(final List<Instance> instances) {
+        return withModel(model -> model.score(instances));
+    }
+
+    @Override
+    public boolean save(final Path dir, final String name) {
+        // R models are only load-able and thus cannot be saved.
+        return false;
+    }
+
+    @Override
+    public DatasetSchema getSchema() {
+        return this.currentVersion.model.getSchema();
+    }
+
+    /**
+     * Closes the current version of the model as soon as the requests it is evaluating are completed. The previous
+     * versions are closed as well once they are drained.
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        this.loadExecutor.shutdownNow();
+        this.currentVersion.retire();
+    }
+
+    /**
+     * Evaluates a request with the current version of the model, which is not closed while the request is evaluated.
+     *
+     * @param request The request.
+     * @param <T>     The type of the result.
+     * @return the result of the request.
+     * @throws IllegalStateException If this object is closed.
+     */
+    private <T> T withModel(final Function<ClassificationGenericRModel, T> request) {
+        final ModelVersion version = acquireVersion();
+        try {
+            return request.apply(version.model);
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Evaluates an asynchronous request with the current version of the model, which is not closed until the request
+     * is completed.
+     *
+     * @param request The request.
+     * @param <T>     The type of the result.
+     * @return the future result of the request.
+     * @throws IllegalStateException If this object is closed.
+     */
+    private <T> CompletableFuture<T> withModelAsync(final Function<ClassificationGenericRModel, CompletableFuture<T>>
+                                                            request) {
+        final ModelVersion version = acquireVersion();
+        try {
+            return request.apply(version.model).whenComplete((result, error) -> version.release());
+        } catch (final RuntimeException e) {
+            version.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Acquires the current version of the model for a request, so that it is not closed until it is released.
+     *
+     * @return the acquired version.
+     * @throws IllegalStateException If this object is closed.
+     */
+    private ModelVersion acquireVersion() {
+        while (true) {
+            final ModelVersion version = this.currentVersion;
+            if (version.acquire()) {
+                return version;
+            }
+            // The version was replaced in the meantime, unless this object is closed.
+            Preconditions.checkState(this.currentVersion != version, "The model is closed.");
+        }
+    }
+
+    /**
+     * A version of the model and the number of requests it is evaluating, so that it is only closed after being
+     * drained.
+     */
+    private static final class ModelVersion {
+
+        /**
+         * The model.
+         */
+        private final ClassificationGenericRModel model;
+
+        /**
+         * The number of requests being evaluated by the model.
+         */
+        private final AtomicInteger requests = new AtomicInteger();
+
+        /**
+         * Whether the model was closed.
+         */
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /**
+         * Completed when the model is drained and closed.
+         */
+        private final CompletableFuture<Void> drained = new CompletableFuture<>();
+
+        /**
+         * Whether the version no longer receives new requests.
+         */
+        private volatile boolean retired;
+
+        /**
+         * Constructor.
+         *
+         * @param model The model.
+         */
+        private ModelVersion(final ClassificationGenericRModel model) {
+            this.model = model;
+        }
+
+        /**
+         * Acquires this version for a request.
+         *
+         * @return {@code true} if the version was acquired, {@code false} if it no longer receives new requests.
+         */
+        private boolean acquire() {
+            this.requests.incrementAndGet();
+            if (this.retired) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Releases this version after a request, closing it if it is retired and this was its last request.
+         */
+        private void release() {
+            if (this.requests.decrementAndGet() == 0 && this.retired) {
+                closeModel();
+            }
+        }
+
+        /**
+         * Stops this version from receiving new requests, and closes it once the requests it is evaluating are
+         * completed.
+         */
+        private void retire() {
+            this.retired = true;
+            if (this.requests.get() == 0) {
+                closeModel();
+            }
+        }
+
+        /**
+         * Closes the model, only once.
+         */
+        private void closeModel() {
+            if (this.closed.compareAndSet(false, true)) {
+                this.model.close();
+                this.drained.complete(null);
+            }
+        }
+    }
+}
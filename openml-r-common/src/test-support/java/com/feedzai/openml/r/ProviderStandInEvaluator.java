@@ -0,0 +1,386 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPDouble;
+import org.rosuda.REngine.REXPGenericVector;
+import org.rosuda.REngine.REXPLogical;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.REXPNull;
+import org.rosuda.REngine.REXPString;
+import org.rosuda.REngine.REXPSymbol;
+import org.rosuda.REngine.RList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link RserveStandIn.Evaluator} that answers the R expressions sent by the providers as if a script with the
+ * {@link ProviderRObject provider functions} was loaded, returning the same class distribution for every instance.
+ * <p>
+ * It understands function definitions, assignments, {@code { a; b }} blocks, {@code list(a, b)}, {@code exists('x')},
+ * {@code exists('f', mode = 'function')}, {@code compiler::cmpfun} of functions without arguments and the calls of
+ * the provider functions, which is enough to load a model and to evaluate instances in any
+ * {@link RInstanceEncoder.TransferMode}. Loading scripts and packages does nothing.
+ *
+ * @since 0.5.0
+ */
+public class ProviderStandInEvaluator implements RserveStandIn.Evaluator {
+
+    /**
+     * Marks the objects of the workspace that are functions.
+     */
+    private static final REXP FUNCTION = new REXPSymbol("function");
+
+    /**
+     * Matches the definitions of functions, e.g. {@code f <- function(x) { ... }}.
+     */
+    private static final Pattern FUNCTION_DEFINITION = Pattern.compile("(?m)^\\s*([.\\w]+)\\s*<-\\s*function\\b");
+
+    /**
+     * Matches an assignment, e.g. {@code x <- f(y)}.
+     */
+    private static final Pattern ASSIGNMENT = Pattern.compile("(?s)^([.\\w]+)\\s*<-\\s*(.+)$");
+
+    /**
+     * Matches a function call, e.g. {@code f(x, y)}.
+     */
+    private static final Pattern CALL = Pattern.compile("(?s)^([.\\w]+(?:::[.\\w]+)?)\\s*\\((.*)\\)$");
+
+    /**
+     * Matches an anonymous function without arguments, e.g. {@code function() f(x)}.
+     */
+    private static final Pattern ANONYMOUS_FUNCTION = Pattern.compile("(?s)^function\\s*\\(\\s*\\)\\s*(.+)$");
+
+    /**
+     * Matches a symbol.
+     */
+    private static final Pattern SYMBOL = Pattern.compile("^[.\\w]+$");
+
+    /**
+     * Functions whose calls are ignored.
+     */
+    private static final Set<String> IGNORED_FUNCTIONS = ImmutableSet.of(
+            "source", "library", "require", "suppressMessages", "suppressWarnings"
+    );
+
+    /**
+     * The target values, in the order of the class distribution.
+     */
+    private final String[] classes;
+
+    /**
+     * The class distribution returned for every instance.
+     */
+    private final double[] classDistribution;
+
+    /**
+     * The predicted class of every instance, the one with the highest probability.
+     */
+    private final String predictedClass;
+
+    /**
+     * The functions that the script defines.
+     */
+    private final Set<String> scriptFunctions;
+
+    /**
+     * Constructor.
+     *
+     * @param classes                The target values, in the order of the class distribution.
+     * @param classDistribution      The class distribution returned for every instance.
+     * @param definesMatrixFunctions Whether the script also defines the optional functions that evaluate numeric
+     *                               matrices.
+     */
+    public ProviderStandInEvaluator(final List<String> classes,
+                                    final double[] classDistribution,
+                                    final boolean definesMatrixFunctions) {
+        Preconditions.checkArgument(
+                classes.size() == classDistribution.length,
+                "There must be one probability per class."
+        );
+        this.classes = classes.toArray(new String[0]);
+        this.classDistribution = classDistribution.clone();
+
+        int predictedIndex = 0;
+        for (int i = 1; i < classDistribution.length; i++) {
+            if (classDistribution[i] > classDistribution[predictedIndex]) {
+                predictedIndex = i;
+            }
+        }
+        this.predictedClass = this.classes[predictedIndex];
+
+        final ImmutableSet.Builder<String> scriptFunctions = ImmutableSet.<String>builder().add(
+                ProviderRObject.LOAD_MODEL_FN.getName(),
+                ProviderRObject.CLASS_DISTRIBUTION_FN.getName(),
+                ProviderRObject.CLASSIFICATION_FN.getName()
+        );
+        if (definesMatrixFunctions) {
+            scriptFunctions.add(
+                    ProviderRObject.MATRIX_CLASS_DISTRIBUTION_FN.getName(),
+                    ProviderRObject.MATRIX_CLASSIFICATION_FN.getName()
+            );
+        }
+        this.scriptFunctions = scriptFunctions.build();
+    }
+
+    @Override
+    public REXP evaluate(final String expression, final Map<String, REXP> workspace) throws REXPMismatchException {
+        final String statement = expression.trim();
+
+        if (statement.startsWith("{") && statement.endsWith("}")) {
+            REXP result = new REXPNull();
+            for (final String blockStatement : split(statement.substring(1, statement.length() - 1), ";")) {
+                result = evaluate(blockStatement, workspace);
+            }
+            return result;
+        }
+
+        final Matcher definition = FUNCTION_DEFINITION.matcher(statement);
+        if (definition.find()) {
+            do {
+                workspace.put(definition.group(1), FUNCTION);
+            } while (definition.find());
+            return new REXPNull();
+        }
+
+        final List<String> conjunction = split(statement, "&&");
+        if (conjunction.size() > 1) {
+            boolean result = true;
+            for (final String operand : conjunction) {
+                result &= evaluate(operand, workspace).asBytes()[0] != 0;
+            }
+            return new REXPLogical(result);
+        }
+
+        final Matcher assignment = ASSIGNMENT.matcher(statement);
+        if (assignment.matches()) {
+            final REXP value = evaluate(assignment.group(2), workspace);
+            workspace.put(assignment.group(1), value);
+            return value;
+        }
+
+        final Matcher call = CALL.matcher(statement);
+        if (call.matches()) {
+            return call(call.group(1), split(call.group(2), ","), workspace);
+        }
+
+        if (SYMBOL.matcher(statement).matches()) {
+            final REXP value = workspace.get(statement);
+            if (value == null) {
+                throw new IllegalArgumentException(String.format("object '%s' not found", statement));
+            }
+            return value;
+        }
+
+        throw new IllegalArgumentException("Unsupported expression: " + statement);
+    }
+
+    /**
+     * Evaluates a function call.
+     *
+     * @param function  The name of the function.
+     * @param arguments The arguments of the call.
+     * @param workspace The workspace of the connection.
+     * @return the result of the call.
+     * @throws REXPMismatchException If an object of the workspace doesn't have the expected type.
+     */
+    private REXP call(final String function,
+                      final List<String> arguments,
+                      final Map<String, REXP> workspace) throws REXPMismatchException {
+        if (IGNORED_FUNCTIONS.contains(function)) {
+            return new REXPNull();
+        }
+        if (function.equals("exists")) {
+            final String name = unquote(arguments.get(0));
+            return new REXPLogical(arguments.size() > 1
+                                           ? isFunction(name, workspace)
+                                           : workspace.containsKey(name) || isFunction(name, workspace));
+        }
+        if (function.equals("compiler::cmpfun")) {
+            final String argument = arguments.get(0).trim();
+            final Matcher anonymousFunction = ANONYMOUS_FUNCTION.matcher(argument);
+            if (anonymousFunction.matches()) {
+                return new Closure(anonymousFunction.group(1));
+            }
+            if (!isFunction(argument, workspace)) {
+                throw new IllegalArgumentException(String.format("object '%s' not found", argument));
+            }
+            return workspace.getOrDefault(argument, FUNCTION);
+        }
+        if (function.equals("list")) {
+            final List<REXP> elements = new ArrayList<>(arguments.size());
+            for (final String argument : arguments) {
+                elements.add(evaluate(argument, workspace));
+            }
+            return new REXPGenericVector(new RList(elements));
+        }
+        if (!isFunction(function, workspace)) {
+            throw new IllegalArgumentException(String.format("could not find function \"%s\"", function));
+        }
+
+        final REXP closure = workspace.get(function);
+        if (closure instanceof Closure) {
+            return evaluate(((Closure) closure).body, workspace);
+        }
+        if (function.equals(ProviderRObject.LOAD_MODEL_FN.getName())) {
+            return new REXPNull();
+        }
+        if (function.equals(ProviderRObject.ASSEMBLE_INSTANCE_FN.getName())
+                || function.equals(ProviderRObject.ASSEMBLE_MATRIX_FN.getName())) {
+            return evaluate(arguments.get(0), workspace);
+        }
+        if (function.equals(ProviderRObject.CLASS_DISTRIBUTION_FN.getName())
+                || function.equals(ProviderRObject.MATRIX_CLASS_DISTRIBUTION_FN.getName())) {
+            return classDistributions(countRows(evaluate(arguments.get(0), workspace)));
+        }
+        if (function.equals(ProviderRObject.CLASSIFICATION_FN.getName())
+                || function.equals(ProviderRObject.MATRIX_CLASSIFICATION_FN.getName())) {
+            final String[] predictedClasses = new String[countRows(evaluate(arguments.get(0), workspace))];
+            Arrays.fill(predictedClasses, this.predictedClass);
+            return new REXPString(predictedClasses);
+        }
+        throw new IllegalArgumentException(String.format("Unsupported function \"%s\"", function));
+    }
+
+    /**
+     * Creates the class distribution of several instances, a list with the probabilities of each class.
+     *
+     * @param rows The number of instances.
+     * @return the class distributions.
+     */
+    private REXP classDistributions(final int rows) {
+        final REXP[] columns = new REXP[this.classes.length];
+        for (int classIndex = 0; classIndex < columns.length; classIndex++) {
+            final double[] probabilities = new double[rows];
+            Arrays.fill(probabilities, this.classDistribution[classIndex]);
+            columns[classIndex] = new REXPDouble(probabilities);
+        }
+        return new REXPGenericVector(new RList(columns, this.classes.clone()));
+    }
+
+    /**
+     * Checks whether a function is defined, either by the script or in the workspace.
+     *
+     * @param function  The name of the function.
+     * @param workspace The workspace of the connection.
+     * @return {@code true} if the function is defined, {@code false} otherwise.
+     */
+    private boolean isFunction(final String function, final Map<String, REXP> workspace) {
+        final REXP value = workspace.get(function);
+        return this.scriptFunctions.contains(function) || value == FUNCTION || value instanceof Closure;
+    }
+
+    /**
+     * Counts the instances of the object transferred to R, which can be a data frame, a matrix or a list whose first
+     * element is a matrix.
+     *
+     * @param instances The transferred instances.
+     * @return the number of instances.
+     * @throws REXPMismatchException If the object has an unexpected type.
+     */
+    private static int countRows(final REXP instances) throws REXPMismatchException {
+        final int[] dim = instances.dim();
+        if (dim != null) {
+            return dim[0];
+        }
+        if (instances.isList()) {
+            final RList elements = instances.asList();
+            return elements.isEmpty() ? 0 : countRows(elements.at(0));
+        }
+        return instances.length();
+    }
+
+    /**
+     * Removes the quotes around a string literal.
+     *
+     * @param literal The literal.
+     * @return the string.
+     */
+    private static String unquote(final String literal) {
+        return literal.trim().replaceAll("^['\"]|['\"]$", "");
+    }
+
+    /**
+     * Splits an expression by a separator, ignoring the separators within parentheses, braces or string literals.
+     *
+     * @param expression The expression.
+     * @param separator  The separator.
+     * @return the parts of the expression, without blank ones.
+     */
+    private static List<String> split(final String expression, final String separator) {
+        final List<String> parts = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            final char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(' || c == '{' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == '}' || c == ']') {
+                depth--;
+            } else if (depth == 0 && expression.startsWith(separator, i)) {
+                parts.add(expression.substring(start, i));
+                start = i + separator.length();
+                i = start - 1;
+            }
+        }
+        parts.add(expression.substring(start));
+        parts.removeIf(part -> part.trim().isEmpty());
+        return parts;
+    }
+
+    /**
+     * A function without arguments defined in the workspace, whose body is evaluated when it is called.
+     */
+    private static final class Closure extends REXPNull {
+
+        /**
+         * The body of the function.
+         */
+        private final String body;
+
+        /**
+         * Constructor.
+         *
+         * @param body The body of the function.
+         */
+        private Closure(final String body) {
+            this.body = body;
+        }
+    }
+}
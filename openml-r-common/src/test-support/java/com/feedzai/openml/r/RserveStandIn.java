@@ -0,0 +1,529 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+import org.rosuda.REngine.Rserve.protocol.REXPFactory;
+import org.rosuda.REngine.Rserve.protocol.RTalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for Rserve that runs in the JVM and speaks enough of the QAP1 protocol to be used by {@link RConnection}:
+ * the handshake, the plain text {@code login}, {@code voidEval}, {@code eval} and {@code assign}.
+ * <p>
+ * Each connection has its own workspace, as in Rserve, where the assigned objects are kept. The expressions are not
+ * evaluated by R but by an {@link Evaluator}, e.g. a {@link ProviderStandInEvaluator} that answers the calls made by
+ * the providers with fixed results. Each {@code eval} can be delayed by a configurable latency to simulate the time
+ * spent by R.
+ * <p>
+ * This allows to test and benchmark the Java side of the providers, such as the connection pool, the batching and the
+ * encoding of the instances, deterministically and without R.
+ *
+ * @since 0.5.0
+ */
+public class RserveStandIn implements Closeable {
+
+    /**
+     * Evaluates the R expressions sent to the stand-in.
+     */
+    @FunctionalInterface
+    public interface Evaluator {
+
+        /**
+         * Evaluates an R expression.
+         *
+         * @param expression The expression.
+         * @param workspace  The objects assigned in the workspace of the connection, which can be changed.
+         * @return the result of the expression.
+         * @throws REXPMismatchException    If an object of the workspace doesn't have the expected type.
+         * @throws IllegalArgumentException If the expression is not supported, which is reported to the client as an
+         *                                  R error.
+         */
+        REXP evaluate(String expression, Map<String, REXP> workspace) throws REXPMismatchException;
+    }
+
+    /**
+     * Logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RserveStandIn.class);
+
+    /**
+     * The identification sent by the server when a client connects, i.e. a Rserve 0.6 with the QAP1 protocol that
+     * doesn't require authentication.
+     */
+    private static final byte[] IDENTIFICATION = "Rsrv0103QAP1\r\n\r\n--------------\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The identification sent by the server when a client connects and it requires a login with a plain text password.
+     */
+    private static final byte[] IDENTIFICATION_WITH_LOGIN = "Rsrv0103QAP1\r\n\r\nARpt----------\r\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The command to log in.
+     */
+    private static final int CMD_LOGIN = 0x001;
+
+    /**
+     * The length of the header of the messages.
+     */
+    private static final int HEADER_LENGTH = 16;
+
+    /**
+     * The response to a successful command.
+     */
+    private static final int RESP_OK = 0x10001;
+
+    /**
+     * The response to a failed command, combined with the error code in the highest byte.
+     */
+    private static final int RESP_ERR = 0x10002;
+
+    /**
+     * The socket where the connections are accepted.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Accepts the connections and serves each of them in its own thread.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Evaluates the expressions.
+     */
+    private final Evaluator evaluator;
+
+    /**
+     * The time each {@code eval} takes, in nanoseconds.
+     */
+    private final long latencyNanos;
+
+    /**
+     * The sockets of the open connections.
+     */
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The number of connections accepted.
+     */
+    private final AtomicLong connectionCount = new AtomicLong();
+
+    /**
+     * The number of {@code eval} commands received.
+     */
+    private final AtomicLong evalCount = new AtomicLong();
+
+    /**
+     * The credentials required to log in, as sent by the client, or {@code null} if no login is required.
+     */
+    private volatile String credentials;
+
+    /**
+     * The workspace inherited by the new connections, as the workspace of the Rserve parent process.
+     */
+    private final Map<String, REXP> parentWorkspace = new HashMap<>();
+
+    /**
+     * Whether the stand-in was closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor for a stand-in listening on a free port of the loopback interface, without latency.
+     *
+     * @param evaluator Evaluates the expressions.
+     * @throws IOException If the server socket cannot be created.
+     */
+    public RserveStandIn(final Evaluator evaluator) throws IOException {
+        this(0, evaluator, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param port        The port of the loopback interface to listen on, e.g. 6311 to replace a local Rserve, or 0
+     *                    to use any free port.
+     * @param evaluator   Evaluates the expressions.
+     * @param latency     The time each {@code eval} takes.
+     * @param latencyUnit The unit of {@code latency}.
+     * @throws IOException If the server socket cannot be created.
+     */
+    public RserveStandIn(final int port,
+                         final Evaluator evaluator,
+                         final long latency,
+                         final TimeUnit latencyUnit) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.evaluator = evaluator;
+        this.latencyNanos = latencyUnit.toNanos(latency);
+        this.executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rserve-stand-in-%d").build()
+        );
+        this.executor.execute(this::acceptConnections);
+    }
+
+    /**
+     * Gets the port the stand-in is listening on.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Opens a new connection to the stand-in.
+     *
+     * @return the connection.
+     * @throws RserveException If the connection cannot be established.
+     */
+    public RConnection connect() throws RserveException {
+        return new RConnection(this.serverSocket.getInetAddress().getHostAddress(), getPort());
+    }
+
+    /**
+     * Evaluates an expression in the workspace inherited by the connections accepted from now on, like the init script
+     * of a Rserve server.
+     *
+     * @param expression The expression.
+     * @throws REXPMismatchException If an object of the workspace doesn't have the expected type.
+     */
+    public void evaluateInParent(final String expression) throws REXPMismatchException {
+        synchronized (this.parentWorkspace) {
+            this.evaluator.evaluate(expression, this.parentWorkspace);
+        }
+    }
+
+    /**
+     * Requires the connections accepted from now on to log in with the given credentials before any other command.
+     *
+     * @param user     The user.
+     * @param password The password.
+     */
+    public void requireLogin(final String user, final String password) {
+        this.credentials = user + "\n" + password;
+    }
+
+    /**
+     * Gets the number of connections accepted so far.
+     *
+     * @return the number of connections.
+     */
+    public long getConnectionCount() {
+        return this.connectionCount.get();
+    }
+
+    /**
+     * Gets the number of connections currently open.
+     *
+     * @return the number of open connections.
+     */
+    public int getOpenConnectionCount() {
+        return this.sockets.size();
+    }
+
+    /**
+     * Gets the number of {@code eval} commands received so far, i.e. the number of round trips that returned a result.
+     *
+     * @return the number of {@code eval} commands.
+     */
+    public long getEvalCount() {
+        return this.evalCount.get();
+    }
+
+    /**
+     * Drops all the open connections, as if the Rserve server was restarted. The stand-in keeps accepting new
+     * connections.
+     */
+    public void dropConnections() {
+        this.sockets.forEach(RserveStandIn::closeQuietly);
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        closeQuietly(this.serverSocket);
+        this.sockets.forEach(RserveStandIn::closeQuietly);
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Accepts connections until the stand-in is closed.
+     */
+    private void acceptConnections() {
+        while (!this.closed) {
+            try {
+                final Socket socket = this.serverSocket.accept();
+                this.connectionCount.incrementAndGet();
+                this.sockets.add(socket);
+                this.executor.execute(() -> serve(socket));
+            } catch (final IOException e) {
+                if (!this.closed) {
+                    logger.error("Could not accept connection.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Serves the commands of a connection until it is closed.
+     *
+     * @param socket The socket of the connection.
+     */
+    private void serve(final Socket socket) {
+        final Session session;
+        synchronized (this.parentWorkspace) {
+            session = new Session(this.credentials, this.parentWorkspace);
+        }
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             final OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            socket.setTcpNoDelay(true);
+            out.write(session.credentials == null ? IDENTIFICATION : IDENTIFICATION_WITH_LOGIN);
+            out.flush();
+
+            final byte[] header = new byte[HEADER_LENGTH];
+            while (!this.closed) {
+                try {
+                    in.readFully(header);
+                } catch (final EOFException e) {
+                    return;
+                }
+                final byte[] content = new byte[RTalk.getInt(header, 4)];
+                in.readFully(content);
+
+                out.write(handle(RTalk.getInt(header, 0), content, session));
+                out.flush();
+            }
+        } catch (final IOException e) {
+            if (!this.closed) {
+                logger.warn("Connection closed unexpectedly.", e);
+            }
+        } finally {
+            this.sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Handles a command.
+     *
+     * @param command The command.
+     * @param content The parameters of the command.
+     * @param session The state of the connection.
+     * @return the response to send to the client.
+     */
+    private byte[] handle(final int command, final byte[] content, final Session session) {
+        if (command == CMD_LOGIN) {
+            session.loggedIn = session.credentials == null || session.credentials.equals(readString(content, 0));
+            return session.loggedIn
+                    ? response(RESP_OK, new byte[0])
+                    : response(RESP_ERR | RTalk.ERR_auth_failed << 24, new byte[0]);
+        }
+        if (!session.loggedIn) {
+            return response(RESP_ERR | RTalk.ERR_auth_failed << 24, new byte[0]);
+        }
+
+        final Map<String, REXP> workspace = session.workspace;
+        try {
+            switch (command) {
+                case RTalk.CMD_voidEval:
+                    this.evaluator.evaluate(readString(content, 0), workspace);
+                    return response(RESP_OK, new byte[0]);
+
+                case RTalk.CMD_eval:
+                    final REXP result = this.evaluator.evaluate(readString(content, 0), workspace);
+                    this.evalCount.incrementAndGet();
+                    simulateLatency();
+                    return response(RESP_OK, encode(result));
+
+                case RTalk.CMD_setSEXP:
+                case RTalk.CMD_assignSEXP:
+                    final int valueOffset = nextParameter(content, 0);
+                    final REXPFactory factory = new REXPFactory();
+                    factory.parseREXP(content, valueOffset + headerLength(content, valueOffset));
+                    workspace.put(readString(content, 0), factory.getREXP());
+                    return response(RESP_OK, new byte[0]);
+
+                default:
+                    return response(RESP_ERR | RTalk.ERR_unsupported_cmd << 24, new byte[0]);
+            }
+        } catch (final REXPMismatchException | RuntimeException e) {
+            logger.debug("Error found during the evaluation of command {}.", command, e);
+            return response(RESP_ERR | RTalk.ERR_Rerror << 24, new byte[0]);
+        }
+    }
+
+    /**
+     * Waits for the configured latency.
+     */
+    private void simulateLatency() {
+        final long deadline = System.nanoTime() + this.latencyNanos;
+        long remaining = this.latencyNanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Reads a string parameter.
+     *
+     * @param content The parameters of a command.
+     * @param offset  The offset of the parameter.
+     * @return the string, without the terminating null character.
+     */
+    private static String readString(final byte[] content, final int offset) {
+        final int start = offset + headerLength(content, offset);
+        final int end = start + RTalk.getLen(content, offset);
+        int length = 0;
+        while (start + length < end && content[start + length] != 0) {
+            length++;
+        }
+        return new String(content, start, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the length of the header of a parameter, which is longer for large parameters.
+     *
+     * @param content The parameters of a command.
+     * @param offset  The offset of the parameter.
+     * @return the length of the header.
+     */
+    private static int headerLength(final byte[] content, final int offset) {
+        return (content[offset] & RTalk.DT_LARGE) != 0 ? 8 : 4;
+    }
+
+    /**
+     * Gets the offset of the parameter that follows another one.
+     *
+     * @param content The parameters of a command.
+     * @param offset  The offset of the parameter.
+     * @return the offset of the next parameter.
+     */
+    private static int nextParameter(final byte[] content, final int offset) {
+        return offset + headerLength(content, offset) + RTalk.getLen(content, offset);
+    }
+
+    /**
+     * Encodes an R object as a {@link RTalk#DT_SEXP} parameter.
+     *
+     * @param rexp The R object.
+     * @return the parameter.
+     * @throws REXPMismatchException If the object cannot be encoded.
+     */
+    private static byte[] encode(final REXP rexp) throws REXPMismatchException {
+        final REXPFactory factory = new REXPFactory(rexp);
+        final int length = factory.getBinaryLength();
+        final int headerLength = length > 0xfffff0 ? 8 : 4;
+        final byte[] parameter = new byte[headerLength + length];
+        RTalk.setHdr(RTalk.DT_SEXP, length, parameter, 0);
+        factory.getBinaryRepresentation(parameter, headerLength);
+        return parameter;
+    }
+
+    /**
+     * Creates a response message.
+     *
+     * @param response The response code.
+     * @param content  The content of the response.
+     * @return the message.
+     */
+    private static byte[] response(final int response, final byte[] content) {
+        final byte[] message = new byte[HEADER_LENGTH + content.length];
+        RTalk.setInt(response, message, 0);
+        RTalk.setInt(content.length, message, 4);
+        System.arraycopy(content, 0, message, HEADER_LENGTH, content.length);
+        return message;
+    }
+
+    /**
+     * The state of a connection.
+     */
+    private static final class Session {
+
+        /**
+         * The objects assigned in the workspace of the connection.
+         */
+        private final Map<String, REXP> workspace = new HashMap<>();
+
+        /**
+         * The credentials required to log in, or {@code null} if no login is required.
+         */
+        private final String credentials;
+
+        /**
+         * Whether the client can send commands.
+         */
+        private boolean loggedIn;
+
+        /**
+         * Constructor.
+         *
+         * @param credentials     The credentials required to log in, or {@code null} if no login is required.
+         * @param parentWorkspace The workspace inherited by the connection.
+         */
+        private Session(final String credentials, final Map<String, REXP> parentWorkspace) {
+            this.credentials = credentials;
+            this.loggedIn = credentials == null;
+            this.workspace.putAll(parentWorkspace);
+        }
+    }
+
+    /**
+     * Closes a resource, ignoring any error.
+     *
+     * @param closeable The resource to close.
+     */
+    private static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            logger.trace("Error closing {}.", closeable, e);
+        }
+    }
+}
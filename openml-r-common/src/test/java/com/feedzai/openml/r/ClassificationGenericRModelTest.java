@@ -0,0 +1,631 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.feedzai.openml.data.schema.NumericValueSchema;
+import com.feedzai.openml.mocks.MockInstance;
+import com.feedzai.openml.provider.exception.ModelLoadingException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Test;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the {@link ClassificationGenericRModel} against a {@link RserveStandIn}, i.e. without R.
+ *
+ * @since 0.5.0
+ */
+public class ClassificationGenericRModelTest {
+
+    /**
+     * Schema with two numeric fields and a categorical target.
+     */
+    private static final DatasetSchema SCHEMA = new DatasetSchema(
+            2,
+            ImmutableList.of(
+                    new FieldSchema("amount", 0, new NumericValueSchema(false)),
+                    new FieldSchema("age", 1, new NumericValueSchema(false)),
+                    new FieldSchema("fraud", 2, new CategoricalValueSchema(false, ImmutableSet.of("yes", "no")))
+            )
+    );
+
+    /**
+     * The class distribution returned by the stand-in for every instance, in the order of the target values.
+     */
+    private static final double[] CLASS_DISTRIBUTION = {0.3, 0.7};
+
+    /**
+     * The instances to evaluate.
+     */
+    private static final List<Instance> INSTANCES = ImmutableList.of(
+            new MockInstance(new double[]{10.5, 30, 0}),
+            new MockInstance(new double[]{3.0, 42, 0}),
+            new MockInstance(new double[]{7.2, 25, 0})
+    );
+
+    /**
+     * The stand-in of the test, if any.
+     */
+    private RserveStandIn standIn;
+
+    /**
+     * Closes the stand-in.
+     */
+    @After
+    public void tearDown() {
+        if (this.standIn != null) {
+            this.standIn.close();
+        }
+    }
+
+    /**
+     * Verifies that the instances are evaluated with every {@link RInstanceEncoder.TransferMode}, both when the script
+     * defines the functions that evaluate numeric matrices and when it doesn't.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void scoresInstancesWithEveryTransferMode() throws Exception {
+        for (final boolean definesMatrixFunctions : new boolean[]{false, true}) {
+            this.standIn = new RserveStandIn(newEvaluator(definesMatrixFunctions));
+            for (final RInstanceEncoder.TransferMode transferMode : RInstanceEncoder.TransferMode.values()) {
+                try (final ClassificationGenericRModel model = createModel(
+                        2,
+                        ImmutableMap.of(RLoadParameter.TRANSFER_MODE.getName(), transferMode.name())
+                )) {
+                    assertThat(model.getClassDistribution(INSTANCES.get(0))).containsExactly(CLASS_DISTRIBUTION);
+                    assertThat(model.classify(INSTANCES.get(0))).isEqualTo(1);
+                    assertThat(model.classify(INSTANCES)).containsExactly(1, 1, 1);
+                    assertThat(model.getClassDistributions(INSTANCES))
+                            .containsExactly(CLASS_DISTRIBUTION, CLASS_DISTRIBUTION, CLASS_DISTRIBUTION);
+                    assertThat(model.score(INSTANCES))
+                            .containsOnly(new ClassificationScore(1, CLASS_DISTRIBUTION));
+                }
+            }
+            this.standIn.close();
+        }
+    }
+
+    /**
+     * Verifies that a batch of instances is evaluated in a single round trip to Rserve.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void evaluatesBatchInSingleRoundTrip() throws Exception {
+        this.standIn = new RserveStandIn(newEvaluator(false));
+        try (final ClassificationGenericRModel model = createModel(1, ImmutableMap.of())) {
+            final long evalCount = this.standIn.getEvalCount();
+
+            model.score(INSTANCES);
+
+            assertThat(this.standIn.getEvalCount()).isEqualTo(evalCount + 1);
+        }
+    }
+
+    /**
+     * Verifies that a large batch is split in chunks that are evaluated in parallel by the connections of the pool, and
+     * whose results are gathered in the order of the instances.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void evaluatesChunksInParallel() throws Exception {
+        final List<Instance> instances = ImmutableList.<Instance>builder()
+                .addAll(INSTANCES)
+                .addAll(INSTANCES)
+                .build();
+        final CyclicBarrier allChunks = new CyclicBarrier(3);
+        final ProviderStandInEvaluator evaluator = newEvaluator(false);
+        this.standIn = new RserveStandIn((expression, workspace) -> {
+            if (expression.trim().endsWith("Call()")) {
+                try {
+                    // Only returns if the three chunks are evaluated at the same time.
+                    allChunks.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException | BrokenBarrierException | TimeoutException e) {
+                    throw new IllegalArgumentException("The chunks were not evaluated in parallel.", e);
+                }
+            }
+            return evaluator.evaluate(expression, workspace);
+        });
+        try (final ClassificationGenericRModel model = createModel(
+                3,
+                ImmutableMap.of(RLoadParameter.PARALLEL_CHUNK_SIZE.getName(), "2")
+        )) {
+            final RecordingRModelMetrics metrics = new RecordingRModelMetrics();
+            model.setMetrics(metrics);
+
+            assertThat(model.getClassDistributions(instances)).hasSize(6).containsOnly(CLASS_DISTRIBUTION);
+            assertThat(model.classify(instances)).containsExactly(1, 1, 1, 1, 1, 1);
+            assertThat(model.score(instances)).hasSize(6).containsOnly(new ClassificationScore(1, CLASS_DISTRIBUTION));
+
+            assertThat(metrics.getEvaluationCount()).isEqualTo(3 * 3);
+            assertThat(metrics.getInstanceCount()).isEqualTo(3 * 6);
+        }
+    }
+
+    /**
+     * Verifies that the warm-up evaluates a single instance and a batch in every connection of the pool, without
+     * recording them in the metrics.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void warmsUpEveryConnection() throws Exception {
+        this.standIn = new RserveStandIn(newEvaluator(false));
+        try (final ClassificationGenericRModel model = createModel(3, ImmutableMap.of())) {
+            final RecordingRModelMetrics metrics = new RecordingRModelMetrics();
+            model.setMetrics(metrics);
+            final long evalCount = this.standIn.getEvalCount();
+
+            model.warmUp(INSTANCES);
+
+            assertThat(this.standIn.getEvalCount()).isEqualTo(evalCount + 3 * 2);
+            assertThat(metrics.getEvaluationCount()).isZero();
+        }
+    }
+
+    /**
+     * Verifies that the functions used to score are byte-compiled in every connection, and that each evaluation only
+     * sends the call of a byte-compiled function without arguments.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void evaluatesCompiledCalls() throws Exception {
+        final List<String> expressions = new CopyOnWriteArrayList<>();
+        final ProviderStandInEvaluator evaluator = newEvaluator(false);
+        this.standIn = new RserveStandIn((expression, workspace) -> {
+            expressions.add(expression.trim());
+            return evaluator.evaluate(expression, workspace);
+        });
+        try (final ClassificationGenericRModel model = createModel(2, ImmutableMap.of())) {
+            assertThat(expressions.stream().filter(expression -> expression.contains("compiler::cmpfun")))
+                    .hasSize(2)
+                    .allMatch(expression -> expression.contains("getClassDistribution <- compiler::cmpfun("));
+            expressions.clear();
+
+            model.getClassDistribution(INSTANCES.get(0));
+            model.score(INSTANCES);
+
+            assertThat(expressions).containsExactly(".classDistributionCall()", ".scoreCall()");
+        }
+    }
+
+    /**
+     * Verifies that the duration of each phase of the evaluations is recorded in the metrics hook.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void recordsMetricsOfEachPhase() throws Exception {
+        this.standIn = new RserveStandIn(newEvaluator(false));
+        try (final ClassificationGenericRModel model = createModel(1, ImmutableMap.of())) {
+            final RecordingRModelMetrics metrics = new RecordingRModelMetrics();
+            model.setMetrics(metrics);
+
+            model.score(INSTANCES);
+            model.getClassDistribution(INSTANCES.get(0));
+
+            assertThat(metrics.getEvaluationCount()).isEqualTo(2);
+            assertThat(metrics.getInstanceCount()).isEqualTo(INSTANCES.size() + 1);
+            assertThat(metrics.getBytesSent()).isPositive();
+            assertThat(metrics.getErrorCount()).isZero();
+            for (final RModelMetrics.Phase phase : RModelMetrics.Phase.values()) {
+                assertThat(metrics.getHistogram(phase).getCount()).as(phase.name()).isEqualTo(2);
+            }
+        }
+    }
+
+    /**
+     * Verifies that the errors found in R are reported to the caller and counted in the metrics.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void reportsEvaluationErrors() throws Exception {
+        final ProviderStandInEvaluator evaluator = newEvaluator(false);
+        this.standIn = new RserveStandIn((expression, workspace) -> {
+            if (expression.trim().endsWith("Call()")) {
+                throw new IllegalArgumentException("Unsupported expression: " + expression);
+            }
+            return evaluator.evaluate(expression, workspace);
+        });
+        try (final ClassificationGenericRModel model = createModel(1, ImmutableMap.of())) {
+            final RecordingRModelMetrics metrics = new RecordingRModelMetrics();
+            model.setMetrics(metrics);
+
+            assertThatThrownBy(() -> model.getClassDistribution(INSTANCES.get(0)))
+                    .isInstanceOf(RuntimeException.class)
+                    .hasMessage("Error during instance evaluation.")
+                    .hasCauseInstanceOf(RserveException.class);
+            assertThat(metrics.getErrorCount(RModelMetrics.Phase.EVAL)).isEqualTo(1);
+            assertThat(metrics.getEvaluationCount()).isZero();
+        }
+    }
+
+    /**
+     * Verifies that an evaluation that exceeds the deadline fails fast when there is no fallback, and that the
+     * abandoned connection is replaced by a new one.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void replacesConnectionsThatExceedTheDeadline() throws Exception {
+        final AtomicBoolean slow = new AtomicBoolean(true);
+        this.standIn = new RserveStandIn(newSlowEvaluator(slow));
+        try (final ClassificationGenericRModel model = createModel(
+                1,
+                ImmutableMap.of(RLoadParameter.EVALUATION_TIMEOUT_MILLIS.getName(), "200")
+        )) {
+            model.setConnectionFactory(this::connect);
+            final RecordingRModelMetrics metrics = new RecordingRModelMetrics();
+            model.setMetrics(metrics);
+            final long connectionCount = this.standIn.getConnectionCount();
+
+            assertThatThrownBy(() -> model.getClassDistribution(INSTANCES.get(0)))
+                    .isInstanceOfSatisfying(
+                            EvaluationTimeoutException.class,
+                            e -> assertThat(e.getPhase()).isEqualTo(RModelMetrics.Phase.EVAL)
+                    );
+            assertThat(metrics.getTimeoutCount(RModelMetrics.Phase.EVAL)).isEqualTo(1);
+            assertThat(metrics.getErrorCount()).isZero();
+
+            slow.set(false);
+            assertThat(awaitClassDistribution(model, CLASS_DISTRIBUTION)).isTrue();
+            assertThat(this.standIn.getConnectionCount()).isEqualTo(connectionCount + 1);
+        }
+    }
+
+    /**
+     * Verifies that the fallback class distribution is returned when an evaluation exceeds the deadline, and that it is
+     * not cached.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void returnsFallbackOnTimeout() throws Exception {
+        final AtomicBoolean slow = new AtomicBoolean(true);
+        this.standIn = new RserveStandIn(newSlowEvaluator(slow));
+        try (final ClassificationGenericRModel model = createModel(1, ImmutableMap.of(
+                RLoadParameter.EVALUATION_TIMEOUT_MILLIS.getName(), "200",
+                RLoadParameter.FALLBACK_CLASS_DISTRIBUTION.getName(), "0.9, 0.1",
+                RLoadParameter.PREDICTION_CACHE_SIZE.getName(), "10"
+        ))) {
+            model.setConnectionFactory(this::connect);
+            final double[] fallback = {0.9, 0.1};
+
+            assertThat(model.getClassDistribution(INSTANCES.get(0))).containsExactly(fallback);
+            assertThat(model.getClassDistributionAsync(INSTANCES.get(1)).get()).containsExactly(fallback);
+            assertThat(model.classify(INSTANCES)).containsExactly(0, 0, 0);
+            assertThat(model.score(INSTANCES)).containsOnly(new ClassificationScore(0, fallback));
+
+            slow.set(false);
+            assertThat(awaitClassDistribution(model, CLASS_DISTRIBUTION)).isTrue();
+            assertThat(model.getClassDistributions(INSTANCES))
+                    .containsExactly(CLASS_DISTRIBUTION, CLASS_DISTRIBUTION, CLASS_DISTRIBUTION);
+        }
+    }
+
+    /**
+     * Verifies that a connection that breaks during an evaluation is replaced in the background, so that the following
+     * evaluations succeed without reloading the model.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void replacesBrokenConnections() throws Exception {
+        this.standIn = new RserveStandIn(newEvaluator(false));
+        try (final ClassificationGenericRModel model = createModel(
+                1,
+                ImmutableMap.of(RLoadParameter.HEALTH_CHECK_INTERVAL_MILLIS.getName(), "0")
+        )) {
+            model.setConnectionFactory(this::connect);
+            final long connectionCount = this.standIn.getConnectionCount();
+
+            this.standIn.dropConnections();
+
+            assertThatThrownBy(() -> model.getClassDistribution(INSTANCES.get(0)))
+                    .hasCauseInstanceOf(RserveException.class);
+            assertThat(awaitClassDistribution(model, CLASS_DISTRIBUTION)).isTrue();
+            assertThat(this.standIn.getConnectionCount()).isEqualTo(connectionCount + 1);
+        }
+    }
+
+    /**
+     * Verifies that a connection that replaces a broken one is warmed up with the instances of the
+     * {@link ClassificationGenericRModel#warmUp(List) warm-up} before it is used to score.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void warmsUpReplacedConnections() throws Exception {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        final ProviderStandInEvaluator evaluator = newEvaluator(false);
+        this.standIn = new RserveStandIn((expression, workspace) -> {
+            if (expression.trim().endsWith("Call()")) {
+                calls.add(expression.trim());
+            }
+            return evaluator.evaluate(expression, workspace);
+        });
+        try (final ClassificationGenericRModel model = createModel(
+                1,
+                ImmutableMap.of(RLoadParameter.HEALTH_CHECK_INTERVAL_MILLIS.getName(), "0")
+        )) {
+            model.setConnectionFactory(this::connect);
+            model.warmUp(INSTANCES);
+
+            this.standIn.dropConnections();
+            calls.clear();
+
+            assertThatThrownBy(() -> model.getClassDistribution(INSTANCES.get(0)))
+                    .hasCauseInstanceOf(RserveException.class);
+            assertThat(awaitClassDistribution(model, CLASS_DISTRIBUTION)).isTrue();
+            assertThat(calls).containsExactly(".classDistributionCall()", ".scoreCall()", ".classDistributionCall()");
+        }
+    }
+
+    /**
+     * Verifies that a connection that replaces a broken one in {@link RInstanceEncoder.TransferMode#COLUMNAR columnar}
+     * mode receives the factor levels and the function that assembles the instances before it scores a batch.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void preparesReplacedConnectionsForColumnarInstances() throws Exception {
+        final Set<Map<String, REXP>> preparedWorkspaces =
+                Collections.newSetFromMap(Collections.synchronizedMap(new IdentityHashMap<>()));
+        final List<Boolean> callsInPreparedWorkspaces = new CopyOnWriteArrayList<>();
+        final ProviderStandInEvaluator evaluator = newEvaluator(false);
+        this.standIn = new RserveStandIn((expression, workspace) -> {
+            if (expression.contains(".factorLevels <- list(c('no', 'yes'))")
+                    && expression.contains(".assembleInstance <- function(")) {
+                preparedWorkspaces.add(workspace);
+            } else if (expression.trim().endsWith("Call()")) {
+                callsInPreparedWorkspaces.add(preparedWorkspaces.contains(workspace));
+            }
+            return evaluator.evaluate(expression, workspace);
+        });
+        try (final ClassificationGenericRModel model = createModel(1, ImmutableMap.of(
+                RLoadParameter.TRANSFER_MODE.getName(), RInstanceEncoder.TransferMode.COLUMNAR.name(),
+                RLoadParameter.HEALTH_CHECK_INTERVAL_MILLIS.getName(), "0"
+        ))) {
+            model.setConnectionFactory(this::connect);
+            this.standIn.dropConnections();
+
+            assertThatThrownBy(() -> model.getClassDistributions(INSTANCES))
+                    .hasCauseInstanceOf(RserveException.class);
+            assertThat(awaitClassDistribution(model, CLASS_DISTRIBUTION)).isTrue();
+            callsInPreparedWorkspaces.clear();
+
+            assertThat(model.getClassDistributions(INSTANCES))
+                    .containsExactly(CLASS_DISTRIBUTION, CLASS_DISTRIBUTION, CLASS_DISTRIBUTION);
+            assertThat(preparedWorkspaces).hasSize(2);
+            assertThat(callsInPreparedWorkspaces).containsExactly(true);
+        }
+    }
+
+    /**
+     * Verifies that the health checks replace the broken connections before they are used to evaluate instances.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void healthChecksReplaceBrokenConnections() throws Exception {
+        this.standIn = new RserveStandIn(newEvaluator(false));
+        try (final ClassificationGenericRModel model = createModel(
+                2,
+                ImmutableMap.of(RLoadParameter.HEALTH_CHECK_INTERVAL_MILLIS.getName(), "20")
+        )) {
+            model.setConnectionFactory(this::connect);
+            final RecordingRModelMetrics metrics = new RecordingRModelMetrics();
+            model.setMetrics(metrics);
+            final long connectionCount = this.standIn.getConnectionCount();
+
+            this.standIn.dropConnections();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (this.standIn.getConnectionCount() < connectionCount + 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(model.score(INSTANCES)).containsOnly(new ClassificationScore(1, CLASS_DISTRIBUTION));
+            assertThat(model.getClassDistributions(INSTANCES))
+                    .containsExactly(CLASS_DISTRIBUTION, CLASS_DISTRIBUTION, CLASS_DISTRIBUTION);
+            assertThat(metrics.getErrorCount()).isZero();
+            assertThat(this.standIn.getConnectionCount()).isEqualTo(connectionCount + 2);
+        }
+    }
+
+    /**
+     * Verifies that, without a {@link RConnectionFactory}, a broken connection is kept in the pool, so that every
+     * evaluation fails as it did before connections were replaced, and that the idle connections are not checked.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void keepsBrokenConnectionsWithoutFactory() throws Exception {
+        this.standIn = new RserveStandIn(newEvaluator(false));
+        try (final ClassificationGenericRModel model = createModel(
+                1,
+                ImmutableMap.of(RLoadParameter.HEALTH_CHECK_INTERVAL_MILLIS.getName(), "20")
+        )) {
+            final long evalCount = this.standIn.getEvalCount();
+            Thread.sleep(200);
+            assertThat(this.standIn.getEvalCount()).isEqualTo(evalCount);
+
+            this.standIn.dropConnections();
+
+            for (int i = 0; i < 3; i++) {
+                assertThatThrownBy(() -> model.getClassDistribution(INSTANCES.get(0)))
+                        .hasCauseInstanceOf(RserveException.class);
+            }
+            assertThat(this.standIn.getConnectionCount()).isEqualTo(1);
+        }
+    }
+
+    /**
+     * Verifies that, without a deadline, the evaluations don't wait for Rserve to be reachable again when all the
+     * connections are being replaced, returning the fallback or failing in the connection wait phase immediately.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void doesNotWaitForConnectionsWhileRserveIsDown() throws Exception {
+        this.standIn = new RserveStandIn(newEvaluator(false));
+        for (final String fallback : new String[]{"0.9, 0.1", ""}) {
+            try (final ClassificationGenericRModel model = createModel(1, ImmutableMap.of(
+                    RLoadParameter.HEALTH_CHECK_INTERVAL_MILLIS.getName(), "0",
+                    RLoadParameter.FALLBACK_CLASS_DISTRIBUTION.getName(), fallback
+            ))) {
+                model.setConnectionFactory(() -> {
+                    throw new ModelLoadingException("Rserve is down.");
+                });
+                this.standIn.dropConnections();
+
+                assertThatThrownBy(() -> model.getClassDistribution(INSTANCES.get(0)))
+                        .hasCauseInstanceOf(RserveException.class);
+                final CompletableFuture<double[]> classDistribution =
+                        CompletableFuture.supplyAsync(() -> model.getClassDistribution(INSTANCES.get(1)));
+                if (fallback.isEmpty()) {
+                    assertThatThrownBy(() -> classDistribution.get(5, TimeUnit.SECONDS))
+                            .hasCauseInstanceOf(EvaluationTimeoutException.class)
+                            .satisfies(e -> assertThat(((EvaluationTimeoutException) e.getCause()).getPhase())
+                                    .isEqualTo(RModelMetrics.Phase.CONNECTION_WAIT));
+                } else {
+                    assertThat(classDistribution.get(5, TimeUnit.SECONDS)).containsExactly(0.9, 0.1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates an evaluator that returns {@link #CLASS_DISTRIBUTION} for every instance, taking longer than the
+     * deadlines of the tests to evaluate the instances while {@code slow} is set.
+     *
+     * @param slow Whether the evaluations are slow.
+     * @return the evaluator.
+     */
+    private static RserveStandIn.Evaluator newSlowEvaluator(final AtomicBoolean slow) {
+        final ProviderStandInEvaluator evaluator = newEvaluator(false);
+        return (expression, workspace) -> {
+            if (slow.get() && expression.trim().endsWith("Call()")) {
+                Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
+            }
+            return evaluator.evaluate(expression, workspace);
+        };
+    }
+
+    /**
+     * Waits until the model returns the expected class distribution for the first instance, e.g. after its
+     * connections are replaced.
+     *
+     * @param model             The model.
+     * @param classDistribution The expected class distribution.
+     * @return {@code true} if the model returned the expected class distribution in time, {@code false} otherwise.
+     */
+    private static boolean awaitClassDistribution(final ClassificationGenericRModel model,
+                                                  final double[] classDistribution) {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            try {
+                if (Arrays.equals(model.getClassDistribution(INSTANCES.get(0)), classDistribution)) {
+                    return true;
+                }
+            } catch (final EvaluationTimeoutException e) {
+                // The connection is still being replaced.
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Opens a new connection to the stand-in, as a {@link RConnectionFactory}.
+     *
+     * @return the connection.
+     * @throws ModelLoadingException If the connection cannot be established.
+     */
+    private RConnection connect() throws ModelLoadingException {
+        try {
+            return this.standIn.connect();
+        } catch (final RserveException e) {
+            throw new ModelLoadingException("Could not connect to the stand-in.", e);
+        }
+    }
+
+    /**
+     * Creates an evaluator that returns {@link #CLASS_DISTRIBUTION} for every instance.
+     *
+     * @param definesMatrixFunctions Whether the script defines the functions that evaluate numeric matrices.
+     * @return the evaluator.
+     */
+    private static ProviderStandInEvaluator newEvaluator(final boolean definesMatrixFunctions) {
+        return new ProviderStandInEvaluator(ImmutableList.of("no", "yes"), CLASS_DISTRIBUTION, definesMatrixFunctions);
+    }
+
+    /**
+     * Creates a model with connections to the stand-in.
+     *
+     * @param poolSize The number of connections.
+     * @param params   The parameters of the model.
+     * @return the model.
+     * @throws IOException If the connections cannot be established.
+     */
+    private ClassificationGenericRModel createModel(final int poolSize,
+                                                    final Map<String, String> params) throws IOException {
+        final List<RConnection> connections = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            try {
+                connections.add(this.standIn.connect());
+            } catch (final RserveException e) {
+                throw new IOException("Could not connect to the stand-in.", e);
+            }
+        }
+        return new ClassificationGenericRModel(new RConnectionPool(connections), SCHEMA, params);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.feedzai.openml.data.schema.NumericValueSchema;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the {@link DatasetScorer} against a {@link RserveStandIn stand-in}, i.e. without R.
+ *
+ * @since 0.5.0
+ */
+public class DatasetScorerTest {
+
+    /**
+     * Schema with a numeric and a categorical field and a categorical target.
+     */
+    private static final DatasetSchema SCHEMA = new DatasetSchema(
+            2,
+            ImmutableList.of(
+                    new FieldSchema("amount", 0, new NumericValueSchema(false)),
+                    new FieldSchema("country", 1, new CategoricalValueSchema(false, ImmutableSet.of("PT", "US"))),
+                    new FieldSchema("fraud", 2, new CategoricalValueSchema(false, ImmutableSet.of("yes", "no")))
+            )
+    );
+
+    /**
+     * The number of calls of the scoring functions evaluated by the stand-in.
+     */
+    private final AtomicInteger scoringCalls = new AtomicInteger();
+
+    /**
+     * The stand-in of Rserve.
+     */
+    private RserveStandIn standIn;
+
+    /**
+     * The model that scores the rows.
+     */
+    private ClassificationGenericRModel model;
+
+    /**
+     * Starts the stand-in and creates the model.
+     *
+     * @throws IOException If the stand-in cannot be started.
+     * @throws RserveException If the model cannot connect to the stand-in.
+     */
+    @Before
+    public void setUp() throws IOException, RserveException {
+        final ProviderStandInEvaluator evaluator = new ProviderStandInEvaluator(
+                ImmutableList.of("no", "yes"),
+                new double[]{0.3, 0.7},
+                false
+        );
+        this.standIn = new RserveStandIn((expression, workspace) -> {
+            if (expression.trim().endsWith("Call()")) {
+                this.scoringCalls.incrementAndGet();
+            }
+            return evaluator.evaluate(expression, workspace);
+        });
+        this.model = new ClassificationGenericRModel(this.standIn.connect(), SCHEMA);
+    }
+
+    /**
+     * Closes the model and the stand-in.
+     */
+    @After
+    public void tearDown() {
+        this.model.close();
+        this.standIn.close();
+    }
+
+    /**
+     * Verifies that the rows are scored in chunks and written in order, with the columns matched by name.
+     *
+     * @throws IOException If the dataset cannot be read.
+     */
+    @Test
+    public void scoresDatasetInChunks() throws IOException {
+        final String dataset = "country,id,amount\n"
+                + "PT,1,10.5\n"
+                + "\"US\",2,3\n"
+                + "\n"
+                + "PT,3,\n"
+                + "US,4,1e3\n"
+                + "US,5,0\n";
+        final StringWriter output = new StringWriter();
+
+        final long rows = new DatasetScorer(this.model, 2, 2).score(new StringReader(dataset), output);
+
+        assertThat(rows).isEqualTo(5);
+        assertThat(this.scoringCalls.get()).isEqualTo(3);
+        final String line = "yes,0.3,0.7";
+        assertThat(output.toString().split(System.lineSeparator()))
+                .containsExactly("prediction,no,yes", line, line, line, line, line);
+    }
+
+    /**
+     * Verifies that the predicted class is left empty when the model predicts a class that is not a target value of
+     * the schema, without stopping the scoring of the dataset.
+     *
+     * @throws Exception If the stand-in cannot be used.
+     */
+    @Test
+    public void leavesUnknownPredictedClassesEmpty() throws Exception {
+        try (final RserveStandIn unknownClassStandIn = new RserveStandIn(new ProviderStandInEvaluator(
+                ImmutableList.of("no", "maybe"),
+                new double[]{0.3, 0.7},
+                false
+        ));
+             final ClassificationGenericRModel unknownClassModel = new ClassificationGenericRModel(
+                     unknownClassStandIn.connect(),
+                     SCHEMA
+             )) {
+            final StringWriter output = new StringWriter();
+
+            final long rows = new DatasetScorer(unknownClassModel, 2, 2)
+                    .score(new StringReader("amount,country\n1,PT\n2,US\n"), output);
+
+            assertThat(rows).isEqualTo(2);
+            assertThat(output.toString().split(System.lineSeparator()))
+                    .containsExactly("prediction,no,yes", ",0.3,0.7", ",0.3,0.7");
+        }
+    }
+
+    /**
+     * Verifies that the rows that don't match the schema are reported with their line.
+     */
+    @Test
+    public void reportsInvalidRows() {
+        final DatasetScorer scorer = new DatasetScorer(this.model, 2, 2);
+
+        assertThatThrownBy(() -> scorer.score(new StringReader("amount\n1\n"), new StringWriter()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("The dataset doesn't have a column for the field country.");
+        assertThatThrownBy(() -> scorer.score(new StringReader("amount,country\n1,PT\n2,ES\n"), new StringWriter()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Line 3: [ES] is not a nominal value of the column 2.");
+        assertThatThrownBy(() -> scorer.score(new StringReader("amount,country\nabc,PT\n"), new StringWriter()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Line 2: [abc] is not a number in the column 1.");
+        assertThatThrownBy(() -> scorer.score(new StringReader("amount,country\n1,\"PT\n"), new StringWriter()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Line 2: The line has a quoted value that is not closed.");
+    }
+}
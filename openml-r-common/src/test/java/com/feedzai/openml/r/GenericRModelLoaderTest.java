@@ -0,0 +1,392 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.feedzai.openml.data.schema.NumericValueSchema;
+import com.feedzai.openml.mocks.MockInstance;
+import com.feedzai.openml.provider.exception.ModelLoadingException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.net.HostAndPort;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the {@link GenericRModelLoader} against several {@link RserveStandIn}, i.e. without R.
+ *
+ * @since 0.5.0
+ */
+public class GenericRModelLoaderTest {
+
+    /**
+     * Schema with a numeric field and a categorical target.
+     */
+    private static final DatasetSchema SCHEMA = new DatasetSchema(
+            1,
+            ImmutableList.of(
+                    new FieldSchema("amount", 0, new NumericValueSchema(false)),
+                    new FieldSchema("fraud", 1, new CategoricalValueSchema(false, ImmutableSet.of("yes", "no")))
+            )
+    );
+
+    /**
+     * Folder where the model is created.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The first stand-in.
+     */
+    private RserveStandIn first;
+
+    /**
+     * The second stand-in.
+     */
+    private RserveStandIn second;
+
+    /**
+     * The directory of the model, with an empty script since the stand-ins don't read it.
+     */
+    private Path modelPath;
+
+    /**
+     * Starts the stand-ins and creates the model.
+     *
+     * @throws IOException If the stand-ins cannot be started or the model cannot be created.
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.first = new RserveStandIn(newEvaluator());
+        this.second = new RserveStandIn(newEvaluator());
+        this.modelPath = this.temporaryFolder.newFolder("model").toPath();
+        Files.createDirectories(this.modelPath.resolve("scripts"));
+        Files.createFile(this.modelPath.resolve("scripts").resolve("classifier.R"));
+    }
+
+    /**
+     * Closes the stand-ins.
+     */
+    @After
+    public void tearDown() {
+        this.first.close();
+        this.second.close();
+    }
+
+    /**
+     * Verifies that the connections of the pool are distributed among all the endpoints.
+     *
+     * @throws Exception If the model cannot be loaded.
+     */
+    @Test
+    public void distributesConnectionsAmongEndpoints() throws Exception {
+        final Map<String, String> params = ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), endpoint(this.first) + ", " + endpoint(this.second),
+                RLoadParameter.CONNECTION_POOL_SIZE.getName(), "4"
+        );
+
+        try (final ClassificationGenericRModel model = new GenericRModelLoader(params)
+                .loadModel(this.modelPath, SCHEMA)) {
+            assertThat(this.first.getConnectionCount()).isEqualTo(2);
+            assertThat(this.second.getConnectionCount()).isEqualTo(2);
+            assertThat(model.getLoadReport().get().getNumberOfConnections()).isEqualTo(4);
+        }
+    }
+
+    /**
+     * Verifies that the connections are created in the available endpoints when one of them is down.
+     *
+     * @throws Exception If the model cannot be loaded.
+     */
+    @Test
+    public void failsOverToAvailableEndpoints() throws Exception {
+        final Map<String, String> params = ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), "127.0.0.1:" + freePort() + "," + endpoint(this.first),
+                RLoadParameter.CONNECTION_POOL_SIZE.getName(), "3"
+        );
+
+        try (final ClassificationGenericRModel model = new GenericRModelLoader(params)
+                .loadModel(this.modelPath, SCHEMA)) {
+            assertThat(this.first.getConnectionCount()).isEqualTo(3);
+        }
+    }
+
+    /**
+     * Verifies that the load fails when no endpoint is available.
+     *
+     * @throws Exception If no free port is found.
+     */
+    @Test
+    public void failsWhenNoEndpointIsAvailable() throws Exception {
+        final Map<String, String> params = ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), "127.0.0.1:" + freePort()
+        );
+
+        assertThatThrownBy(() -> new GenericRModelLoader(params).loadModel(this.modelPath, SCHEMA))
+                .isInstanceOf(ModelLoadingException.class)
+                .hasMessage("Could not connect to RServe");
+    }
+
+    /**
+     * Verifies that the configured credentials are used to log in the servers that require authentication.
+     *
+     * @throws Exception If the model cannot be loaded.
+     */
+    @Test
+    public void logsInServersThatRequireAuthentication() throws Exception {
+        this.first.requireLogin("openml", "secret");
+        final Map<String, String> params = ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), endpoint(this.first),
+                RLoadParameter.RSERVE_USER.getName(), "openml",
+                RLoadParameter.RSERVE_PASSWORD.getName(), "secret"
+        );
+
+        try (final ClassificationGenericRModel model = new GenericRModelLoader(params)
+                .loadModel(this.modelPath, SCHEMA)) {
+            assertThat(model.getClassDistribution(new MockInstance(new double[]{1, 0})))
+                    .containsExactly(0.3, 0.7);
+        }
+
+        assertThatThrownBy(() -> new GenericRModelLoader(ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), endpoint(this.first),
+                RLoadParameter.RSERVE_USER.getName(), "openml",
+                RLoadParameter.RSERVE_PASSWORD.getName(), "wrong"
+        )).loadModel(this.modelPath, SCHEMA))
+                .isInstanceOf(ModelLoadingException.class)
+                .hasMessageStartingWith("Could not log in RServe");
+
+        assertThatThrownBy(() -> new GenericRModelLoader(ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), endpoint(this.first)
+        )).loadModel(this.modelPath, SCHEMA))
+                .isInstanceOf(ModelLoadingException.class)
+                .hasMessageEndingWith("requires authentication but no user was configured.");
+    }
+
+    /**
+     * Verifies that the model is warmed up with synthetic instances in every connection before being returned.
+     *
+     * @throws Exception If the model cannot be loaded.
+     */
+    @Test
+    public void warmsUpModel() throws Exception {
+        final Map<String, String> params = ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), endpoint(this.first),
+                RLoadParameter.CONNECTION_POOL_SIZE.getName(), "2",
+                RLoadParameter.WARM_UP_INSTANCES.getName(), "16"
+        );
+
+        try (final ClassificationGenericRModel coldModel = new GenericRModelLoader(ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), endpoint(this.first),
+                RLoadParameter.CONNECTION_POOL_SIZE.getName(), "2"
+        )).loadModel(this.modelPath, SCHEMA)) {
+            assertThat(coldModel.getLoadReport().get().getDurations())
+                    .doesNotContainKey(ModelLoadReport.Stage.WARM_UP);
+        }
+        final long coldLoadEvalCount = this.first.getEvalCount();
+
+        try (final ClassificationGenericRModel model = new GenericRModelLoader(params)
+                .loadModel(this.modelPath, SCHEMA)) {
+            assertThat(model.getLoadReport().get().getDurations()).containsKey(ModelLoadReport.Stage.WARM_UP);
+            // a single instance and a batch in each connection, on top of the evaluations of a cold load
+            assertThat(this.first.getEvalCount() - coldLoadEvalCount).isEqualTo(coldLoadEvalCount + 2 * 2);
+        }
+    }
+
+    /**
+     * Verifies that the model is not loaded in each connection when the workspace built by
+     * {@link GenericRModelLoader#createWorkspaceScript} is shared by the server.
+     *
+     * @throws Exception If the model cannot be loaded.
+     */
+    @Test
+    public void usesSharedWorkspace() throws Exception {
+        final Map<String, String> params = ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), endpoint(this.first),
+                RLoadParameter.CONNECTION_POOL_SIZE.getName(), "2",
+                RLoadParameter.SHARED_WORKSPACE.getName(), "true"
+        );
+        final GenericRModelLoader loader = new GenericRModelLoader(params);
+
+        assertThatThrownBy(() -> loader.loadModel(this.modelPath, SCHEMA))
+                .isInstanceOf(ModelLoadingException.class)
+                .hasMessage("The model is not loaded in the shared R workspace.");
+
+        for (final String line : loader.createWorkspaceScript(this.modelPath).split(System.lineSeparator())) {
+            this.first.evaluateInParent(line);
+        }
+        try (final ClassificationGenericRModel model = loader.loadModel(this.modelPath, SCHEMA)) {
+            final ModelLoadReport report = model.getLoadReport().get();
+            assertThat(report.getNumberOfConnections()).isEqualTo(2);
+            assertThat(report.getDurations()).doesNotContainKeys(
+                    ModelLoadReport.Stage.LOAD_SCRIPT,
+                    ModelLoadReport.Stage.LOAD_MODEL
+            );
+            assertThat(model.getClassDistribution(new MockInstance(new double[]{1, 0}))).containsExactly(0.3, 0.7);
+        }
+    }
+
+    /**
+     * Verifies that a model that fails the validation after being created is closed, releasing its connections.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Test
+    public void closesModelThatFailsValidation() throws Exception {
+        final ProviderStandInEvaluator evaluator = newEvaluator();
+        try (final RserveStandIn standIn = new RserveStandIn((expression, workspace) -> {
+            if (expression.trim().endsWith("Call()")) {
+                throw new IllegalArgumentException("The model cannot score instances.");
+            }
+            return evaluator.evaluate(expression, workspace);
+        })) {
+            final Map<String, String> params = ImmutableMap.of(
+                    RLoadParameter.RSERVE_ENDPOINTS.getName(), endpoint(standIn),
+                    RLoadParameter.CONNECTION_POOL_SIZE.getName(), "2"
+            );
+
+            assertThatThrownBy(() -> new GenericRModelLoader(params).loadModel(this.modelPath, SCHEMA))
+                    .isInstanceOf(ModelLoadingException.class)
+                    .hasMessage("Model classification is not compatible with the given schema %s.", SCHEMA);
+
+            assertThat(standIn.getConnectionCount()).isEqualTo(2);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (standIn.getOpenConnectionCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(standIn.getOpenConnectionCount()).isZero();
+        }
+    }
+
+    /**
+     * Verifies that the endpoints are parsed with the default port and that invalid endpoints are reported.
+     */
+    @Test
+    public void parsesEndpoints() {
+        assertThat(GenericRModelLoader.parseEndpoints("localhost, 10.0.0.1:6312,"))
+                .containsExactly(HostAndPort.fromParts("localhost", 6311), HostAndPort.fromParts("10.0.0.1", 6312));
+
+        assertThat(new GenericRModelLoader().validateForLoad(
+                this.modelPath,
+                SCHEMA,
+                ImmutableMap.of(RLoadParameter.RSERVE_ENDPOINTS.getName(), "localhost:port")
+        )).hasSize(1);
+        assertThat(new GenericRModelLoader().validateForLoad(
+                this.modelPath,
+                SCHEMA,
+                ImmutableMap.of(RLoadParameter.RSERVE_ENDPOINTS.getName(), " , ")
+        )).hasSize(1);
+    }
+
+    /**
+     * Verifies that the parameters given to load a model override the ones of the loader, and that the same
+     * parameters are validated.
+     *
+     * @throws Exception If the model cannot be loaded.
+     */
+    @Test
+    public void loadsWithGivenParams() throws Exception {
+        final GenericRModelLoader loader = new GenericRModelLoader(ImmutableMap.of(
+                RLoadParameter.RSERVE_ENDPOINTS.getName(), endpoint(this.first),
+                RLoadParameter.CONNECTION_POOL_SIZE.getName(), "0"
+        ));
+        final Map<String, String> params = ImmutableMap.of(RLoadParameter.CONNECTION_POOL_SIZE.getName(), "2");
+
+        assertThat(loader.validateForLoad(this.modelPath, SCHEMA, ImmutableMap.of())).hasSize(1);
+        assertThat(loader.validateForLoad(this.modelPath, SCHEMA, params)).isEmpty();
+        assertThatThrownBy(() -> loader.loadModel(this.modelPath, SCHEMA))
+                .isInstanceOf(ModelLoadingException.class);
+
+        try (final ClassificationGenericRModel model = loader.loadModel(this.modelPath, SCHEMA, params)) {
+            assertThat(this.first.getConnectionCount()).isEqualTo(2);
+            assertThat(model.getLoadReport().get().getNumberOfConnections()).isEqualTo(2);
+        }
+    }
+
+    /**
+     * Verifies that the fallback class distribution must have a probability for each target value.
+     */
+    @Test
+    public void validatesFallbackClassDistribution() {
+        assertThat(new GenericRModelLoader().validateForLoad(
+                this.modelPath,
+                SCHEMA,
+                ImmutableMap.of(RLoadParameter.FALLBACK_CLASS_DISTRIBUTION.getName(), "0.9, 0.1")
+        )).isEmpty();
+        assertThat(new GenericRModelLoader().validateForLoad(
+                this.modelPath,
+                SCHEMA,
+                ImmutableMap.of(RLoadParameter.FALLBACK_CLASS_DISTRIBUTION.getName(), "0.5, 0.3, 0.2")
+        )).hasSize(1);
+        assertThat(new GenericRModelLoader().validateForLoad(
+                this.modelPath,
+                SCHEMA,
+                ImmutableMap.of(RLoadParameter.FALLBACK_CLASS_DISTRIBUTION.getName(), "0.9, high")
+        )).hasSize(1);
+    }
+
+    /**
+     * Creates an evaluator that returns the same class distribution for every instance.
+     *
+     * @return the evaluator.
+     */
+    private static ProviderStandInEvaluator newEvaluator() {
+        return new ProviderStandInEvaluator(ImmutableList.of("no", "yes"), new double[]{0.3, 0.7}, false);
+    }
+
+    /**
+     * Gets the endpoint of a stand-in.
+     *
+     * @param standIn The stand-in.
+     * @return the endpoint, as given in {@link RLoadParameter#RSERVE_ENDPOINTS}.
+     */
+    private static String endpoint(final RserveStandIn standIn) {
+        return "127.0.0.1:" + standIn.getPort();
+    }
+
+    /**
+     * Finds a port where nothing is listening.
+     *
+     * @return the port.
+     * @throws IOException If no port is found.
+     */
+    private static int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Tests for the {@link LatencyHistogram}.
+ *
+ * @since 0.5.0
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Verifies that the percentiles are reported within the precision of the buckets.
+     */
+    @Test
+    public void reportsPercentilesWithBoundedError() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(10_000);
+        assertThat(histogram.getMean()).isCloseTo(5_000_500, within(1.0));
+        assertThat(histogram.getMax()).isEqualTo(10_000_000);
+        assertThat(histogram.getPercentile(50)).isBetween(5_000_000L, 5_000_000L * 9 / 8);
+        assertThat(histogram.getPercentile(99)).isBetween(9_900_000L, 9_900_000L * 9 / 8);
+        assertThat(histogram.getPercentile(100)).isEqualTo(10_000_000);
+    }
+
+    /**
+     * Verifies that small values are recorded exactly and that the histogram can be reset.
+     */
+    @Test
+    public void recordsSmallValuesExactly() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(5);
+        histogram.record(-1);
+
+        assertThat(histogram.getPercentile(34)).isEqualTo(3);
+        assertThat(histogram.getPercentile(100)).isEqualTo(5);
+
+        histogram.reset();
+
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getPercentile(50)).isZero();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.mocks.MockInstance;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the {@link MicroBatcher}.
+ *
+ * @since 0.5.0
+ */
+public class MicroBatcherTest {
+
+    /**
+     * Verifies that concurrent requests are coalesced in batches and that each request gets its own result.
+     *
+     * @throws Exception If the test fails.
+     */
+    @Test
+    public void coalescesConcurrentRequests() throws Exception {
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try (MicroBatcher microBatcher = new MicroBatcher(4, 200, TimeUnit.MILLISECONDS, 1, instances -> {
+            batchSizes.add(instances.size());
+            return instances.stream()
+                    .map(instance -> new double[]{instance.getValue(0)})
+                    .toArray(double[][]::new);
+        })) {
+            final List<Future<double[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final Instance instance = new MockInstance(new double[]{i});
+                results.add(executor.submit(() -> microBatcher.evaluate(instance)));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get()).containsExactly(i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(batchSizes).allSatisfy(batchSize -> assertThat(batchSize).isBetween(1, 4));
+        assertThat(batchSizes.size()).isLessThan(8);
+    }
+
+    /**
+     * Verifies that an error in the evaluation of a batch is thrown to the callers.
+     */
+    @Test
+    public void propagatesEvaluationErrors() {
+        try (MicroBatcher microBatcher = new MicroBatcher(4, 0, TimeUnit.MILLISECONDS, 1, instances -> {
+            throw new IllegalStateException("R is not available");
+        })) {
+            assertThatThrownBy(() -> microBatcher.evaluate(new MockInstance(new double[]{0})))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("R is not available");
+        }
+    }
+
+    /**
+     * Verifies that the instances of a batch whose window is still open when the micro batcher is closed are rejected
+     * instead of leaving their callers waiting forever.
+     *
+     * @throws Exception If the test fails.
+     */
+    @Test
+    public void rejectsOpenBatchOnClose() throws Exception {
+        final MicroBatcher microBatcher = new MicroBatcher(4, 1, TimeUnit.HOURS, 1, instances -> new double[0][]);
+        final CompletableFuture<double[]> result = microBatcher.evaluateAsync(new MockInstance(new double[]{0}));
+        Thread.sleep(100);
+
+        microBatcher.close();
+
+        assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Verifies that no instances can be evaluated after closing the micro batcher.
+     */
+    @Test
+    public void cannotEvaluateAfterClose() {
+        final MicroBatcher microBatcher = new MicroBatcher(4, 0, TimeUnit.MILLISECONDS, 1, instances -> new double[0][]);
+        microBatcher.close();
+
+        assertThatThrownBy(() -> microBatcher.evaluate(new MockInstance(new double[]{0})))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
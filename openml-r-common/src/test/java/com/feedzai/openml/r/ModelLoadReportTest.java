@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link ModelLoadReport}.
+ *
+ * @since 0.5.0
+ */
+public class ModelLoadReportTest {
+
+    /**
+     * Verifies that the time spent in the stages executed for each connection is summed, and that the stages are
+     * reported in the order they are executed.
+     */
+    @Test
+    public void sumsStagesOfAllConnections() {
+        final ModelLoadReport.Builder builder = new ModelLoadReport.Builder();
+        final long start = System.nanoTime();
+        for (int connection = 0; connection < 2; connection++) {
+            builder.record(ModelLoadReport.Stage.LOAD_MODEL, start - 2_000_000);
+            builder.record(ModelLoadReport.Stage.CONNECTION, start - 1_000_000);
+            builder.recordConnection();
+        }
+
+        final ModelLoadReport report = builder.build();
+
+        assertThat(report.getNumberOfConnections()).isEqualTo(2);
+        assertThat(report.getDuration(ModelLoadReport.Stage.CONNECTION)).isGreaterThanOrEqualTo(Duration.ofMillis(2));
+        assertThat(report.getDuration(ModelLoadReport.Stage.LOAD_MODEL)).isGreaterThanOrEqualTo(Duration.ofMillis(4));
+        assertThat(report.getDuration(ModelLoadReport.Stage.VALIDATE_MODEL)).isEqualTo(Duration.ZERO);
+        assertThat(report.getDurations()).containsOnlyKeys(
+                ModelLoadReport.Stage.CONNECTION,
+                ModelLoadReport.Stage.LOAD_MODEL
+        );
+        assertThat(report.toString())
+                .startsWith("total=")
+                .contains("in 2 connection(s) [connection=")
+                .contains(", loadModel=");
+    }
+}
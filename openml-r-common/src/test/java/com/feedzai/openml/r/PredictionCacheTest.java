@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.feedzai.openml.data.schema.NumericValueSchema;
+import com.feedzai.openml.mocks.MockInstance;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link PredictionCache}.
+ *
+ * @since 0.5.0
+ */
+public class PredictionCacheTest {
+
+    /**
+     * Schema with a numeric field and a categorical target.
+     */
+    private static final DatasetSchema SCHEMA = new DatasetSchema(
+            1,
+            ImmutableList.of(
+                    new FieldSchema("amount", 0, new NumericValueSchema(false)),
+                    new FieldSchema("fraud", 1, new CategoricalValueSchema(false, ImmutableSet.of("yes", "no")))
+            )
+    );
+
+    /**
+     * Verifies that repeated instances are only evaluated once, regardless of the value of the target field, and that
+     * hits and misses are counted.
+     */
+    @Test
+    public void evaluatesRepeatedInstancesOnce() {
+        final PredictionCache cache = new PredictionCache(SCHEMA, 10, 0, TimeUnit.MILLISECONDS);
+        final List<Instance> evaluated = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            final double[] classDistribution = cache.getClassDistribution(
+                    new MockInstance(new double[]{0.2, i % 2}),
+                    instance -> {
+                        evaluated.add(instance);
+                        return new double[]{0.2, 0.8};
+                    }
+            );
+            assertThat(classDistribution).containsExactly(0.2, 0.8);
+            classDistribution[0] = 1;
+        }
+
+        assertThat(evaluated).hasSize(1);
+        assertThat(cache.getStats().hitCount()).isEqualTo(2);
+        assertThat(cache.getStats().missCount()).isEqualTo(1);
+    }
+
+    /**
+     * Verifies that only the instances that are not cached are evaluated in batch, and that the results keep the
+     * order of the instances.
+     */
+    @Test
+    public void evaluatesOnlyMissingInstancesInBatch() {
+        final PredictionCache cache = new PredictionCache(SCHEMA, 10, 0, TimeUnit.MILLISECONDS);
+        cache.classify(new MockInstance(new double[]{1, 0}), instance -> 1);
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        final int[] classifications = cache.classify(
+                ImmutableList.of(
+                        new MockInstance(new double[]{2, 0}),
+                        new MockInstance(new double[]{1, 0}),
+                        new MockInstance(new double[]{3, 0})
+                ),
+                instances -> {
+                    batchSizes.add(instances.size());
+                    return instances.stream().mapToInt(instance -> (int) instance.getValue(0) * 10).toArray();
+                }
+        );
+
+        assertThat(classifications).containsExactly(20, 1, 30);
+        assertThat(batchSizes).containsExactly(2);
+    }
+
+    /**
+     * Verifies that scoring only reuses the instances with both the predicted class and the class distribution
+     * cached, and that the scores computed fill both caches.
+     */
+    @Test
+    public void scoresOnlyMissingInstancesInBatch() {
+        final PredictionCache cache = new PredictionCache(SCHEMA, 10, 0, TimeUnit.MILLISECONDS);
+        cache.putClassDistribution(new MockInstance(new double[]{1, 0}), new double[]{0.1, 0.9});
+        cache.classify(new MockInstance(new double[]{1, 0}), instance -> 1);
+        cache.putClassDistribution(new MockInstance(new double[]{2, 0}), new double[]{0.2, 0.8});
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        final ClassificationScore[] scores = cache.score(
+                ImmutableList.of(
+                        new MockInstance(new double[]{2, 0}),
+                        new MockInstance(new double[]{1, 0}),
+                        new MockInstance(new double[]{3, 0})
+                ),
+                instances -> {
+                    batchSizes.add(instances.size());
+                    return instances.stream()
+                            .map(instance -> new ClassificationScore(0, new double[]{instance.getValue(0), 0}))
+                            .toArray(ClassificationScore[]::new);
+                }
+        );
+
+        assertThat(scores).containsExactly(
+                new ClassificationScore(0, new double[]{2, 0}),
+                new ClassificationScore(1, new double[]{0.1, 0.9}),
+                new ClassificationScore(0, new double[]{3, 0})
+        );
+        assertThat(batchSizes).containsExactly(2);
+        assertThat(cache.getCachedClassDistribution(new MockInstance(new double[]{3, 0})))
+                .hasValueSatisfying(classDistribution -> assertThat(classDistribution).containsExactly(3, 0));
+        assertThat(cache.classify(new MockInstance(new double[]{3, 0}), instance -> -1)).isEqualTo(0);
+    }
+
+    /**
+     * Verifies that the least recently used results are evicted when the cache is full.
+     */
+    @Test
+    public void evictsResultsWhenFull() {
+        final PredictionCache cache = new PredictionCache(SCHEMA, 1, 0, TimeUnit.MILLISECONDS);
+        cache.putClassDistribution(new MockInstance(new double[]{1, 0}), new double[]{1, 0});
+        cache.putClassDistribution(new MockInstance(new double[]{2, 0}), new double[]{0, 1});
+
+        assertThat(cache.getCachedClassDistribution(new MockInstance(new double[]{1, 0}))).isEmpty();
+        assertThat(cache.getCachedClassDistribution(new MockInstance(new double[]{2, 0}))).isPresent();
+    }
+}
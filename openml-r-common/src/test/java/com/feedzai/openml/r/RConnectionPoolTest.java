@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rosuda.REngine.Rserve.RConnection;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the {@link RConnectionPool} against a {@link RserveStandIn}.
+ *
+ * @since 0.5.0
+ */
+public class RConnectionPoolTest {
+
+    /**
+     * The stand-in that accepts the connections of the pool.
+     */
+    private RserveStandIn standIn;
+
+    /**
+     * Starts the stand-in.
+     *
+     * @throws Exception If the stand-in cannot be started.
+     */
+    @Before
+    public void setUp() throws Exception {
+        this.standIn = new RserveStandIn((expression, workspace) -> {
+            throw new IllegalArgumentException("The stand-in of the pool tests does not evaluate expressions.");
+        });
+    }
+
+    /**
+     * Closes the stand-in.
+     */
+    @After
+    public void tearDown() {
+        this.standIn.close();
+    }
+
+    /**
+     * Verifies that a thread waiting for a connection fails when the pool is closed, instead of waiting forever.
+     *
+     * @throws Exception If the test fails.
+     */
+    @Test
+    public void closeWakesWaitingBorrowers() throws Exception {
+        final RConnectionPool pool = new RConnectionPool(Collections.singletonList(this.standIn.connect()));
+        pool.borrow();
+        final Future<RConnection> waiting = CompletableFuture.supplyAsync(() -> borrow(pool));
+
+        Thread.sleep(200);
+        assertThat(waiting.isDone()).isFalse();
+        pool.close();
+
+        assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("closed");
+    }
+
+    /**
+     * Verifies that a thread waiting for a connection fails when the last connection of the pool is discarded, and
+     * that the pool lends connections again once a new one is added.
+     *
+     * @throws Exception If the test fails.
+     */
+    @Test
+    public void failsWhenNoConnectionIsLeft() throws Exception {
+        try (RConnectionPool pool = new RConnectionPool(
+                Collections.singletonList(this.standIn.connect())
+        )) {
+            final RConnection rConnection = pool.borrow();
+            final Future<RConnection> waiting = CompletableFuture.supplyAsync(() -> borrow(pool));
+
+            Thread.sleep(200);
+            assertThat(waiting.isDone()).isFalse();
+            pool.discard(rConnection);
+
+            assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasRootCauseInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("no connections");
+            assertThatThrownBy(() -> pool.borrow(1, TimeUnit.SECONDS))
+                    .isInstanceOf(IllegalStateException.class);
+
+            final RConnection newConnection = this.standIn.connect();
+            pool.add(newConnection);
+            assertThat(pool.borrow(1, TimeUnit.SECONDS)).isSameAs(newConnection);
+            assertThat(pool.borrow(100, TimeUnit.MILLISECONDS)).isNull();
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting without a timeout.
+     *
+     * @param pool The pool.
+     * @return the borrowed connection.
+     */
+    private static RConnection borrow(final RConnectionPool pool) {
+        try {
+            return pool.borrow();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
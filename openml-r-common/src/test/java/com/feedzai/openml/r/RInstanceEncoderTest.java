@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.feedzai.openml.data.schema.NumericValueSchema;
+import com.feedzai.openml.mocks.MockInstance;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import org.rosuda.REngine.REXP;
+import org.rosuda.REngine.RList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the {@link RInstanceEncoder}.
+ *
+ * @since 0.5.0
+ */
+public class RInstanceEncoderTest {
+
+    /**
+     * Schema with a numeric field, a categorical field and a categorical target.
+     */
+    private static final DatasetSchema SCHEMA = new DatasetSchema(
+            2,
+            ImmutableList.of(
+                    new FieldSchema("amount", 0, new NumericValueSchema(false)),
+                    new FieldSchema("country", 1, new CategoricalValueSchema(false, ImmutableSet.of("PT", "ES", "FR"))),
+                    new FieldSchema("fraud", 2, new CategoricalValueSchema(false, ImmutableSet.of("yes", "no")))
+            )
+    );
+
+    /**
+     * Verifies that the instances are converted to a data frame with one column per field and one row per instance,
+     * with categorical values converted to their nominal values.
+     *
+     * @throws Exception If the conversion fails.
+     */
+    @Test
+    public void encodesInstancesAsDataFrame() throws Exception {
+        final RInstanceEncoder encoder = new RInstanceEncoder(SCHEMA);
+
+        final REXP dataFrame = encoder.encode(ImmutableList.of(
+                new MockInstance(new double[]{10.5, 0, 1}),
+                new MockInstance(new double[]{3.0, 2, 0})
+        ));
+
+        final RList columns = dataFrame.asList();
+        assertThat(columns.keys()).containsExactly("amount", "country", "fraud");
+        assertThat(columns.at("amount").asDoubles()).containsExactly(10.5, 3.0);
+        assertThat(columns.at("country").asStrings()).containsExactly("ES", "PT");
+        assertThat(columns.at("fraud").asStrings()).containsExactly("yes", "no");
+    }
+
+    /**
+     * Verifies that in columnar mode the numeric fields are sent as a single matrix and the categorical fields as
+     * factor codes, and that the workspace is prepared with the factor levels to assemble them back into a data frame.
+     *
+     * @throws Exception If the conversion fails.
+     */
+    @Test
+    public void encodesInstancesAsColumns() throws Exception {
+        final RInstanceEncoder encoder = new RInstanceEncoder(SCHEMA, RInstanceEncoder.TransferMode.COLUMNAR);
+
+        final REXP columns = encoder.encode(ImmutableList.of(
+                new MockInstance(new double[]{10.5, 0, 1}),
+                new MockInstance(new double[]{3.0, 2, 0})
+        ));
+
+        final RList list = columns.asList();
+        assertThat(list.size()).isEqualTo(3);
+        assertThat(list.at(0).asDoubles()).containsExactly(10.5, 3.0);
+        assertThat(list.at(0).dim()).containsExactly(2, 1);
+        assertThat(list.at(1).asIntegers()).containsExactly(1, 3);
+        assertThat(list.at(2).asIntegers()).containsExactly(2, 1);
+
+        assertThat(encoder.getWorkspaceSetup()).hasValueSatisfying(setup -> assertThat(setup)
+                .contains(ProviderRObject.ASSEMBLE_INSTANCE_FN.getName())
+                .contains(".factorLevels <- list(c('ES', 'FR', 'PT'), c('no', 'yes'))")
+                .contains("c('amount', 'country', 'fraud')"));
+        assertThat(encoder.getInstanceAssembly("instance")).contains("instance <- .assembleInstance(instance)");
+    }
+
+    /**
+     * Verifies that a categorical value that is not the index of one of the levels registered in the R workspace is
+     * rejected in columnar mode, as it is in data frame mode, and that an unset target value is sent as missing.
+     *
+     * @throws Exception If the conversion fails.
+     */
+    @Test
+    public void rejectsUnknownCategoricalValues() throws Exception {
+        for (final RInstanceEncoder.TransferMode transferMode : new RInstanceEncoder.TransferMode[]{
+                RInstanceEncoder.TransferMode.COLUMNAR,
+                RInstanceEncoder.TransferMode.DATA_FRAME
+        }) {
+            final RInstanceEncoder encoder = new RInstanceEncoder(SCHEMA, transferMode);
+
+            for (final double country : new double[]{3, -1, Double.NaN}) {
+                assertThatThrownBy(() -> encoder.encode(ImmutableList.of(
+                        new MockInstance(new double[]{10.5, 0, 1}),
+                        new MockInstance(new double[]{3.0, country, 0})
+                )))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessageContaining("'country'");
+            }
+
+            final RList list = encoder.encode(ImmutableList.of(new MockInstance(new double[]{10.5, 0, Double.NaN})))
+                    .asList();
+            assertThat(list.at(list.size() - 1).isNA()).containsExactly(true);
+        }
+    }
+
+    /**
+     * Verifies that in matrix mode the predictive fields are sent as a single matrix, without the target field.
+     *
+     * @throws Exception If the conversion fails.
+     */
+    @Test
+    public void encodesNumericInstancesAsMatrix() throws Exception {
+        final DatasetSchema numericSchema = new DatasetSchema(
+                2,
+                ImmutableList.of(
+                        new FieldSchema("amount", 0, new NumericValueSchema(false)),
+                        new FieldSchema("age", 1, new NumericValueSchema(false)),
+                        new FieldSchema("fraud", 2, new CategoricalValueSchema(false, ImmutableSet.of("yes", "no")))
+                )
+        );
+        assertThat(RInstanceEncoder.isNumericOnly(numericSchema)).isTrue();
+        final RInstanceEncoder encoder = new RInstanceEncoder(numericSchema, RInstanceEncoder.TransferMode.MATRIX);
+
+        final REXP matrix = encoder.encode(ImmutableList.of(
+                new MockInstance(new double[]{10.5, 30, 1}),
+                new MockInstance(new double[]{3.0, 42, 0})
+        ));
+
+        assertThat(matrix.dim()).containsExactly(2, 2);
+        assertThat(matrix.asDoubles()).containsExactly(10.5, 3.0, 30, 42);
+        assertThat(encoder.getWorkspaceSetup()).hasValueSatisfying(setup -> assertThat(setup)
+                .contains("list(NULL, c('amount', 'age'))"));
+        assertThat(encoder.getMatrixAssembly("instance")).contains("instance <- .assembleMatrix(instance)");
+    }
+
+    /**
+     * Verifies that the matrix mode is not available for schemas with categorical predictive fields.
+     */
+    @Test
+    public void matrixRequiresNumericOnlySchema() {
+        assertThat(RInstanceEncoder.isNumericOnly(SCHEMA)).isFalse();
+        assertThatThrownBy(() -> new RInstanceEncoder(SCHEMA, RInstanceEncoder.TransferMode.MATRIX))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Verifies that data frames don't need to be assembled in R.
+     */
+    @Test
+    public void dataFrameDoesNotNeedAssembly() {
+        final RInstanceEncoder encoder = new RInstanceEncoder(SCHEMA);
+
+        assertThat(encoder.getWorkspaceSetup()).isEmpty();
+        assertThat(encoder.getInstanceAssembly("instance")).isEmpty();
+    }
+
+    /**
+     * Verifies that the index of the target values follows the order of the nominal values.
+     */
+    @Test
+    public void getsTargetValueIndexes() {
+        final RInstanceEncoder encoder = new RInstanceEncoder(SCHEMA);
+
+        assertThat(encoder.getNumberOfClasses()).isEqualTo(2);
+        assertThat(encoder.getTargetValueIndex("no")).isEqualTo(0);
+        assertThat(encoder.getTargetValueIndex("yes")).isEqualTo(1);
+        assertThat(encoder.getTargetValueIndex("maybe")).isEqualTo(RInstanceEncoder.UNKNOWN_TARGET_VALUE);
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+package com.feedzai.openml.r;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Test;
+import org.rosuda.REngine.Rserve.RConnection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the {@link RserveSupervisor}, with processes that run a {@link RserveStandIn} instead of Rserve.
+ *
+ * @since 0.5.0
+ */
+public class RserveSupervisorTest {
+
+    /**
+     * The current process of each port.
+     */
+    private final Map<Integer, StandInProcess> processes = new ConcurrentHashMap<>();
+
+    /**
+     * The supervisor of the test, if any.
+     */
+    private RserveSupervisor supervisor;
+
+    /**
+     * Closes the supervisor.
+     */
+    @After
+    public void tearDown() {
+        if (this.supervisor != null) {
+            this.supervisor.close();
+        }
+    }
+
+    /**
+     * Verifies that the processes are launched with the packages, hand out connections and are stopped on close.
+     *
+     * @throws Exception If the processes cannot be launched.
+     */
+    @Test
+    public void launchesAndStopsProcesses() throws Exception {
+        final List<Integer> ports = freePorts();
+        final List<String> packages = ImmutableList.of("caret", "gbm");
+        this.supervisor = RserveSupervisor.builder()
+                .ports(ports)
+                .packages(packages)
+                .initScript("model <- loadModel()")
+                .launcher((port, initScript) -> {
+                    assertThat(initScript)
+                            .isEqualTo(RserveSupervisor.createInitScript(packages, "model <- loadModel()"));
+                    return launch(port);
+                })
+                .build();
+
+        this.supervisor.start();
+
+        assertThat(this.supervisor.getEndpoints())
+                .isEqualTo("127.0.0.1:" + ports.get(0) + ",127.0.0.1:" + ports.get(1));
+        for (int i = 0; i < 4; i++) {
+            this.supervisor.connect().close();
+        }
+        assertThat(this.processes.get(ports.get(0)).standIn.getConnectionCount()).isEqualTo(3);
+        assertThat(this.processes.get(ports.get(1)).standIn.getConnectionCount()).isEqualTo(3);
+
+        this.supervisor.close();
+
+        assertThat(this.processes.values().stream().noneMatch(Process::isAlive)).isTrue();
+    }
+
+    /**
+     * Verifies that a process that dies is restarted by the health check.
+     *
+     * @throws Exception If the processes cannot be launched.
+     */
+    @Test
+    public void restartsDeadProcesses() throws Exception {
+        final List<Integer> ports = freePorts();
+        this.supervisor = RserveSupervisor.builder()
+                .ports(ports)
+                .launcher((port, initScript) -> launch(port))
+                .healthCheckInterval(Duration.ofMillis(50))
+                .build();
+        this.supervisor.start();
+
+        final StandInProcess dead = this.processes.get(ports.get(0));
+        dead.destroy();
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (this.supervisor.getRestartCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(this.supervisor.getRestartCount()).isEqualTo(1);
+        assertThat(this.processes.get(ports.get(0))).isNotSameAs(dead);
+        new RConnection("127.0.0.1", ports.get(0)).close();
+    }
+
+    /**
+     * Verifies that the start fails when a process exits during the startup.
+     *
+     * @throws Exception If no free port is found.
+     */
+    @Test
+    public void failsWhenProcessExitsDuringStartup() throws Exception {
+        this.supervisor = RserveSupervisor.builder()
+                .ports(freePorts())
+                .launcher((port, initScript) -> {
+                    final StandInProcess process = launch(port);
+                    process.destroy();
+                    return process;
+                })
+                .build();
+
+        assertThatThrownBy(this.supervisor::start)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("exited with code [1] during startup");
+    }
+
+    /**
+     * Verifies that the start fails when another process is already listening in a port, instead of reporting the
+     * supervised process as ready because the other one accepts connections.
+     *
+     * @throws Exception If no free port is found.
+     */
+    @Test
+    public void failsWhenPortIsInUse() throws Exception {
+        final List<Integer> ports = freePorts();
+        try (final RserveStandIn foreign = new RserveStandIn(
+                ports.get(1),
+                new ProviderStandInEvaluator(ImmutableList.of("no", "yes"), new double[]{0.3, 0.7}, false),
+                0,
+                TimeUnit.NANOSECONDS
+        )) {
+            final AtomicInteger launches = new AtomicInteger();
+            this.supervisor = RserveSupervisor.builder()
+                    .ports(ports)
+                    .launcher((port, initScript) -> {
+                        launches.incrementAndGet();
+                        return launch(port);
+                    })
+                    .build();
+
+            assertThatThrownBy(this.supervisor::start)
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("Port [" + ports.get(1) + "] is already in use");
+            assertThat(launches.get()).isEqualTo(1);
+            assertThat(this.processes.get(ports.get(0)).isAlive()).isFalse();
+        }
+    }
+
+    /**
+     * Verifies the script run by the {@link RserveSupervisor.RscriptLauncher}, which loads the packages and runs the
+     * init script before Rserve.
+     */
+    @Test
+    public void createsRscript() {
+        final String initScript = RserveSupervisor.createInitScript(ImmutableList.of("caret"), "model <- loadModel()");
+
+        assertThat(RserveSupervisor.RscriptLauncher.createScript(6312, initScript).split(System.lineSeparator()))
+                .containsExactly(
+                        "if (requireNamespace('caret', quietly = TRUE)) suppressPackageStartupMessages(library(caret)) "
+                                + "else warning('The R package caret is not installed and was not preloaded.')",
+                        "model <- loadModel()",
+                        "Rserve::run.Rserve(port = 6312)"
+                );
+    }
+
+    /**
+     * Launches a process with a stand-in in a port.
+     *
+     * @param port The port.
+     * @return the process.
+     * @throws IOException If the stand-in cannot be started.
+     */
+    private StandInProcess launch(final int port) throws IOException {
+        final StandInProcess process = new StandInProcess(new RserveStandIn(
+                port,
+                new ProviderStandInEvaluator(ImmutableList.of("no", "yes"), new double[]{0.3, 0.7}, false),
+                0,
+                TimeUnit.NANOSECONDS
+        ));
+        this.processes.put(port, process);
+        return process;
+    }
+
+    /**
+     * Finds two ports where nothing is listening.
+     *
+     * @return the ports.
+     * @throws IOException If no port is found.
+     */
+    private static List<Integer> freePorts() throws IOException {
+        try (final ServerSocket first = new ServerSocket(0); final ServerSocket second = new ServerSocket(0)) {
+            return ImmutableList.of(first.getLocalPort(), second.getLocalPort());
+        }
+    }
+
+    /**
+     * {@link Process} that runs a {@link RserveStandIn} until it is destroyed, when it exits with code 1.
+     */
+    private static final class StandInProcess extends Process {
+
+        /**
+         * The stand-in.
+         */
+        private final RserveStandIn standIn;
+
+        /**
+         * Released when the process exits.
+         */
+        private final CountDownLatch exited = new CountDownLatch(1);
+
+        /**
+         * Constructor.
+         *
+         * @param standIn The stand-in.
+         */
+        private StandInProcess(final RserveStandIn standIn) {
+            this.standIn = standIn;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            this.exited.await();
+            return exitValue();
+        }
+
+        @Override
+        public int exitValue() {
+            if (this.exited.getCount() > 0) {
+                throw new IllegalThreadStateException("The process is running.");
+            }
+            return 1;
+        }
+
+        @Override
+        public void destroy() {
+            this.standIn.close();
+            this.exited.countDown();
+        }
+
+        @Override
+        public boolean isAlive() {
+            return this.exited.getCount() > 0;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2018 Feedzai
+ *
+ * This software is licensed under the Apache License, Version 2.0 (the "Apache License") or the GNU
+ * Lesser General Public License version 3 (the "GPL License"). You may choose either license to govern
+ * your use of this software only upon the condition that you accept all of the terms of either the Apache
+ * License or the LGPL License.
+ *
+ * You may obtain a copy of the Apache License and the LGPL License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.txt
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the Apache License
+ * or the LGPL License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the Apache License and the LGPL License for the specific language governing
+ * permissions and limitations under the Apache License and the LGPL License.
+ *
+ */
+
+package com.feedzai.openml.r;
+
+import com.feedzai.openml.data.Instance;
+import com.feedzai.openml.data.schema.CategoricalValueSchema;
+import com.feedzai.openml.data.schema.DatasetSchema;
+import com.feedzai.openml.data.schema.FieldSchema;
+import com.feedzai.openml.data.schema.NumericValueSchema;
+import com.feedzai.openml.mocks.MockInstance;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rosuda.REngine.Rserve.RserveException;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the {@link SwappableRModel} against {@link RserveStandIn stand-ins}, i.e. without R.
+ *
+ * @since 0.5.0
+ */
+public class SwappableRModelTest {
+
+    /**
+     * Schema with two numeric fields and a categorical target.
+     */
+    private static final DatasetSchema SCHEMA = new DatasetSchema(
+            2,
+            ImmutableList.of(
+                    new FieldSchema("amount", 0, new NumericValueSchema(false)),
+                    new FieldSchema("age", 1, new NumericValueSchema(false)),
+                    new FieldSchema("fraud", 2, new CategoricalValueSchema(false, ImmutableSet.of("yes", "no")))
+            )
+    );
+
+    /**
+     * The class distribution returned by the first version of the model.
+     */
+    private static final double[] OLD_CLASS_DISTRIBUTION = {0.3, 0.7};
+
+    /**
+     * The class distribution returned by the new version of the model.
+     */
+    private static final double[] NEW_CLASS_DISTRIBUTION = {0.6, 0.4};
+
+    /**
+     * The instance to evaluate.
+     */
+    private static final Instance INSTANCE = new MockInstance(new double[]{10.5, 30, 0});
+
+    /**
+     * Folder where the new version of the model is created.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Released to let the evaluations of the first version complete.
+     */
+    private final CountDownLatch oldEvaluationsReleased = new CountDownLatch(1);
+
+    /**
+     * Counted down when the first version starts evaluating instances.
+     */
+    private final CountDownLatch oldEvaluationStarted = new CountDownLatch(1);
+
+    /**
+     * The stand-in of the first version, whose evaluations block until {@link #oldEvaluationsReleased}.
+     */
+    private RserveStandIn oldStandIn;
+
+    /**
+     * The stand-in of the new version.
+     */
+    private RserveStandIn newStandIn;
+
+    /**
+     * The first version of the model.
+     */
+    private ClassificationGenericRModel oldModel;
+
+    /**
+     * Starts the stand-ins and creates the first version of the model.
+     *
+     * @throws IOException If the stand-ins cannot be started.
+     * @throws RserveException If the first version cannot connect to its stand-in.
+     */
+    @Before
+    public void setUp() throws IOException, RserveException {
+        final ProviderStandInEvaluator oldEvaluator = newEvaluator(OLD_CLASS_DISTRIBUTION);
+        this.oldStandIn = new RserveStandIn((expression, workspace) -> {
+            if (expression.trim().endsWith("Call()")) {
+                this.oldEvaluationStarted.countDown();
+                try {
+                    this.oldEvaluationsReleased.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return oldEvaluator.evaluate(expression, workspace);
+        });
+        this.newStandIn = new RserveStandIn(newEvaluator(NEW_CLASS_DISTRIBUTION));
+        this.oldModel = new ClassificationGenericRModel(this.oldStandIn.connect(), SCHEMA);
+    }
+
+    /**
+     * Closes the stand-ins.
+     */
+    @After
+    public void tearDown() {
+        this.oldEvaluationsReleased.countDown();
+        this.oldStandIn.close();
+        this.newStandIn.close();
+    }
+
+    /**
+     * Verifies that the new version receives the requests as soon as it is swapped in, while the requests being
+     * evaluated by the previous version complete before it is closed.
+     *
+     * @throws Exception If the stand-ins cannot be used.
+     */
+    @Test
+    public void drainsPreviousVersion() throws Exception {
+        try (final SwappableRModel model = new SwappableRModel(this.oldModel)) {
+            final CompletableFuture<double[]> inFlight = model.getClassDistributionAsync(INSTANCE);
+            assertThat(this.oldEvaluationStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+            final CompletableFuture<Void> drained = model.swap(
+                    new ClassificationGenericRModel(this.newStandIn.connect(), SCHEMA)
+            );
+
+            assertThat(model.getClassDistribution(INSTANCE)).containsExactly(NEW_CLASS_DISTRIBUTION);
+            assertThat(model.score(Collections.singletonList(INSTANCE)))
+                    .containsExactly(new ClassificationScore(0, NEW_CLASS_DISTRIBUTION));
+            assertThat(drained).isNotDone();
+
+            this.oldEvaluationsReleased.countDown();
+            assertThat(inFlight.get(10, TimeUnit.SECONDS)).containsExactly(OLD_CLASS_DISTRIBUTION);
+            drained.get(10, TimeUnit.SECONDS);
+            assertThatThrownBy(() -> this.oldModel.getClassDistribution(INSTANCE))
+                    .isInstanceOf(RuntimeException.class);
+        }
+    }
+
+    /**
+     * Verifies that a new version is loaded in the background by a {@link GenericRModelLoader}, and that the current
+     * version keeps serving when the new version cannot be loaded.
+     *
+     * @throws Exception If the stand-ins cannot be used.
+     */
+    @Test
+    public void loadsNewVersionInBackground() throws Exception {
+        this.oldEvaluationsReleased.countDown();
+        final Path modelPath = this.temporaryFolder.newFolder("model").toPath();
+        Files.createDirectories(modelPath.resolve("scripts"));
+        Files.createFile(modelPath.resolve("scripts").resolve("classifier.R"));
+
+        try (final SwappableRModel model = new SwappableRModel(this.oldModel)) {
+            model.swap(newLoader(this.newStandIn.getPort()), modelPath).get(10, TimeUnit.SECONDS);
+
+            assertThat(model.getClassDistribution(INSTANCE)).containsExactly(NEW_CLASS_DISTRIBUTION);
+            assertThat(model.getModel().getLoadReport()).isPresent();
+
+            final ClassificationGenericRModel currentVersion = model.getModel();
+            assertThatThrownBy(() -> model.swap(newLoader(freePort()), modelPath).get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class);
+            assertThat(model.getModel()).isSameAs(currentVersion);
+            assertThat(model.getClassDistribution(INSTANCE)).containsExactly(NEW_CLASS_DISTRIBUTION);
+        }
+    }
+
+    /**
+     * Verifies that the current version is closed with the handle.
+     */
+    @Test
+    public void closesCurrentVersion() {
+        this.oldEvaluationsReleased.countDown();
+        final SwappableRModel model = new SwappableRModel(this.oldModel);
+        assertThat(model.classify(INSTANCE)).isEqualTo(1);
+
+        model.close();
+
+        assertThatThrownBy(() -> model.classify(INSTANCE))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("The model is closed.");
+        assertThatThrownBy(() -> this.oldModel.classify(INSTANCE)).isInstanceOf(RuntimeException.class);
+    }
+
+    /**
+     * Creates an evaluator that returns the given class distribution for every instance.
+     *
+     * @param classDistribution The class distribution.
+     * @return the evaluator.
+     */
+    private static ProviderStandInEvaluator newEvaluator(final double[] classDistribution) {
+        return new ProviderStandInEvaluator(ImmutableList.of("no", "yes"), classDistribution, false);
+    }
+
+    /**
+     * Creates a loader of the models in the local stand-in listening on the given port.
+     *
+     * @param port The port.
+     * @return the loader.
+     */
+    private static GenericRModelLoader newLoader(final int port) {
+        return new GenericRModelLoader(ImmutableMap.of(RLoadParameter.RSERVE_ENDPOINTS.getName(), "127.0.0.1:" + port));
+    }
+
+    /**
+     * Finds a port where nothing is listening.
+     *
+     * @return the port.
+     * @throws IOException If no port is found.
+     */
+    private static int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}